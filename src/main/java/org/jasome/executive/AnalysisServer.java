@@ -0,0 +1,351 @@
+package org.jasome.executive;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.lang3.tuple.Pair;
+import org.jasome.input.ArchiveScanner;
+import org.jasome.input.FileScanner;
+import org.jasome.input.Processor;
+import org.jasome.input.Project;
+import org.jasome.input.Scanner;
+import org.jasome.input.SourcePatterns;
+import org.jasome.output.XMLOutputter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A long running analyzer that accepts requests over HTTP on the loopback interface, so repeated analyses don't each pay for
+ * starting a JVM and loading and warming up the parser and symbol solver.  The last few projects analyzed are kept in memory
+ * with their scanner and processor, and a later request for the same project only parses the files that changed since and
+ * recalculates the metrics they could affect, the way {@code --watch} does.
+ * <p>
+ * Anything on the machine can connect to the loopback interface, web pages included, so every request has to carry the
+ * token the server writes to a file only its owner can read, in an {@value #TOKEN_HEADER} header, and has to be addressed
+ * to the server's own host and port.
+ *
+ * <ul>
+ *     <li>{@code GET /analyze?path=<absolute path>[&excludetests=true][&encoding=<charset>]} responds with the same XML that
+ *     {@code jasome <path>} prints</li>
+ *     <li>{@code POST /shutdown} stops the server</li>
+ * </ul>
+ */
+class AnalysisServer {
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisServer.class);
+
+    private static final int CONCURRENT_ANALYSES = 4;
+
+    //Every project kept takes as much memory as a normal run of it, so only a handful are
+    private static final int CACHED_PROJECTS = 4;
+
+    static final String TOKEN_HEADER = "X-Jasome-Token";
+
+    private final HttpServer server;
+    private final byte[] token;
+    private final File tokenFile;
+    private final Set<String> hosts;
+    private final Cache<List<String>, AnalyzedProject> projects = CacheBuilder.newBuilder()
+            .maximumSize(CACHED_PROJECTS)
+            .<List<String>, AnalyzedProject>removalListener(notification -> notification.getValue().release())
+            .build();
+    private final ExecutorService requestExecutor;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    /**
+     * @param tokenDirectory where to write the file holding the token requests have to carry, named after the port
+     */
+    AnalysisServer(int port, File tokenDirectory) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/analyze", this::analyze);
+        server.createContext("/shutdown", this::shutdown);
+
+        hosts = ImmutableSet.of("localhost:" + getPort(), InetAddress.getLoopbackAddress().getHostAddress() + ":" + getPort());
+
+        token = new byte[32];
+        new SecureRandom().nextBytes(token);
+        tokenFile = new File(tokenDirectory, "daemon-" + getPort() + ".token");
+        writeToken(tokenFile, BaseEncoding.base16().lowerCase().encode(token));
+
+        //Every scan has its own parser configuration and solvers, so a few analyses can run at once.  Each of them already
+        //parses and calculates on several threads, so there's little to gain from more
+        requestExecutor = Executors.newFixedThreadPool(CONCURRENT_ANALYSES, new ThreadFactoryBuilder().setNameFormat("jasome-daemon-%d").build());
+        server.setExecutor(requestExecutor);
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    File getTokenFile() {
+        return tokenFile;
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        requestExecutor.shutdown();
+        projects.invalidateAll();
+        tokenFile.delete();
+        stopped.countDown();
+    }
+
+    void awaitStop() throws InterruptedException {
+        stopped.await();
+    }
+
+    private void analyze(HttpExchange exchange) throws IOException {
+        try {
+            if (!authorized(exchange)) {
+                return;
+            }
+
+            if (!exchange.getRequestMethod().equals("GET")) {
+                respond(exchange, 405, "text/plain", "Use GET to request an analysis");
+                return;
+            }
+
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            if (!parameters.containsKey("path")) {
+                respond(exchange, 400, "text/plain", "No path to analyze provided");
+                return;
+            }
+
+            File scanDir = new File(parameters.get("path"));
+            if (!scanDir.isAbsolute() || !scanDir.exists()) {
+                respond(exchange, 400, "text/plain", "Not an absolute path to an existing file or directory: " + scanDir);
+                return;
+            }
+
+            long startTime = System.currentTimeMillis();
+
+            boolean excludeTests = Boolean.parseBoolean(parameters.get("excludetests"));
+            Charset encoding = parameters.containsKey("encoding") ? Charset.forName(parameters.get("encoding")) : Charset.defaultCharset();
+
+            AnalyzedProject project = cachedProject(ImmutableList.of(scanDir.getPath(), String.valueOf(excludeTests), encoding.name()), () -> {
+                Scanner<?> scanner = ArchiveScanner.isArchive(scanDir) ? new ArchiveScanner(scanDir) : new FileScanner(scanDir);
+                if (excludeTests) {
+                    scanner.setPatterns(new SourcePatterns(Collections.emptyList(), SourcePatterns.TESTS));
+                }
+                scanner.setEncoding(encoding);
+                return new AnalyzedProject(scanDir, scanner, ProcessorFactory.getProcessor());
+            });
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            project.analyze(output);
+
+            respond(exchange, 200, "application/xml", output.toByteArray());
+
+            logger.info("Analyzed {} in {} ms", scanDir, System.currentTimeMillis() - startTime);
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, "text/plain", e.getMessage());
+        } catch (RuntimeException | TransformerException e) {
+            logger.error("Unable to analyze", e);
+            respond(exchange, 500, "text/plain", e.toString());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void shutdown(HttpExchange exchange) throws IOException {
+        try {
+            if (!authorized(exchange)) {
+                return;
+            }
+
+            if (!exchange.getRequestMethod().equals("POST")) {
+                respond(exchange, 405, "text/plain", "Use POST to stop the server");
+                return;
+            }
+            respond(exchange, 200, "text/plain", "Stopping");
+        } finally {
+            exchange.close();
+        }
+
+        //Stopping waits for exchanges to finish, so it can't happen on the thread handling this one
+        new Thread(this::stop, "jasome-daemon-shutdown").start();
+    }
+
+    //A page in a browser can get requests to the loopback interface as well, with a cross-site form or by rebinding its own host
+    //name, but it can't read the token, and a rebound request still names the page's host
+    private boolean authorized(HttpExchange exchange) throws IOException {
+        String host = exchange.getRequestHeaders().getFirst("Host");
+        if (host == null || !hosts.contains(host.toLowerCase())) {
+            respond(exchange, 403, "text/plain", "Requests have to be addressed to one of " + hosts);
+            return false;
+        }
+
+        String requestToken = exchange.getRequestHeaders().getFirst(TOKEN_HEADER);
+        if (requestToken == null || !MessageDigest.isEqual(token, decodeToken(requestToken))) {
+            respond(exchange, 403, "text/plain", "Missing or wrong " + TOKEN_HEADER + " header, the token is in " + tokenFile);
+            return false;
+        }
+
+        return true;
+    }
+
+    private static byte[] decodeToken(String token) {
+        try {
+            return BaseEncoding.base16().lowerCase().decode(token.trim().toLowerCase());
+        } catch (IllegalArgumentException e) {
+            return new byte[0];
+        }
+    }
+
+    //Written to a file only the owner can read before the server takes any request, replacing the token of an earlier server
+    private static void writeToken(File tokenFile, String token) throws IOException {
+        Files.createDirectories(tokenFile.getParentFile().toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Files.deleteIfExists(tokenFile.toPath());
+        Files.createFile(tokenFile.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        Files.write(tokenFile.toPath(), token.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private AnalyzedProject cachedProject(List<String> key, Callable<AnalyzedProject> newProject) {
+        try {
+            return projects.get(key, newProject);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws UnsupportedEncodingException {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null) return parameters;
+
+        for (String parameter : query.split("&")) {
+            if (parameter.isEmpty()) continue;
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "true" : parameter.substring(equals + 1);
+            parameters.put(URLDecoder.decode(name, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return parameters;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        respond(exchange, status, contentType, (body + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    /**
+     * A project kept between requests with the scanner and processor it was analyzed with.  Each analysis compares the
+     * modification times and sizes of the source files with the ones the project was last brought up to date with, and only
+     * parses and recalculates what changed.  Archives are scanned again as a whole when the archive itself changes.
+     */
+    private static class AnalyzedProject {
+        private final File scanDir;
+        private final Scanner<?> scanner;
+        private final Processor processor;
+
+        private Project project;
+        private Map<File, Pair<Long, Long>> sourceFiles;
+
+        AnalyzedProject(File scanDir, Scanner<?> scanner, Processor processor) {
+            this.scanDir = scanDir;
+            this.scanner = scanner;
+            this.processor = processor;
+        }
+
+        //Requests for the same project take turns, the project can't be updated while another request writes it out
+        synchronized void analyze(OutputStream output) throws IOException, TransformerException {
+            try {
+                //Looked at before anything is parsed, so a file that changes during the analysis is parsed again next time
+                Map<File, Pair<Long, Long>> currentSourceFiles = listSourceFiles();
+
+                if (project == null || !(scanner instanceof FileScanner)) {
+                    if (project == null || !currentSourceFiles.equals(sourceFiles)) {
+                        release();
+                        project = scanner.scan();
+                        processor.process(project);
+                    }
+                } else {
+                    Set<File> deletedFiles = Sets.difference(sourceFiles.keySet(), currentSourceFiles.keySet()).immutableCopy();
+                    Set<File> modifiedFiles = currentSourceFiles.entrySet().stream()
+                            .filter(file -> !file.getValue().equals(sourceFiles.get(file.getKey())))
+                            .map(Map.Entry::getKey)
+                            .collect(Collectors.toSet());
+
+                    if (!modifiedFiles.isEmpty() || !deletedFiles.isEmpty()) {
+                        ProjectWatcher.update(scanDir, (FileScanner) scanner, processor, project, modifiedFiles, deletedFiles);
+                    }
+                }
+                sourceFiles = currentSourceFiles;
+            } catch (RuntimeException e) {
+                //Whatever state the project was left in, the next request starts from a fresh scan
+                project = null;
+                throw e;
+            }
+
+            Document outputDocument = new XMLOutputter().output(project);
+            CommandLineExecutive.writeXml(outputDocument, new StreamResult(output));
+        }
+
+        //Lets go of the parsed sources and the solvers that reach them, the next analysis starts from a fresh scan
+        synchronized void release() {
+            if (project != null) {
+                project.releaseSources();
+                project = null;
+            }
+        }
+
+        private Map<File, Pair<Long, Long>> listSourceFiles() throws IOException {
+            if (!(scanner instanceof FileScanner)) {
+                return Collections.singletonMap(scanDir, Pair.of(scanDir.lastModified(), scanDir.length()));
+            }
+
+            try (Stream<File> files = ((FileScanner) scanner).listSourceFiles()) {
+                return files.collect(Collectors.toMap(file -> file, file -> Pair.of(file.lastModified(), file.length())));
+            }
+        }
+    }
+}
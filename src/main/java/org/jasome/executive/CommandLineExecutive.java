@@ -1,14 +1,18 @@
 package org.jasome.executive;
 
-import com.google.common.collect.ImmutableSet;
 import org.apache.commons.cli.*;
-import org.apache.commons.io.filefilter.FileFilterUtils;
-import org.apache.commons.io.filefilter.IOFileFilter;
-import org.apache.commons.io.filefilter.NotFileFilter;
-import org.apache.commons.io.filefilter.RegexFileFilter;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.jasome.input.ArchiveScanner;
+import org.jasome.input.ClasspathIndex;
 import org.jasome.input.FileScanner;
+import org.jasome.input.GeneratedSourceDetector;
+import org.jasome.input.MetricsCache;
+import org.jasome.input.Processor;
 import org.jasome.input.Project;
+import org.jasome.input.Scanner;
+import org.jasome.input.ShardedProcessor;
+import org.jasome.input.SourcePatterns;
 import org.jasome.output.XMLOutputter;
 import org.w3c.dom.Document;
 
@@ -17,8 +21,15 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import java.io.File;
 import java.io.IOException;
-import java.util.Set;
-import java.util.regex.Pattern;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
 
 public class CommandLineExecutive {
 
@@ -28,144 +39,445 @@ public class CommandLineExecutive {
 
         {
 
-            //TODO: still need a way to do excludes, regex or something.  joda has an example package I want to ignore
-
             Option help = new Option("h", "help", false, "print this message");
             Option version = new Option("v", "version", false, "print the version information and exit");
             Option excludetests = new Option("xt", "excludetests", false, "exclude test files from scanning");
+            Option include = new Option("in", "include", true, "only scan source files matching this glob, or regular expression after regex: (can be given more than once)");
+            Option exclude = new Option("ex", "exclude", true, "skip source files and directories matching this glob, or regular expression after regex: (can be given more than once)");
             Option output = new Option("o", "output", true, "where to save output (default is print to STDOUT");
+            Option encoding = new Option("e", "encoding", true, "character encoding of the source files (default is the platform encoding, byte order marks always take precedence)");
+            Option cache = new Option("c", "cache", true, "directory to keep a metrics cache in, so unchanged types aren't recalculated on later runs");
+            Option parseThreads = new Option("pt", "parse-threads", true, "number of threads used to parse source files (default is the number of processors)");
+            Option threads = new Option("t", "threads", true, "number of threads used to calculate metrics, and to parse source files unless --parse-threads is given; 1 calculates everything in a fixed order on one thread, for debugging (default is the number of processors)");
+            Option since = new Option("s", "since", true, "only analyze what changed in the git working tree since the given revision");
+            Option previous = new Option("p", "previous", true, "output of an earlier complete run to merge a --since analysis into");
+            Option watch = new Option("w", "watch", false, "keep running and update the output whenever a source file changes");
+            Option daemon = new Option("d", "daemon", true, "run as a server on the given local port, answering analysis requests from jasome-client");
+            Option classpath = new Option("cp", "classpath", true, "jars and class directories the analyzed code uses, separated by " + File.pathSeparator + " (dir" + File.separator + "* includes every jar in dir), so calls into them can be resolved");
+            Option lowMemory = new Option("lm", "low-memory", false, "release parsed sources as soon as the metrics are calculated, so less memory is needed to write the output");
+            Option shardSize = new Option("ss", "shard-size", true, "parse and process the project a few packages at a time, about this many source files at once, for projects too big to fit in memory");
+            Option workers = new Option("wk", "workers", true, "process the shards of a --shard-size scan in this many separate worker processes");
+            Option dedup = new Option("dd", "dedup", false, "parse and calculate source files with identical contents only once, listing the other copies as aliases");
+            Option generated = new Option("gen", "generated", true, "look for generated source files and either skip them or only count their lines (skip or reduce)");
+            Option generatedPattern = new Option("gp", "generated-pattern", true, "regular expression that marks a file as generated when found near its start, on top of @Generated and generator header comments (can be given more than once)");
 
             options.addOption(help);
             options.addOption(version);
             options.addOption(excludetests);
+            options.addOption(include);
+            options.addOption(exclude);
             options.addOption(output);
+            options.addOption(encoding);
+            options.addOption(parseThreads);
+            options.addOption(threads);
+            options.addOption(cache);
+            options.addOption(since);
+            options.addOption(previous);
+            options.addOption(watch);
+            options.addOption(daemon);
+            options.addOption(classpath);
+            options.addOption(lowMemory);
+            options.addOption(shardSize);
+            options.addOption(workers);
+            options.addOption(dedup);
+            options.addOption(generated);
+            options.addOption(generatedPattern);
         }
 
+        //Workers are only started by another jasome process, so their option is understood but left out of the help
+        Options allOptions = new Options();
+        options.getOptions().forEach(allOptions::addOption);
+        allOptions.addOption(new Option("sw", "shard-worker", true, "do the work described by a task file as one of the workers of another jasome process"));
+
         CommandLineParser parser = new DefaultParser();
-        CommandLine line = parser.parse(options, args);
+        CommandLine line = parser.parse(allOptions, args);
 
         if (line.hasOption("help")) {
             HelpFormatter formatter = new HelpFormatter();
             formatter.printHelp("jasome <source directory>", options);
             System.exit(0);
         } else if (line.hasOption("version")) {
-            String v = CommandLineExecutive.class.getPackage().getImplementationVersion();
-            System.out.println("jasome version: " + v);
+            System.out.println("jasome version: " + getVersion());
             System.exit(0);
+        } else if (line.hasOption("daemon")) {
+            int port = -1;
+            try {
+                port = Integer.parseInt(line.getOptionValue("daemon"));
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid port: " + line.getOptionValue("daemon"));
+                System.exit(-1);
+            }
+
+            AnalysisServer server = new AnalysisServer(port, new File(System.getProperty("user.home"), ".jasome"));
+            server.start();
+            System.out.println("jasome daemon listening on http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort() + "/, requests need the token in " + server.getTokenFile());
+
+            try {
+                server.awaitStop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         } else if (line.getArgs().length != 1) {
             System.out.println("No source directory provided.");
             HelpFormatter formatter = new HelpFormatter();
-            formatter.printHelp("jasome <java file or directory>", options);
+            formatter.printHelp("jasome <java file, directory or source archive, or @file or - to read a list of files>", options);
             System.exit(0);
         } else {
             String fileParam = line.getArgs()[0];
-            File scanDir = new File(fileParam).getAbsoluteFile();
-            FileScanner scanner = new FileScanner(scanDir);
+            boolean fileList = isFileList(fileParam);
+
+            //Listed files are relative to the working directory, which is what they're reported relative to as well
+            File scanDir = fileList ? new File("").getAbsoluteFile() : new File(fileParam).getAbsoluteFile();
+            Scanner<?> scanner = ArchiveScanner.isArchive(scanDir) ? new ArchiveScanner(scanDir) : new FileScanner(scanDir);
+
+            if (fileList) {
+                try {
+                    ((FileScanner) scanner).setSourceFiles(readFileList(fileParam));
+                } catch (IOException e) {
+                    System.out.println("Unable to read the list of files from " + fileParam + ": " + e.getMessage());
+                    System.exit(-1);
+                }
+            }
 
-            IOFileFilter fileFilter = line.hasOption("excludetests") ? new ExcludeTestsFilter(scanDir) : FileFilterUtils.trueFileFilter();
+            List<String> includes = line.hasOption("include") ? Arrays.asList(line.getOptionValues("include")) : new ArrayList<>();
+            List<String> excludes = line.hasOption("exclude") ? new ArrayList<>(Arrays.asList(line.getOptionValues("exclude"))) : new ArrayList<>();
+            if (line.hasOption("excludetests")) {
+                excludes.addAll(SourcePatterns.TESTS);
+            }
+
+            try {
+                scanner.setPatterns(new SourcePatterns(includes, excludes));
+            } catch (IllegalArgumentException e) {
+                System.out.println("Invalid pattern: " + e.getMessage());
+                System.exit(-1);
+            }
 
-            scanner.setFilter(fileFilter);
+            if (line.hasOption("encoding")) {
+                try {
+                    scanner.setEncoding(Charset.forName(line.getOptionValue("encoding")));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Unsupported encoding: " + line.getOptionValue("encoding"));
+                    System.exit(-1);
+                }
+            }
+
+            if (line.hasOption("parse-threads")) {
+                try {
+                    scanner.setParseThreads(Integer.parseInt(line.getOptionValue("parse-threads")));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Invalid number of parse threads: " + line.getOptionValue("parse-threads"));
+                    System.exit(-1);
+                }
+            }
+
+            //The index maps the classpath's jars into memory, so it's closed as soon as the analysis is done
+            ClasspathIndex classpathIndex = null;
+            if (line.hasOption("classpath")) {
+                //The index is kept alongside the metrics cache if there is one, so both can be found and cleared in one place
+                File indexDirectory = line.hasOption("cache") ? new File(line.getOptionValue("cache")) : new File(System.getProperty("java.io.tmpdir"), "jasome");
+                classpathIndex = ClasspathIndex.open(classpathEntries(line.getOptionValue("classpath")), indexDirectory.getAbsoluteFile());
+                scanner.setClasspathIndex(classpathIndex);
+            }
+
+            if (line.hasOption("previous") && !line.hasOption("since")) {
+                System.out.println("--previous can only be used together with --since");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("since") && line.hasOption("cache")) {
+                System.out.println("--cache can't be combined with --since");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("watch") && (line.hasOption("since") || line.hasOption("cache"))) {
+                System.out.println("--watch can't be combined with --since or --cache");
+                System.exit(-1);
+            }
+
+            if ((line.hasOption("since") || line.hasOption("watch")) && !(scanner instanceof FileScanner)) {
+                System.out.println("--since and --watch can't be used on an archive");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("watch") && line.hasOption("low-memory")) {
+                System.out.println("--watch needs the parsed sources to update metrics, so it can't be combined with --low-memory");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("shard-size") && (line.hasOption("since") || line.hasOption("watch") || line.hasOption("cache"))) {
+                System.out.println("--shard-size can't be combined with --since, --watch or --cache");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("shard-size") && !scanDir.isDirectory()) {
+                System.out.println("--shard-size reads each source file more than once, so it needs a source directory");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("workers") && !line.hasOption("shard-size")) {
+                System.out.println("--workers hands shards out to separate processes, so it needs --shard-size");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("dedup") && !(scanner instanceof FileScanner)) {
+                System.out.println("--dedup can't be used on an archive");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("dedup") && (line.hasOption("since") || line.hasOption("watch"))) {
+                System.out.println("--dedup can't be combined with --since or --watch");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("dedup")) {
+                ((FileScanner) scanner).setDeduplicate(true);
+            }
+
+            String generatedSources = line.getOptionValue("generated");
+            if (generatedSources != null && !generatedSources.equals("skip") && !generatedSources.equals("reduce")) {
+                System.out.println("Invalid way to handle generated sources: " + generatedSources + " (expected skip or reduce)");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("generated-pattern") && generatedSources == null) {
+                System.out.println("--generated-pattern needs --generated to say what to do with generated sources");
+                System.exit(-1);
+            }
+
+            if ("reduce".equals(generatedSources) && line.hasOption("cache")) {
+                System.out.println("--generated reduce can't be combined with --cache");
+                System.exit(-1);
+            }
+
+            if (generatedSources != null) {
+                List<String> generatedPatterns = line.hasOption("generated-pattern") ? Arrays.asList(line.getOptionValues("generated-pattern")) : new ArrayList<>();
+                try {
+                    scanner.setGeneratedSourceDetector(new GeneratedSourceDetector(generatedPatterns), generatedSources.equals("skip"));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Invalid pattern: " + e.getMessage());
+                    System.exit(-1);
+                }
+            }
+
+            if (line.hasOption("watch") && fileList) {
+                System.out.println("--watch needs a directory to watch, not a list of files");
+                System.exit(-1);
+            }
+
+            if (line.hasOption("watch") && !scanDir.isDirectory()) {
+                System.out.println("--watch needs a directory to watch");
+                System.exit(-1);
+            }
 
             long startTime = System.currentTimeMillis();
 
-            Project scannerOutput = scanner.scan();
+            Processor processor = ProcessorFactory.getProcessor("reduce".equals(generatedSources));
 
-            ProcessorFactory.getProcessor().process(scannerOutput);
+            processor.setReleaseSources(line.hasOption("low-memory"));
 
-            long endTime = System.currentTimeMillis();
+            if (line.hasOption("threads")) {
+                try {
+                    int threads = Integer.parseInt(line.getOptionValue("threads"));
+                    processor.setThreads(threads);
+                    if (!line.hasOption("parse-threads")) {
+                        scanner.setParseThreads(threads);
+                    }
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Invalid number of threads: " + line.getOptionValue("threads"));
+                    System.exit(-1);
+                }
+            }
 
-            try {
-                Document outputDocument = new XMLOutputter().output(scannerOutput);
+            if (line.hasOption("shard-worker")) {
+                try {
+                    new ShardedProcessor(processor, 1, new File(System.getProperty("java.io.tmpdir"), "jasome")).work(scanner, new File(line.getOptionValue("shard-worker")));
+                } finally {
+                    IOUtils.closeQuietly(classpathIndex);
+                }
+                return;
+            }
+
+            if (line.hasOption("shard-size")) {
+                ShardedProcessor shardedProcessor = null;
+                try {
+                    shardedProcessor = new ShardedProcessor(processor, Integer.parseInt(line.getOptionValue("shard-size")), new File(System.getProperty("java.io.tmpdir"), "jasome"));
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Invalid shard size: " + line.getOptionValue("shard-size"));
+                    System.exit(-1);
+                }
+
+                if (line.hasOption("workers")) {
+                    try {
+                        int workerCount = Integer.parseInt(line.getOptionValue("workers"));
+                        shardedProcessor.setWorkers(workerCount, workerCommand(scanDir, line, workerCount));
+                    } catch (IllegalArgumentException e) {
+                        System.out.println("Invalid number of workers: " + line.getOptionValue("workers"));
+                        System.exit(-1);
+                    }
+                }
 
-                Transformer transformer = TransformerFactory.newInstance().newTransformer();
-                transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-                transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+                scanner.setShardedProcessor(shardedProcessor);
+            }
 
-                DOMSource source = new DOMSource(outputDocument);
+            if (line.hasOption("cache")) {
+                processor.setMetricsCache(new MetricsCache(new File(line.getOptionValue("cache")).getAbsoluteFile(), getVersion()));
+            }
 
-                StreamResult result;
-                if (line.hasOption("output")) {
+            Document outputDocument;
 
-                    String outputLocation = line.getOptionValue("output");
-                    File tempOutputFile = new File(outputLocation + ".tmp");
-                    File finalOutputFile = new File(outputLocation).getAbsoluteFile();
-                    if(finalOutputFile.getParentFile()!=null) {
-                        finalOutputFile.getParentFile().mkdirs();
+            try {
+                if (line.hasOption("watch")) {
+                    try {
+                        new ProjectWatcher(scanDir, (FileScanner) scanner, processor, project -> writeOutput(new XMLOutputter().output(project), line)).run();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
                     }
+                    return;
+                }
 
-                    result = new StreamResult(tempOutputFile);
-                    transformer.transform(source, result);
-                    tempOutputFile.renameTo(finalOutputFile);
-                    System.out.println("Operation completed in " + ((endTime - startTime) / 1000) + " seconds, output written to " + finalOutputFile);
+                if (line.hasOption("since")) {
+                    Optional<Document> previousOutput = Optional.empty();
+                    if (line.hasOption("previous")) {
+                        previousOutput = Optional.of(IncrementalAnalysis.readPreviousOutput(new File(line.getOptionValue("previous"))));
+                    }
+
+                    outputDocument = new IncrementalAnalysis(scanDir, line.getOptionValue("since")).run((FileScanner) scanner, processor, previousOutput);
                 } else {
-                    result = new StreamResult(System.out);
-                    transformer.transform(source, result);
+                    Project scannerOutput = scanner.scan();
+
+                    //A sharded scan processes the project as it goes
+                    if (!line.hasOption("shard-size")) {
+                        processor.process(scannerOutput);
+                    }
+
+                    outputDocument = new XMLOutputter().output(scannerOutput);
                 }
-            } catch (TransformerConfigurationException e) {
-                e.printStackTrace();
-            } catch (TransformerException e) {
-                e.printStackTrace();
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                System.exit(-1);
+                return;
+            } finally {
+                IOUtils.closeQuietly(classpathIndex);
             }
 
+            long endTime = System.currentTimeMillis();
 
+            writeOutput(outputDocument, line).ifPresent(finalOutputFile ->
+                    System.out.println("Operation completed in " + ((endTime - startTime) / 1000) + " seconds, output written to " + finalOutputFile)
+            );
         }
     }
 
-    private static class ExcludeTestsFilter implements IOFileFilter {
-        private static Set<String> testSuffixes = ImmutableSet.of(
-                "Test",
-                "Spec",
-                "Tests",
-                "Specs",
-                "Suite",
-                "TestCase"
-        );
-
-        private static Set<String> testDirectories = ImmutableSet.of(
-                "test",
-                "tests",
-                "examples",
-                "example",
-                "samples",
-                "sample"
-        );
-
-
-        private IOFileFilter underlyingFilter;
-
-        public ExcludeTestsFilter(File baseDir) {
-            String baseDirPath = baseDir.getPath();
-            IOFileFilter doesNotHaveTestSuffix = new NotFileFilter(FileFilterUtils.asFileFilter(path -> {
-                for(String testSuffix: testSuffixes) {
-                    if(path.getName().endsWith(testSuffix+".java")) {
-                        return true;
-                    }
+    //Returns the file the output went to, if it didn't go to STDOUT
+    private static Optional<File> writeOutput(Document outputDocument, CommandLine line) {
+        try {
+            if (line.hasOption("output")) {
+
+                String outputLocation = line.getOptionValue("output");
+                File tempOutputFile = new File(outputLocation + ".tmp");
+                File finalOutputFile = new File(outputLocation).getAbsoluteFile();
+                if(finalOutputFile.getParentFile()!=null) {
+                    finalOutputFile.getParentFile().mkdirs();
                 }
-                return false;
-            }));
-
-            IOFileFilter isNotInTestSubDirectory = new NotFileFilter(FileFilterUtils.asFileFilter(path -> {
-                String pathName = path.getPath();
-                String relativePath = StringUtils.removeStart(pathName, baseDirPath);
-                for(String testDirectory: testDirectories) {
-                    if(relativePath.contains(File.separator+testDirectory+File.separator)) {
-                        return true;
-                    }
+
+                writeXml(outputDocument, new StreamResult(tempOutputFile));
+                tempOutputFile.renameTo(finalOutputFile);
+                return Optional.of(finalOutputFile);
+            } else {
+                writeXml(outputDocument, new StreamResult(System.out));
+            }
+        } catch (TransformerConfigurationException e) {
+            e.printStackTrace();
+        } catch (TransformerException e) {
+            e.printStackTrace();
+        }
+        return Optional.empty();
+    }
+
+    static void writeXml(Document outputDocument, StreamResult result) throws TransformerException {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "4");
+
+        transformer.transform(new DOMSource(outputDocument), result);
+    }
+
+    //Starts this same program on the same sources, splitting the processors between the workers instead of each one using all of them
+    private static List<String> workerCommand(File scanDir, CommandLine line, int workerCount) {
+        int threadsPerWorker = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, workerCount));
+
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        for (String jvmArgument : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (jvmArgument.startsWith("-Xmx") || jvmArgument.startsWith("-Xms")) {
+                command.add(jvmArgument);
+            }
+        }
+        command.add("-Djava.util.concurrent.ForkJoinPool.common.parallelism=" + threadsPerWorker);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(CommandLineExecutive.class.getName());
+
+        command.add("--parse-threads");
+        command.add(line.getOptionValue("parse-threads", String.valueOf(threadsPerWorker)));
+        command.add("--threads");
+        command.add(line.getOptionValue("threads", String.valueOf(threadsPerWorker)));
+        for (String option : new String[]{"encoding", "classpath", "generated", "generated-pattern"}) {
+            if (line.hasOption(option)) {
+                for (String value : line.getOptionValues(option)) {
+                    command.add("--" + option);
+                    command.add(value);
                 }
-                return false;
-            }));
+            }
+        }
+
+        command.add(scanDir.getPath());
+        command.add("--shard-worker");
+        return command;
+    }
 
-            this.underlyingFilter = FileFilterUtils.and(doesNotHaveTestSuffix, isNotInTestSubDirectory);
+    private static List<File> classpathEntries(String classpath) {
+        List<File> entries = new ArrayList<>();
+        for (String entry : StringUtils.split(classpath, File.pathSeparator)) {
+            if (entry.endsWith("*")) {
+                File[] jars = new File(StringUtils.removeEnd(entry, "*")).listFiles((dir, name) -> name.endsWith(".jar"));
+                if (jars != null) {
+                    Arrays.sort(jars);
+                    entries.addAll(Arrays.asList(jars));
+                }
+            } else {
+                entries.add(new File(entry));
+            }
         }
+        return entries;
+    }
 
-        @Override
-        public boolean accept(File file) {
-            return underlyingFilter.accept(file);
+    private static boolean isFileList(String fileParam) {
+        return fileParam.equals("-") || fileParam.startsWith("@");
+    }
+
+    /**
+     * Reads the files to scan, one per line, from standard input for - or from the file named after the @.
+     */
+    private static List<File> readFileList(String fileParam) throws IOException {
+        List<String> lines;
+        if (fileParam.equals("-")) {
+            lines = IOUtils.readLines(System.in, Charset.defaultCharset());
+        } else {
+            lines = Files.readAllLines(Paths.get(fileParam.substring(1)), Charset.defaultCharset());
         }
 
-        @Override
-        public boolean accept(File dir, String name) {
-            return underlyingFilter.accept(dir, name);
+        List<File> files = new ArrayList<>();
+        for (String listedFile : lines) {
+            if (!listedFile.trim().isEmpty()) {
+                files.add(new File(listedFile.trim()));
+            }
         }
+        return files;
+    }
+
+    private static String getVersion() {
+        String version = CommandLineExecutive.class.getPackage().getImplementationVersion();
+        return version != null ? version : "development";
     }
 }
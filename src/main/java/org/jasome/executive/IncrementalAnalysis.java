@@ -0,0 +1,170 @@
+package org.jasome.executive;
+
+import com.google.common.graph.Graph;
+import com.google.common.graph.Graphs;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.jasome.input.*;
+import org.jasome.input.Package;
+import org.jasome.output.XMLMerger;
+import org.jasome.output.XMLOutputter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Analyzes only what changed in a git working tree since a given revision, and merges the results into the output of an
+ * earlier complete run.
+ *
+ * The files to load are the changed files plus everything within two steps of them in a {@link ReferenceIndex}.  Of those, only
+ * the changed types and their direct client and inheritance graph neighbours are recalculated and reported; the second step is
+ * only there so those neighbours are calculated with their own neighbours present.  Package and project metrics, and
+ * inheritance metrics of types further up or down a hierarchy, are carried over from the earlier output until the next full run.
+ */
+class IncrementalAnalysis {
+    private static final Logger logger = LoggerFactory.getLogger(IncrementalAnalysis.class);
+
+    private final File scanDir;
+    private final String revision;
+
+    IncrementalAnalysis(File scanDir, String revision) {
+        this.scanDir = scanDir;
+        this.revision = revision;
+    }
+
+    Document run(FileScanner scanner, Processor processor, Optional<Document> previousOutput) throws IOException {
+        GitChangeSet changes = GitChangeSet.since(scanDir, revision);
+
+        Set<String> changedSourceFiles = toSourceFileAttributes(changes.getChangedFiles());
+        Set<String> deletedSourceFiles = toSourceFileAttributes(changes.getDeletedFiles());
+
+        Set<String> removedNames = new HashSet<>();
+        changes.getDeletedFiles().forEach(file -> removedNames.add(FilenameUtils.getBaseName(file.getName())));
+        previousOutput.ifPresent(previous -> removedNames.addAll(classNamesFrom(previous, deletedSourceFiles)));
+
+        ReferenceIndex index;
+        try (Stream<File> sourceFiles = scanner.listSourceFiles()) {
+            index = new ReferenceIndex(sourceFiles, scanner.getEncoding(), removedNames);
+        }
+
+        Set<File> changedFiles = changes.getChangedFiles();
+        Set<String> reportedSourceFiles = toSourceFileAttributes(index.neighbourhood(changedFiles, removedNames, 1));
+        Set<File> loadedFiles = index.neighbourhood(changedFiles, removedNames, 2);
+        Set<String> sourceFilesUsingRemovedTypes = toSourceFileAttributes(index.filesReferencing(removedNames));
+
+        logger.info("{} files changed and {} were deleted since {}, analyzing {} files", changedFiles.size(), changes.getDeletedFiles().size(), revision, loadedFiles.size());
+
+        Document partialOutput;
+        Set<String> reEvaluatedClasses = new HashSet<>();
+
+        if (loadedFiles.isEmpty()) {
+            partialOutput = new XMLOutputter().output(new Project(FilenameUtils.getBaseName(scanDir.getPath())));
+        } else {
+            scanner.setFilter(FileFilterUtils.asFileFilter(file -> loadedFiles.contains(file.getAbsoluteFile())));
+            Project project = scanner.scan();
+
+            Set<Type> reEvaluatedTypes = typesToReEvaluate(project, changedSourceFiles, sourceFilesUsingRemovedTypes, reportedSourceFiles);
+            processor.processTypes(project, reEvaluatedTypes::contains);
+            reEvaluatedTypes.forEach(type -> reEvaluatedClasses.add(type.getParentPackage().getName() + "/" + type.getName()));
+
+            partialOutput = new XMLOutputter().output(project);
+        }
+
+        XMLMerger merger = new XMLMerger();
+        Document merged = merger.merge(
+                previousOutput.orElseGet(() -> merger.emptyCopyOf(partialOutput)),
+                partialOutput,
+                union(changedSourceFiles, deletedSourceFiles),
+                (packageName, className) -> reEvaluatedClasses.contains(packageName + "/" + className)
+        );
+        merged.getDocumentElement().setAttribute("changedSince", revision);
+
+        return merged;
+    }
+
+    private Set<Type> typesToReEvaluate(Project project, Set<String> changedSourceFiles, Set<String> sourceFilesUsingRemovedTypes, Set<String> reportedSourceFiles) {
+        Set<Type> allTypes = project.getPackages().stream().map(Package::getTypes).flatMap(Set::stream).collect(Collectors.toSet());
+
+        Set<Type> changedTypes = allTypes.stream().filter(type -> changedSourceFiles.contains(sourceFileOf(type))).collect(Collectors.toSet());
+
+        Set<Type> reEvaluated = new HashSet<>(changedTypes);
+        allTypes.stream().filter(type -> sourceFilesUsingRemovedTypes.contains(sourceFileOf(type))).forEach(reEvaluated::add);
+
+        Graph<Type> inheritanceGraph = project.getMetadata().getInheritanceGraph();
+        Graph<Type> clientGraph = project.getMetadata().getClientGraph();
+
+        for (Type changedType : changedTypes) {
+            reEvaluated.addAll(Graphs.reachableNodes(inheritanceGraph, changedType));
+            reEvaluated.addAll(Graphs.reachableNodes(Graphs.transpose(inheritanceGraph), changedType));
+            reEvaluated.addAll(clientGraph.predecessors(changedType));
+            reEvaluated.addAll(clientGraph.successors(changedType));
+        }
+
+        return reEvaluated.stream().filter(type -> reportedSourceFiles.contains(sourceFileOf(type))).collect(Collectors.toSet());
+    }
+
+    static Document readPreviousOutput(File previousOutputFile) throws IOException {
+        try {
+            Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(previousOutputFile);
+            removeWhitespace(document.getDocumentElement());
+            return document;
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Unable to read previous output " + previousOutputFile, e);
+        }
+    }
+
+    //The indentation of the old file would otherwise be kept and doubled up when the merged document is written out indented
+    private static void removeWhitespace(Node node) {
+        NodeList children = node.getChildNodes();
+        for (int i = children.getLength() - 1; i >= 0; i--) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.TEXT_NODE && child.getTextContent().trim().isEmpty()) {
+                node.removeChild(child);
+            } else {
+                removeWhitespace(child);
+            }
+        }
+    }
+
+    private static Set<String> classNamesFrom(Document document, Set<String> sourceFiles) {
+        Set<String> classNames = new HashSet<>();
+        NodeList classes = document.getElementsByTagName("Class");
+        for (int i = 0; i < classes.getLength(); i++) {
+            Element classElement = (Element) classes.item(i);
+            if (sourceFiles.contains(classElement.getAttribute("sourceFile"))) {
+                String className = classElement.getAttribute("name");
+                classNames.add(className.substring(className.lastIndexOf('.') + 1));
+            }
+        }
+        return classNames;
+    }
+
+    //Mirrors how FileScanner records where a type came from
+    private Set<String> toSourceFileAttributes(Collection<File> files) {
+        return files.stream()
+                .map(file -> file.getAbsolutePath().replace(scanDir.getAbsolutePath(), "."))
+                .collect(Collectors.toSet());
+    }
+
+    private static String sourceFileOf(Type type) {
+        return type.getSourceFile().orElse("");
+    }
+
+    private static Set<String> union(Set<String> first, Set<String> second) {
+        Set<String> union = new HashSet<>(first);
+        union.addAll(second);
+        return union;
+    }
+}
@@ -1,20 +1,32 @@
 package org.jasome.executive;
 
+import com.google.common.collect.ImmutableSet;
 import org.jasome.metrics.calculators.*;
 import org.jasome.input.Processor;
 
 class ProcessorFactory {
     static Processor getProcessor() {
+        return getProcessor(false);
+    }
+
+    /**
+     * @param reduceGeneratedTypes only count the lines of generated types, instead of calculating every metric for them
+     */
+    static Processor getProcessor(boolean reduceGeneratedTypes) {
         Processor processor = new Processor();
 
-        processor.registerTypeCalculator(new RawTotalLinesOfCodeCalculator());
+        RawTotalLinesOfCodeCalculator rawTotalLinesOfCode = new RawTotalLinesOfCodeCalculator();
+        TotalLinesOfCodeCalculator.TypeCalculator typeTotalLinesOfCode = new TotalLinesOfCodeCalculator.TypeCalculator();
+        TotalLinesOfCodeCalculator.MethodCalculator methodTotalLinesOfCode = new TotalLinesOfCodeCalculator.MethodCalculator();
+
+        processor.registerTypeCalculator(rawTotalLinesOfCode);
 
         processor.registerTypeCalculator(new NumberOfFieldsCalculator());
 
         processor.registerProjectCalculator(new TotalLinesOfCodeCalculator.ProjectCalculator());
         processor.registerPackageCalculator(new TotalLinesOfCodeCalculator.PackageCalculator());
-        processor.registerTypeCalculator(new TotalLinesOfCodeCalculator.TypeCalculator());
-        processor.registerMethodCalculator(new TotalLinesOfCodeCalculator.MethodCalculator());
+        processor.registerTypeCalculator(typeTotalLinesOfCode);
+        processor.registerMethodCalculator(methodTotalLinesOfCode);
 
         processor.registerMethodCalculator(new CyclomaticComplexityCalculator());
         processor.registerTypeCalculator(new WeightedMethodsCalculator());
@@ -39,6 +51,10 @@ class ProcessorFactory {
 
         processor.registerTypeCalculator(new TypeAggregatorCalculator());
         processor.registerPackageCalculator(new PackageAggregatorCalculator());
+
+        if (reduceGeneratedTypes) {
+            processor.setGeneratedTypeCalculators(ImmutableSet.of(rawTotalLinesOfCode, typeTotalLinesOfCode, methodTotalLinesOfCode));
+        }
         return processor;
     }
 }
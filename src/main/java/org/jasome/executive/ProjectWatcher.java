@@ -0,0 +1,187 @@
+package org.jasome.executive;
+
+import com.google.common.collect.Sets;
+import org.jasome.input.*;
+import org.jasome.input.Package;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps a scanned and processed project in memory and brings it up to date whenever source files under the scanned directory
+ * are created, modified or deleted.  Only the changed files are parsed again, and only the calculators for the types and
+ * packages that could be affected by the change are run again, everything else keeps the metrics it already had.
+ */
+class ProjectWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(ProjectWatcher.class);
+
+    //Editors tend to save a file in several steps, so events are collected until things have been quiet for this long
+    private static final long QUIET_PERIOD_MILLIS = 50;
+
+    private final File scanDir;
+    private final FileScanner scanner;
+    private final Processor processor;
+    private final Consumer<Project> output;
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    ProjectWatcher(File scanDir, FileScanner scanner, Processor processor, Consumer<Project> output) {
+        this.scanDir = scanDir;
+        this.scanner = scanner;
+        this.processor = processor;
+        this.output = output;
+    }
+
+    void run() throws IOException, InterruptedException {
+        try (WatchService watchService = scanDir.toPath().getFileSystem().newWatchService()) {
+            //Directories are watched before the first scan so nothing that changes during it is missed
+            watchDirectoryTree(watchService, scanDir.toPath());
+
+            Project project = scanner.scan();
+            processor.process(project);
+            output.accept(project);
+
+            while (true) {
+                Set<File> changedFiles = new HashSet<>();
+                Set<File> deletedDirectories = new HashSet<>();
+                boolean overflowed = false;
+
+                WatchKey key = watchService.take();
+                do {
+                    overflowed |= collectChanges(watchService, key, changedFiles, deletedDirectories);
+                    key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+                } while (key != null);
+
+                try {
+                    long startTime = System.currentTimeMillis();
+
+                    if (overflowed) {
+                        logger.info("Too many changes to keep track of, scanning everything again");
+                        project = scanner.scan();
+                        processor.process(project);
+                    } else {
+                        if (!update(project, changedFiles, deletedDirectories)) continue;
+                    }
+
+                    output.accept(project);
+
+                    logger.info("Metrics updated in {} ms", System.currentTimeMillis() - startTime);
+                } catch (RuntimeException e) {
+                    logger.error("Unable to update metrics, waiting for the next change", e);
+                }
+            }
+        }
+    }
+
+    private boolean update(Project project, Set<File> changedFiles, Set<File> deletedDirectories) {
+        Set<File> deletedFiles = changedFiles.stream().filter(file -> !file.exists()).collect(Collectors.toSet());
+        deletedFiles.addAll(sourceFilesUnder(project, deletedDirectories));
+        Set<File> modifiedFiles = Sets.difference(changedFiles, deletedFiles);
+
+        if (modifiedFiles.isEmpty() && deletedFiles.isEmpty()) return false;
+
+        update(scanDir, scanner, processor, project, modifiedFiles, deletedFiles);
+        return true;
+    }
+
+    /**
+     * Brings a processed project up to date with changes to some of its source files, recalculating only the metrics that
+     * could be affected by them.
+     */
+    static void update(File scanDir, FileScanner scanner, Processor processor, Project project, Set<File> modifiedFiles, Set<File> deletedFiles) {
+        //Packages that lose a type need their metrics recalculated even when nothing left in them is otherwise affected
+        Set<String> affectedPackages = new HashSet<>();
+        Set<File> staleFiles = Sets.union(modifiedFiles, deletedFiles);
+        for (Package aPackage : project.getPackages()) {
+            for (Type type : aPackage.getTypes()) {
+                if (staleFiles.contains(sourceFileOf(scanDir, type))) {
+                    affectedPackages.add(aPackage.getName());
+                }
+            }
+        }
+
+        Set<Type> affectedTypes = scanner.update(project, modifiedFiles, deletedFiles);
+        affectedTypes.forEach(type -> affectedPackages.add(type.getParentPackage().getName()));
+
+        logger.info("{} files changed and {} were deleted, recalculating metrics for {} types", modifiedFiles.size(), deletedFiles.size(), affectedTypes.size());
+
+        processor.process(project, affectedTypes::contains, aPackage -> affectedPackages.contains(aPackage.getName()));
+    }
+
+    //Returns true if events were lost and the changes can't be trusted
+    private boolean collectChanges(WatchService watchService, WatchKey key, Set<File> changedFiles, Set<File> deletedDirectories) throws IOException {
+        Path directory = watchedDirectories.get(key);
+        boolean overflowed = false;
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflowed = true;
+                continue;
+            }
+
+            Path path = directory.resolve((Path) event.context());
+
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                //Files can be created in a new directory before it's being watched, so they're picked up from the directory itself
+                watchDirectoryTree(watchService, path);
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.filter(Files::isRegularFile).forEach(file -> changedFiles.add(file.toFile()));
+                }
+            } else if (path.toString().endsWith(".java")) {
+                changedFiles.add(path.toFile());
+            } else if (event.kind() == ENTRY_DELETE) {
+                deletedDirectories.add(path.toFile());
+            }
+        }
+
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+
+        return overflowed;
+    }
+
+    private void watchDirectoryTree(WatchService watchService, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) throws IOException {
+                watchedDirectories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private Set<File> sourceFilesUnder(Project project, Set<File> directories) {
+        Set<File> sourceFiles = new HashSet<>();
+        for (Package aPackage : project.getPackages()) {
+            for (Type type : aPackage.getTypes()) {
+                File sourceFile = sourceFileOf(scanDir, type);
+                for (File directory : directories) {
+                    if (sourceFile.toPath().startsWith(directory.toPath())) {
+                        sourceFiles.add(sourceFile);
+                    }
+                }
+            }
+        }
+        return sourceFiles;
+    }
+
+    //The reverse of how FileScanner records where a type came from, so the result can be compared with the watched paths
+    private static File sourceFileOf(File scanDir, Type type) {
+        String sourceFile = type.getSourceFile().orElse("");
+        return new File(scanDir.getAbsolutePath() + sourceFile.substring(1));
+    }
+}
@@ -0,0 +1,148 @@
+package org.jasome.input;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Streams;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.filefilter.FileFilterUtils;
+import org.apache.commons.io.filefilter.IOFileFilter;
+import org.apache.commons.io.filefilter.SuffixFileFilter;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Scans the source files inside a source jar, zip or gzipped tar archive without extracting it.  Jars and zips are opened as
+ * a zip {@link FileSystem} and their entries are read as the parse workers get to them; tarballs can only be read from start
+ * to end, so each entry is read into memory as the scanner reaches it and handed to the parse workers from there.
+ *
+ * Filters are applied to a file made of the archive's path and the entry's path inside the archive, which is enough for
+ * filters that only look at names.  Patterns are matched against the entry's path inside the archive, directories included.
+ */
+public class ArchiveScanner extends Scanner<File> {
+
+    private File archive;
+    private IOFileFilter filter = new SuffixFileFilter(".java");
+
+    public ArchiveScanner(File archive) {
+        this.archive = archive;
+    }
+
+    public static boolean isArchive(File file) {
+        String name = file.getName().toLowerCase();
+        return file.isFile() && (isZip(name) || isTarball(name));
+    }
+
+    @Override
+    public Project scan() {
+        String name = archive.getName().toLowerCase();
+
+        try {
+            Project project;
+            if (isZip(name)) {
+                project = scanZip();
+            } else if (isTarball(name)) {
+                project = scanTarball();
+            } else {
+                throw new IllegalArgumentException("Not a jar, zip or tar.gz archive: " + archive);
+            }
+
+            project.addAttribute("sourceDir", archive.getAbsolutePath());
+
+            return project;
+        } catch (IOException | UncheckedIOException e) {
+            throw new RuntimeException("Unable to read source files from " + archive, e);
+        }
+    }
+
+    @Override
+    public void setFilter(IOFileFilter filter) {
+        this.filter = FileFilterUtils.and(filter, this.filter);
+    }
+
+    private Project scanZip() throws IOException {
+        try (FileSystem zip = FileSystems.newFileSystem(archive.toPath(), (ClassLoader) null);
+             Stream<Path> entries = Files.walk(zip.getPath("/"))) {
+
+            Iterator<Pair<SourceReader, Map<String, String>>> sourceCode = entries
+                    .filter(Files::isRegularFile)
+                    .filter(entry -> accepts(entry.toString()))
+                    .map(entry -> sourceOf(entry.toString(), () -> MappedSourceReader.read(ByteBuffer.wrap(Files.readAllBytes(entry)), encoding)))
+                    .iterator();
+
+            return doScan(nonEmpty(sourceCode), archive.getAbsolutePath());
+        }
+    }
+
+    private Project scanTarball() throws IOException {
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(new GzipCompressorInputStream(new BufferedInputStream(Files.newInputStream(archive.toPath()))))) {
+
+            Iterator<Pair<SourceReader, Map<String, String>>> sourceCode = new AbstractIterator<Pair<SourceReader, Map<String, String>>>() {
+                @Override
+                protected Pair<SourceReader, Map<String, String>> computeNext() {
+                    try {
+                        TarArchiveEntry entry;
+                        while ((entry = tar.getNextTarEntry()) != null) {
+                            if (entry.isFile() && accepts(entry.getName())) {
+                                byte[] contents = IOUtils.toByteArray(tar, entry.getSize());
+                                return sourceOf(entry.getName(), () -> MappedSourceReader.read(ByteBuffer.wrap(contents), encoding));
+                            }
+                        }
+                        return endOfData();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            };
+
+            return doScan(nonEmpty(sourceCode), archive.getAbsolutePath());
+        }
+    }
+
+    private Stream<Pair<SourceReader, Map<String, String>>> nonEmpty(Iterator<Pair<SourceReader, Map<String, String>>> sourceCode) {
+        if (!sourceCode.hasNext()) {
+            throw new IllegalArgumentException("No .java files found in " + archive.toString());
+        }
+        return Streams.stream(sourceCode);
+    }
+
+    private boolean accepts(String entryName) {
+        String relativePath = relativePath(entryName);
+        return relativePath != null && filter.accept(new File(archive, relativePath)) && patterns.accepts(Paths.get(relativePath));
+    }
+
+    //Entries are recorded the way FileScanner records files, relative to the root of the archive
+    private Pair<SourceReader, Map<String, String>> sourceOf(String entryName, SourceReader sourceReader) {
+        return Pair.of(sourceReader, ImmutableMap.of("sourceFile", "./" + relativePath(entryName)));
+    }
+
+    //Entry names can start with / or ./ depending on the tool that made the archive, or even point outside of it
+    private static String relativePath(String entryName) {
+        return FilenameUtils.normalize(StringUtils.removeStart(entryName, "/"), true);
+    }
+
+    private static boolean isZip(String name) {
+        return name.endsWith(".jar") || name.endsWith(".zip");
+    }
+
+    private static boolean isTarball(String name) {
+        return name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+}
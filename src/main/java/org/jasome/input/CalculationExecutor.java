@@ -0,0 +1,189 @@
+package org.jasome.input;
+
+import org.jasome.metrics.Calculator;
+import org.jasome.metrics.Metric;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Runs calculators as a graph of tasks, one for each calculator on each method, type or package.  All of them go to one
+ * work-stealing pool with a fixed number of threads.  A type's calculators start as soon as its own methods are done, and a
+ * package's as soon as its own types are, so a few large types hold up only their own package instead of whole layers of
+ * the project.
+ * <p>
+ * With one thread nothing is run in parallel: every task runs on the calling thread in a fixed order, with packages, types
+ * and methods by name and calculators in the order they were registered, so a run can be repeated exactly in a debugger.
+ */
+class CalculationExecutor {
+    private final int threads;
+
+    CalculationExecutor(int threads) {
+        this.threads = threads;
+    }
+
+    void calculate(Project project, Processor.Schedule schedule, Predicate<Type> typesToCalculate, Predicate<Package> packagesToCalculate, Function<Type, Predicate<Calculator<?>>> calculatorsFor) {
+        run(tasks -> {
+            for (Package aPackage : byName(project.getPackages(), Package::getName)) {
+                Runnable calculatePackage = packagesToCalculate.test(aPackage) ?
+                        () -> tasks.calculate(aPackage, schedule.layersOf(Package.class), calculator -> true, () -> { }) :
+                        () -> { };
+
+                List<Type> types = byName(aPackage.getTypes().stream().filter(typesToCalculate).collect(Collectors.toList()), Type::getName);
+                Runnable typeDone = tasks.countdown(types.size(), calculatePackage);
+
+                for (Type type : types) {
+                    Predicate<Calculator<?>> calculatesType = calculatorsFor.apply(type);
+
+                    List<Method> methods = byName(type.getMethods(), Method::getName);
+                    Runnable methodDone = tasks.countdown(methods.size(), () -> tasks.calculate(type, schedule.layersOf(Type.class), calculatesType, typeDone));
+
+                    for (Method method : methods) {
+                        tasks.calculate(method, schedule.layersOf(Method.class), calculatesType, methodDone);
+                    }
+                }
+            }
+        });
+    }
+
+    void calculateProject(Project project, Processor.Schedule schedule) {
+        run(tasks -> tasks.calculate(project, schedule.layersOf(Project.class), calculator -> true, () -> { }));
+    }
+
+    private void run(Consumer<Tasks> graph) {
+        Tasks tasks = threads == 1 ? new Tasks(null) : new Tasks(new ForkJoinPool(threads, CalculationExecutor::newThread, null, false));
+        try {
+            tasks.start(graph);
+            tasks.done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        } finally {
+            if (tasks.pool != null) {
+                tasks.pool.shutdownNow();
+            }
+        }
+    }
+
+    private static ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("jasome-calculator-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    private static <T> List<T> byName(Collection<T> code, Function<T, String> name) {
+        return code.stream().sorted(Comparator.comparing(name)).collect(Collectors.toList());
+    }
+
+    //The tasks of one run, which is done once every task has finished or as soon as one of them fails
+    private static class Tasks {
+        private final ForkJoinPool pool;
+        private final Queue<Runnable> queue = new ArrayDeque<>();
+        private final AtomicInteger unfinished = new AtomicInteger();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Tasks(ForkJoinPool pool) {
+            this.pool = pool;
+        }
+
+        void start(Consumer<Tasks> graph) {
+            //Building the graph is a task too, so the run can't look done before every task has been started
+            execute(() -> graph.accept(this));
+
+            if (pool == null) {
+                Runnable task;
+                while (!done.isDone() && (task = queue.poll()) != null) {
+                    task.run();
+                }
+            }
+        }
+
+        /**
+         * Runs the layers of calculators on a piece of code, each calculator as a task of its own and each layer once the one
+         * before it is done, then runs whatever was waiting on the code.
+         */
+        <T extends Code> void calculate(T code, List<List<Calculator<T>>> layers, Predicate<Calculator<?>> calculatorsToRun, Runnable then) {
+            calculate(code, layers, 0, calculatorsToRun, then);
+        }
+
+        private <T extends Code> void calculate(T code, List<List<Calculator<T>>> layers, int firstLayer, Predicate<Calculator<?>> calculatorsToRun, Runnable then) {
+            for (int i = firstLayer; i < layers.size(); i++) {
+                List<Calculator<T>> layer = layers.get(i).stream().filter(calculatorsToRun).collect(Collectors.toList());
+                if (!layer.isEmpty()) {
+                    int nextLayer = i + 1;
+                    Runnable calculatorDone = countdown(layer.size(), () -> calculate(code, layers, nextLayer, calculatorsToRun, then));
+
+                    for (Calculator<T> calculator : layer) {
+                        execute(() -> {
+                            Set<Metric> metrics = calculator.calculate(code);
+                            code.addMetrics(metrics);
+                            calculatorDone.run();
+                        });
+                    }
+                    return;
+                }
+            }
+            then.run();
+        }
+
+        /**
+         * @return something to run every time one of the given number of things is done, which runs the given action after the
+         * last of them, or straight away if there aren't any
+         */
+        Runnable countdown(int count, Runnable then) {
+            if (count == 0) {
+                then.run();
+                return () -> { };
+            }
+
+            AtomicInteger remaining = new AtomicInteger(count);
+            return () -> {
+                if (remaining.decrementAndGet() == 0) {
+                    then.run();
+                }
+            };
+        }
+
+        private void execute(Runnable task) {
+            unfinished.incrementAndGet();
+            Runnable counted = () -> {
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    done.completeExceptionally(e);
+                    return;
+                }
+                if (unfinished.decrementAndGet() == 0) {
+                    done.complete(null);
+                }
+            };
+
+            if (pool == null) {
+                queue.add(counted);
+            } else if (ForkJoinTask.getPool() == pool) {
+                //Tasks started from a worker go on its own queue, where idle workers can steal them
+                ForkJoinTask.adapt(counted).fork();
+            } else {
+                pool.execute(counted);
+            }
+        }
+    }
+}
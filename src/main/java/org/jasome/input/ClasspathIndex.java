@@ -0,0 +1,341 @@
+package org.jasome.input;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.UnsignedBytes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * An index of the classes on the classpath of the analyzed code, so that calls into libraries can be resolved without opening
+ * and listing every jar on every run.
+ *
+ * The index maps each class's canonical name to the classpath entry it was found in, sorted so that it can be binary searched.
+ * It's written to disk the first time a classpath is seen and memory-mapped on later runs; the index file is named after the
+ * paths, sizes and modification times of the classpath entries, so changing any of them builds a new one.  Class files are only
+ * read from the jars when a type is actually looked up.
+ */
+public class ClasspathIndex implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(ClasspathIndex.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final List<File> classpath;
+    private final ByteBuffer index;
+    private final int typeCount;
+    private final int offsetsStart;
+    private final int recordsStart;
+    private final Map<Integer, JarFile> openJars = new HashMap<>();
+
+    private ClasspathIndex(List<File> classpath, ByteBuffer index) throws IOException {
+        this.index = index;
+
+        if (index.getInt(0) != FORMAT_VERSION) {
+            throw new IOException("Unsupported classpath index version " + index.getInt(0));
+        }
+
+        int position = 4;
+        int entryCount = index.getInt(position);
+        position += 4;
+        List<File> indexedClasspath = new ArrayList<>();
+        for (int i = 0; i < entryCount; i++) {
+            int length = index.getShort(position) & 0xffff;
+            indexedClasspath.add(new File(readUtf8(position + 2, length)));
+            position += 2 + length;
+        }
+        if (!indexedClasspath.equals(classpath)) {
+            throw new IOException("Classpath index was built for a different classpath");
+        }
+        this.classpath = indexedClasspath;
+
+        this.typeCount = index.getInt(position);
+        this.offsetsStart = position + 4;
+        this.recordsStart = offsetsStart + 4 * typeCount;
+    }
+
+    /**
+     * Opens the index for a classpath, building and storing it first if there isn't one yet.
+     *
+     * @param classpath      jars and class directories, in classpath order
+     * @param indexDirectory where index files are kept between runs
+     */
+    public static ClasspathIndex open(List<File> classpath, File indexDirectory) throws IOException {
+        List<File> absoluteClasspath = new ArrayList<>();
+        for (File entry : classpath) {
+            absoluteClasspath.add(entry.getAbsoluteFile());
+        }
+
+        File indexFile = new File(indexDirectory, "classpath-" + keyOf(absoluteClasspath) + ".idx");
+
+        if (indexFile.isFile()) {
+            try {
+                return new ClasspathIndex(absoluteClasspath, map(indexFile));
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Unable to read classpath index {}, building it again", indexFile);
+            }
+        }
+
+        long startTime = System.currentTimeMillis();
+        int typeCount = build(absoluteClasspath, indexFile);
+        logger.info("Indexed {} classes from {} classpath entries in {} ms", typeCount, absoluteClasspath.size(), System.currentTimeMillis() - startTime);
+
+        return new ClasspathIndex(absoluteClasspath, map(indexFile));
+    }
+
+    public int size() {
+        return typeCount;
+    }
+
+    /**
+     * @param qualifiedName a class name as it's written in source, with dots between outer and nested classes
+     * @return the binary name of the class, with dollar signs between outer and nested classes, if it's on the classpath
+     */
+    public Optional<String> binaryNameOf(String qualifiedName) {
+        int record = find(qualifiedName);
+        if (record < 0) return Optional.empty();
+
+        int nameLength = index.getShort(record + 2) & 0xffff;
+        int binaryNamePosition = record + 4 + nameLength;
+        return Optional.of(readUtf8(binaryNamePosition + 2, index.getShort(binaryNamePosition) & 0xffff));
+    }
+
+    /**
+     * Where the class file for a binary class name can be found, or null if it isn't on the classpath.
+     */
+    URL locate(String binaryName) {
+        int record = find(binaryName.replace('$', '.'));
+        if (record < 0) return null;
+
+        File classpathEntry = classpath.get(index.getShort(record) & 0xffff);
+        try {
+            if (classpathEntry.isDirectory()) {
+                return new File(classpathEntry, classFileOf(binaryName)).toURI().toURL();
+            } else {
+                return new URL("jar:" + classpathEntry.toURI() + "!/" + classFileOf(binaryName));
+            }
+        } catch (MalformedURLException e) {
+            return null;
+        }
+    }
+
+    InputStream openClassFile(String binaryName) throws IOException {
+        int record = find(binaryName.replace('$', '.'));
+        if (record < 0) {
+            throw new FileNotFoundException(binaryName + " is not on the classpath");
+        }
+
+        int classpathEntryIndex = index.getShort(record) & 0xffff;
+        File classpathEntry = classpath.get(classpathEntryIndex);
+
+        if (classpathEntry.isDirectory()) {
+            return new FileInputStream(new File(classpathEntry, classFileOf(binaryName)));
+        }
+
+        JarFile jar;
+        synchronized (openJars) {
+            jar = openJars.get(classpathEntryIndex);
+            if (jar == null) {
+                jar = new JarFile(classpathEntry);
+                openJars.put(classpathEntryIndex, jar);
+            }
+        }
+
+        JarEntry entry = jar.getJarEntry(classFileOf(binaryName));
+        if (entry == null) {
+            throw new FileNotFoundException(binaryName + " is no longer in " + classpathEntry);
+        }
+        return jar.getInputStream(entry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (openJars) {
+            for (JarFile jar : openJars.values()) {
+                jar.close();
+            }
+            openJars.clear();
+        }
+    }
+
+    //Returns the position of the record for the name, or -1
+    private int find(String qualifiedName) {
+        byte[] key = qualifiedName.getBytes(StandardCharsets.UTF_8);
+
+        int low = 0;
+        int high = typeCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int record = recordsStart + index.getInt(offsetsStart + 4 * middle);
+            int comparison = compareName(record, key);
+
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return record;
+            }
+        }
+        return -1;
+    }
+
+    private int compareName(int record, byte[] key) {
+        int length = index.getShort(record + 2) & 0xffff;
+        int namePosition = record + 4;
+        for (int i = 0; i < Math.min(length, key.length); i++) {
+            int comparison = UnsignedBytes.compare(index.get(namePosition + i), key[i]);
+            if (comparison != 0) return comparison;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private String readUtf8(int position, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = index.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int build(List<File> classpath, File indexFile) throws IOException {
+        //Sorted the way lookups compare names; when a class is on the classpath twice the first one wins, like it would for the JVM
+        SortedMap<byte[], byte[]> records = new TreeMap<>(UnsignedBytes.lexicographicalComparator());
+
+        for (int i = 0; i < classpath.size(); i++) {
+            File classpathEntry = classpath.get(i);
+            int classpathEntryIndex = i;
+
+            try (Stream<String> classFiles = classFilesIn(classpathEntry)) {
+                classFiles.forEach(classFile -> {
+                    String binaryName = classFile.substring(0, classFile.length() - ".class".length()).replace('/', '.');
+                    if (!isIndexed(binaryName)) return;
+
+                    byte[] name = binaryName.replace('$', '.').getBytes(StandardCharsets.UTF_8);
+                    if (!records.containsKey(name)) {
+                        records.put(name, record(classpathEntryIndex, name, binaryName.getBytes(StandardCharsets.UTF_8)));
+                    }
+                });
+            } catch (IOException | UncheckedIOException e) {
+                logger.warn("Unable to read classpath entry {}, ignoring", classpathEntry);
+            }
+        }
+
+        indexFile.getParentFile().mkdirs();
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(FORMAT_VERSION);
+
+            out.writeInt(classpath.size());
+            for (File classpathEntry : classpath) {
+                byte[] path = classpathEntry.getPath().getBytes(StandardCharsets.UTF_8);
+                out.writeShort(path.length);
+                out.write(path);
+            }
+
+            out.writeInt(records.size());
+            int offset = 0;
+            for (byte[] record : records.values()) {
+                out.writeInt(offset);
+                offset += record.length;
+            }
+            for (byte[] record : records.values()) {
+                out.write(record);
+            }
+        }
+
+        Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        return records.size();
+    }
+
+    private static byte[] record(int classpathEntryIndex, byte[] name, byte[] binaryName) {
+        ByteBuffer record = ByteBuffer.allocate(2 + 2 + name.length + 2 + binaryName.length);
+        record.putShort((short) classpathEntryIndex);
+        record.putShort((short) name.length);
+        record.put(name);
+        record.putShort((short) binaryName.length);
+        record.put(binaryName);
+        return record.array();
+    }
+
+    private static Stream<String> classFilesIn(File classpathEntry) throws IOException {
+        if (classpathEntry.isDirectory()) {
+            Path root = classpathEntry.toPath();
+            return Files.walk(root)
+                    .filter(Files::isRegularFile)
+                    .map(file -> root.relativize(file).toString().replace(File.separatorChar, '/'))
+                    .filter(name -> name.endsWith(".class"));
+        } else if (classpathEntry.isFile()) {
+            JarFile jar = new JarFile(classpathEntry);
+            return Collections.list(jar.entries()).stream()
+                    .map(JarEntry::getName)
+                    .filter(name -> name.endsWith(".class") && !name.startsWith("META-INF/"))
+                    .onClose(() -> {
+                        try {
+                            jar.close();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+        } else {
+            throw new FileNotFoundException(classpathEntry.getPath());
+        }
+    }
+
+    //Anonymous and local classes can't be referred to from source, and neither can module and package descriptors
+    private static boolean isIndexed(String binaryName) {
+        if (binaryName.endsWith("module-info") || binaryName.endsWith("package-info")) return false;
+
+        String[] nestedNames = binaryName.split("\\$");
+        for (int i = 1; i < nestedNames.length; i++) {
+            if (nestedNames[i].isEmpty() || Character.isDigit(nestedNames[i].charAt(0))) return false;
+        }
+        return true;
+    }
+
+    private static String classFileOf(String binaryName) {
+        return binaryName.replace('.', '/') + ".class";
+    }
+
+    private static ByteBuffer map(File indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static String keyOf(List<File> classpath) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putInt(FORMAT_VERSION);
+        for (File entry : classpath) {
+            hasher.putString(entry.getPath(), StandardCharsets.UTF_8);
+            hasher.putLong(entry.length());
+            hasher.putLong(lastModified(entry));
+        }
+        return hasher.hash().toString().substring(0, 16);
+    }
+
+    //A class directory's own modification time doesn't change when classes deeper down are recompiled
+    private static long lastModified(File classpathEntry) throws IOException {
+        if (!classpathEntry.isDirectory()) return classpathEntry.lastModified();
+
+        try (Stream<Path> files = Files.walk(classpathEntry.toPath())) {
+            return files.mapToLong(file -> file.toFile().lastModified()).max().orElse(0);
+        }
+    }
+}
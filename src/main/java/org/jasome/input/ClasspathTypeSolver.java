@@ -0,0 +1,74 @@
+package org.jasome.input;
+
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.symbolsolver.javassistmodel.JavassistFactory;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+import javassist.ClassPath;
+import javassist.ClassPool;
+import javassist.CtClass;
+import javassist.NotFoundException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Optional;
+
+/**
+ * Resolves library types through a {@link ClasspathIndex}, the way a JarTypeSolver does for a single jar but without listing
+ * the jar's contents up front.  Class files are read and turned into declarations only when they're asked for.
+ */
+class ClasspathTypeSolver implements TypeSolver {
+    private final ClasspathIndex classpathIndex;
+    private final ClassPool classPool = new ClassPool(false);
+    private TypeSolver parent;
+
+    ClasspathTypeSolver(ClasspathIndex classpathIndex) {
+        this.classpathIndex = classpathIndex;
+
+        classPool.appendClassPath(new ClassPath() {
+            @Override
+            public InputStream openClassfile(String binaryName) throws NotFoundException {
+                try {
+                    return classpathIndex.openClassFile(binaryName);
+                } catch (IOException e) {
+                    throw new NotFoundException(binaryName, e);
+                }
+            }
+
+            @Override
+            public URL find(String binaryName) {
+                return classpathIndex.locate(binaryName);
+            }
+        });
+        classPool.appendSystemPath();
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        Optional<String> binaryName = classpathIndex.binaryNameOf(name);
+        if (!binaryName.isPresent()) {
+            return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+        }
+
+        //Types are resolved from several calculator threads at once, and the class pool isn't safe for that
+        synchronized (classPool) {
+            try {
+                CtClass ctClass = classPool.get(binaryName.get());
+                return SymbolReference.solved(JavassistFactory.toTypeDeclaration(ctClass, getRoot()));
+            } catch (NotFoundException e) {
+                return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+            }
+        }
+    }
+}
@@ -1,24 +1,36 @@
 package org.jasome.input;
 
 import com.google.common.base.Objects;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.primitives.Ints;
 import org.jasome.metrics.Metric;
 
 import java.util.*;
 
 public abstract class Code {
+    private static final Interner<String> sourceFiles = Interners.newWeakInterner();
+    private static final List<String> TYPED_ATTRIBUTES = ImmutableList.of("sourceFile", "lineStart", "lineEnd", "constructor");
+
     private String name;
     protected Set<Code> children = new HashSet<Code>();
     private Code parent = null;
     private final Map<String, Metric> metrics;
-    private final Map<String, String> attributes;
+
+    //The attributes every type or method has get their own fields, only the rare other ones need a map
+    private int lineStart = -1;
+    private int lineEnd = -1;
+    private Boolean constructor;
+    private String sourceFile;
+    private Map<String, String> otherAttributes;
 
     public Code(String name) {
         this.name = name;
         this.children = new HashSet<Code>();
         this.metrics = new HashMap<String, Metric>();
-        this.attributes = new HashMap<String, String>();
     }
 
     public String getName() {
@@ -33,8 +45,32 @@ public abstract class Code {
         return Optional.ofNullable(this.metrics.get(name));
     }
 
+    /**
+     * @return a read-only view of the attributes, with sourceFile, lineStart, lineEnd and constructor first if they're set
+     */
     public Map<String, String> getAttributes() {
-        return ImmutableMap.copyOf(attributes);
+        return new AttributeView();
+    }
+
+    /**
+     * @return the file the code came from relative to the scanned directory, only set on types
+     */
+    public Optional<String> getSourceFile() {
+        return Optional.ofNullable(sourceFile);
+    }
+
+    /**
+     * @return the line the code starts on, or -1 if it isn't known
+     */
+    public int getLineStart() {
+        return lineStart;
+    }
+
+    /**
+     * @return the line the code ends on, or -1 if it isn't known
+     */
+    public int getLineEnd() {
+        return lineEnd;
     }
 
     @Override
@@ -57,8 +93,39 @@ public abstract class Code {
         metrics.put(metric.getName(), metric);
     }
 
+    synchronized void clearMetrics() {
+        metrics.clear();
+    }
+
     synchronized void addAttribute(String key, String value) {
-        this.attributes.put(key, value);
+        Integer line = Ints.tryParse(value);
+        if (key.equals("lineStart") && line != null) {
+            lineStart = line;
+        } else if (key.equals("lineEnd") && line != null) {
+            lineEnd = line;
+        } else if (key.equals("constructor") && (value.equals("true") || value.equals("false"))) {
+            constructor = Boolean.valueOf(value);
+        } else if (key.equals("sourceFile")) {
+            setSourceFile(value);
+        } else {
+            if (otherAttributes == null) {
+                otherAttributes = new LinkedHashMap<>(4);
+            }
+            otherAttributes.put(key, value);
+        }
+    }
+
+    synchronized void setSourceFile(String sourceFile) {
+        this.sourceFile = sourceFiles.intern(sourceFile);
+    }
+
+    synchronized void setLineRange(int lineStart, int lineEnd) {
+        this.lineStart = lineStart;
+        this.lineEnd = lineEnd;
+    }
+
+    synchronized void setConstructor(boolean constructor) {
+        this.constructor = constructor;
     }
 
     void addAttribute(Map.Entry<String, String> attribute) {
@@ -86,5 +153,66 @@ public abstract class Code {
         this.children.add(child);
     }
 
-}
+    protected void removeChild(Code child) {
+        this.children.remove(child);
+    }
 
+    //Reads the fields and the map of other attributes as it's iterated rather than copying them, and answers lookups of the
+    //typed attributes straight from the fields
+    private class AttributeView extends AbstractMap<String, String> {
+        @Override
+        public String get(Object key) {
+            if ("sourceFile".equals(key)) {
+                return sourceFile;
+            } else if ("lineStart".equals(key)) {
+                return lineStart >= 0 ? String.valueOf(lineStart) : null;
+            } else if ("lineEnd".equals(key)) {
+                return lineEnd >= 0 ? String.valueOf(lineEnd) : null;
+            } else if ("constructor".equals(key)) {
+                return constructor != null ? constructor.toString() : null;
+            } else {
+                return otherAttributes != null ? otherAttributes.get(key) : null;
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    Iterator<String> typedKeys = TYPED_ATTRIBUTES.iterator();
+                    Iterator<Entry<String, String>> others = otherAttributes != null ? Collections.unmodifiableMap(otherAttributes).entrySet().iterator() : Collections.emptyIterator();
+
+                    return new AbstractIterator<Entry<String, String>>() {
+                        @Override
+                        protected Entry<String, String> computeNext() {
+                            while (typedKeys.hasNext()) {
+                                String key = typedKeys.next();
+                                String value = get(key);
+                                if (value != null) {
+                                    return new SimpleImmutableEntry<>(key, value);
+                                }
+                            }
+                            return others.hasNext() ? others.next() : endOfData();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    int size = otherAttributes != null ? otherAttributes.size() : 0;
+                    if (sourceFile != null) size++;
+                    if (lineStart >= 0) size++;
+                    if (lineEnd >= 0) size++;
+                    if (constructor != null) size++;
+                    return size;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.jasome.input;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.body.BodyDeclaration;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.EnumDeclaration;
+import com.github.javaparser.ast.body.TypeDeclaration;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Resolves types declared in compilation units the scanner has already parsed, looking them up by fully qualified name
+ * instead of finding and parsing their source files again the way a JavaParserTypeSolver does.
+ */
+class CompilationUnitTypeSolver implements TypeSolver {
+    private final Map<String, TypeDeclaration<?>> typesByName = new HashMap<>();
+    private TypeSolver parent;
+
+    /**
+     * Indexes the top level and member types of a compilation unit.  Must not be called once resolution has started.
+     */
+    void add(CompilationUnit compilationUnit) {
+        String packagePrefix = compilationUnit.getPackageDeclaration().map(p -> p.getNameAsString() + ".").orElse("");
+        for (TypeDeclaration<?> type : compilationUnit.getTypes()) {
+            index(packagePrefix, type);
+        }
+    }
+
+    private void index(String prefix, TypeDeclaration<?> type) {
+        //Annotation declarations can't be turned into resolved declarations, so they're left to the solvers after this one
+        if (!(type instanceof ClassOrInterfaceDeclaration || type instanceof EnumDeclaration)) return;
+
+        String name = prefix + type.getNameAsString();
+
+        //If two files declare the same type the first one wins, like it would on a source path
+        typesByName.putIfAbsent(name, type);
+
+        for (BodyDeclaration<?> member : type.getMembers()) {
+            if (member instanceof TypeDeclaration) {
+                index(name + ".", (TypeDeclaration<?>) member);
+            }
+        }
+    }
+
+    @Override
+    public TypeSolver getParent() {
+        return parent;
+    }
+
+    @Override
+    public void setParent(TypeSolver parent) {
+        this.parent = parent;
+    }
+
+    @Override
+    public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+        TypeDeclaration<?> type = typesByName.get(name);
+        if (type == null) {
+            return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+        }
+        return SymbolReference.solved(JavaParserFacade.get(this).getTypeDeclaration(type));
+    }
+}
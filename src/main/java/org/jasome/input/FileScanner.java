@@ -1,8 +1,10 @@
 package org.jasome.input;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Sets;
-import org.apache.commons.io.FileUtils;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
 import org.apache.commons.io.filefilter.*;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
@@ -10,16 +12,30 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.util.Collection;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-public class FileScanner extends Scanner {
+public class FileScanner extends Scanner<File> {
     private static final Logger logger = LoggerFactory.getLogger(FileScanner.class);
 
     private File scanDir;
+    private boolean deduplicate;
+    private List<File> sourceFiles;
     private IOFileFilter filter = FileFilterUtils.and(
             new SuffixFileFilter(".java"),
             CanReadFileFilter.CAN_READ,
@@ -30,54 +46,199 @@ public class FileScanner extends Scanner {
         this.scanDir = scanDir;
     }
 
+    @Override
     public Project scan() {
 
-        Collection<File> inputFiles = gatherFilesFrom(scanDir, filter);
+        try (Stream<File> inputFiles = gatherFilesFrom(scanDir)) {
+
+            //Files are only opened when the scanner gets around to parsing them, nothing is read up front
+            //unless duplicates have to be found first
+            Stream<Pair<SourceReader, Map<String, String>>> sourceCodeWithAttributes;
+            Set<File> copies = Collections.emptySet();
+            if (deduplicate) {
+                List<File> files = inputFiles.collect(Collectors.toList());
+                Map<File, List<File>> duplicates = findDuplicates(files);
+                copies = duplicates.values().stream().flatMap(List::stream).collect(Collectors.toSet());
+
+                Set<File> skipped = copies;
+                sourceCodeWithAttributes = files.stream()
+                        .filter(file -> !skipped.contains(file))
+                        .map(file -> sourceOf(file, duplicates.getOrDefault(file, Collections.emptyList())));
+            } else {
+                sourceCodeWithAttributes = inputFiles.map(file -> sourceOf(file, Collections.emptyList()));
+            }
 
-        Collection<Pair<String, Map<String, String>>> sourceCodeWithAttributes = inputFiles
-                .stream()
-                .<Optional<Pair<String, Map<String, String>>>>map(file -> {
-                    try {
-                        String fileContents = FileUtils.readFileToString(file, Charset.defaultCharset());
+            Project project = doScan(sourceCodeWithAttributes, scanDir.getAbsolutePath());
 
-                        Map<String, String> attributes = ImmutableMap.of("sourceFile", file.getAbsolutePath().replace(scanDir.getAbsolutePath(), "."));
+            project.addAttribute("sourceDir", scanDir.getAbsolutePath());
+            if (deduplicate) {
+                project.addAttribute("duplicateFiles", String.valueOf(copies.size()));
+            }
 
-                        return Optional.of(Pair.of(fileContents, attributes));
-                    } catch (IOException e) {
-                        return Optional.empty();
-                    }
-                }).filter(Optional::isPresent).map(Optional::get).collect(Collectors.toList());
+            return project;
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to read source files from " + scanDir, e);
+        }
+    }
+
+    /**
+     * Has files with exactly the same contents parsed and calculated only once, as is common with generated or shaded sources
+     * copied between modules.  The types of the first copy, by path, get an {@code aliases} attribute listing the sourceFile
+     * of every other copy, which share its metrics.
+     */
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    private Pair<SourceReader, Map<String, String>> sourceOf(File file, List<File> aliases) {
+        SourceReader sourceReader = new MappedSourceReader(file.toPath(), encoding);
+
+        Map<String, String> attributes = aliases.isEmpty()
+                ? ImmutableMap.of("sourceFile", toSourceFileAttribute(file))
+                : ImmutableMap.of("sourceFile", toSourceFileAttribute(file), "aliases", aliases.stream().map(this::toSourceFileAttribute).collect(Collectors.joining(",")));
+
+        return Pair.of(sourceReader, attributes);
+    }
+
+    /**
+     * @return the files that have copies, each with its copies in path order, where the files themselves come first in path
+     * order among their copies
+     */
+    private static Map<File, List<File>> findDuplicates(List<File> files) throws IOException {
+        //Only files of the same size can be copies, so most files never have to be read
+        Map<Long, List<File>> filesBySize = files.stream().collect(Collectors.groupingBy(File::length));
+
+        Map<File, List<File>> duplicates = new HashMap<>();
+        for (List<File> sameSize : filesBySize.values()) {
+            if (sameSize.size() < 2) {
+                continue;
+            }
+
+            Map<HashCode, List<File>> filesByContents = new HashMap<>();
+            for (File file : sameSize) {
+                filesByContents.computeIfAbsent(MoreFiles.asByteSource(file.toPath()).hash(Hashing.sha256()), hash -> new ArrayList<>()).add(file);
+            }
+
+            for (List<File> copies : filesByContents.values()) {
+                if (copies.size() > 1) {
+                    Collections.sort(copies);
+                    duplicates.put(copies.get(0), ImmutableList.copyOf(copies.subList(1, copies.size())));
+                }
+            }
+        }
+        return duplicates;
+    }
+
+    /**
+     * Updates a project returned by {@link #scan()} after some of its source files were created, modified or deleted.
+     *
+     * @param changedFiles files that were created or modified, those that don't pass the filter or the patterns are ignored
+     * @param deletedFiles files that no longer exist
+     * @return the types whose metrics have to be recalculated
+     */
+    public Set<Type> update(Project project, Set<File> changedFiles, Set<File> deletedFiles) {
+        Set<String> staleSourceFiles = new HashSet<>();
+        changedFiles.forEach(file -> staleSourceFiles.add(toSourceFileAttribute(file)));
+        deletedFiles.forEach(file -> staleSourceFiles.add(toSourceFileAttribute(file)));
+
+        Stream<Pair<SourceReader, Map<String, String>>> sourceCodeWithAttributes = changedFiles.stream()
+                .filter(File::isFile)
+                .filter(filter::accept)
+                .filter(file -> patterns.accepts(relativize(file.toPath())))
+                .sorted()
+                .map(file -> sourceOf(file, Collections.emptyList()));
+
+        return doUpdate(project, sourceCodeWithAttributes, staleSourceFiles, scanDir.getAbsolutePath());
+    }
+
+    private String toSourceFileAttribute(File file) {
+        return file.getAbsolutePath().replace(scanDir.getAbsolutePath(), ".");
+    }
 
-        Project project = doScan(sourceCodeWithAttributes, scanDir.getAbsolutePath());
+    private Path relativize(Path path) {
+        return scanDir.toPath().toAbsolutePath().relativize(path.toAbsolutePath());
+    }
 
-        project.addAttribute("sourceDir", scanDir.getAbsolutePath());
+    /**
+     * @return the files that a scan would read, as a stream that must be closed
+     */
+    public Stream<File> listSourceFiles() throws IOException {
+        return gatherFilesFrom(scanDir);
+    }
 
-        return project;
+    /**
+     * Scans exactly these files instead of looking for them in the scan directory, for callers like build tools that already
+     * know them.  Relative paths are relative to the scan directory, which is still what the files' sourceFile attributes are
+     * relative to.  The files are taken to be readable source files without checking, only the patterns are applied to them.
+     */
+    public void setSourceFiles(List<File> sourceFiles) {
+        this.sourceFiles = sourceFiles.stream()
+                .map(file -> (file.isAbsolute() ? file : new File(scanDir, file.getPath())).toPath().normalize().toFile())
+                .collect(Collectors.toList());
     }
 
+    @Override
     public void setFilter(IOFileFilter filter) {
         this.filter = FileFilterUtils.and(filter, this.filter);
     }
 
-    private static Collection<File> gatherFilesFrom(File file, IOFileFilter filter) {
+    private Stream<File> gatherFilesFrom(File file) throws IOException {
+
+        Stream<File> filesToScan;
+        if (sourceFiles != null) {
+            List<File> listedFiles = sourceFiles.stream()
+                    .filter(listedFile -> patterns.accepts(relativize(listedFile.toPath())))
+                    .collect(Collectors.toList());
+
+            if (listedFiles.isEmpty()) {
+                throw new IllegalArgumentException("No .java files listed to scan in " + file.toString());
+            }
+
+            filesToScan = listedFiles.stream();
+        } else if (file.isDirectory()) {
+            Path root = file.toPath();
+            List<File> javaFiles = new ArrayList<>();
+
+            //Excluded directories are skipped whole, so big trees like build output or node_modules are never listed.  Symlinked
+            //source directories are scanned like any other, as long as they don't lead back to a directory above them
+            Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    if (!directory.equals(root) && patterns.excludesDirectory(root.relativize(directory))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
 
-        Collection<File> filesToScan;
-        if (file.isDirectory()) {
-            Collection<File> javaFiles = FileUtils.listFiles(file, filter, TrueFileFilter.INSTANCE);
+                @Override
+                public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile() && patterns.includesFile(root.relativize(path)) && filter.accept(path.toFile())) {
+                        javaFiles.add(path.toFile());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path path, IOException e) throws IOException {
+                    if (e instanceof FileSystemLoopException) {
+                        logger.warn("Not scanning {} again, it links back to a directory above it", path);
+                        return FileVisitResult.CONTINUE;
+                    }
+                    throw e;
+                }
+            });
 
-            if (javaFiles.size() == 0) {
-                logger.error("No .java files found in " + file.toString());
-                System.exit(-1);
+            if (javaFiles.isEmpty()) {
+                throw new IllegalArgumentException("No .java files found in " + file.toString());
             }
 
-            filesToScan = javaFiles;
+            filesToScan = javaFiles.stream();
         } else {
             if (!filter.accept(file)) {
-                logger.error("Not a .java source file: " + file.toString());
-                System.exit(-1);
+                throw new IllegalArgumentException("Not a .java source file: " + file.toString());
             }
 
-            filesToScan = Sets.newHashSet(file);
+            filesToScan = Stream.of(file);
         }
         return filesToScan;
     }
@@ -0,0 +1,59 @@
+package org.jasome.input;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Tells generated source files apart from hand-written ones by looking only at the start of each file, before it's parsed.
+ * A file counts as generated if it has a {@code @Generated} annotation, if a comment above its package declaration says it
+ * was generated (the way protoc, xjc and most other generators mark their output), or if it matches one of the extra
+ * patterns.
+ */
+public class GeneratedSourceDetector {
+    /**
+     * How many characters at the start of a file are looked at, enough to get past the license, imports and the annotations
+     * of the first type in all but the largest files.
+     */
+    static final int PREFIX_LENGTH = 8 * 1024;
+
+    private static final Pattern GENERATED_ANNOTATION = Pattern.compile("@(javax\\.annotation\\.(processing\\.)?)?Generated\\b");
+    private static final Pattern GENERATED_COMMENT = Pattern.compile("(?i)do not edit|auto-?generated|generated by|@generated");
+    private static final Pattern END_OF_HEADER = Pattern.compile("(?m)^\\s*(@|(package|import|public|final|abstract|class|interface|enum)\\b)");
+
+    private final List<Pattern> patterns;
+
+    /**
+     * @param patterns regular expressions that mark a file as generated when they're found anywhere in its first few thousand
+     *                 characters
+     * @throws java.util.regex.PatternSyntaxException if one of the patterns isn't a valid regular expression
+     */
+    public GeneratedSourceDetector(List<String> patterns) {
+        this.patterns = ImmutableList.copyOf(patterns.stream().map(Pattern::compile).collect(Collectors.toList()));
+    }
+
+    /**
+     * @param prefix the start of a source file, up to {@link #PREFIX_LENGTH} characters of it
+     */
+    public boolean isGenerated(CharSequence prefix) {
+        if (GENERATED_ANNOTATION.matcher(prefix).find() || GENERATED_COMMENT.matcher(header(prefix)).find()) {
+            return true;
+        }
+
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(prefix).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //Only comments above the code count, a hand-written class can talk about generated code in its javadoc
+    private static CharSequence header(CharSequence prefix) {
+        Matcher endOfHeader = END_OF_HEADER.matcher(prefix);
+        return endOfHeader.find() ? prefix.subSequence(0, endOfHeader.start()) : prefix;
+    }
+}
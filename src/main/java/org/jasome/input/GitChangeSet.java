@@ -0,0 +1,105 @@
+package org.jasome.input;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.apache.commons.io.IOUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The .java files under a directory that differ between a git revision and the working tree, including files that are
+ * untracked.  Paths come from the git command line tool, so git needs to be installed and the directory needs to be inside
+ * a git work tree.
+ */
+public class GitChangeSet {
+    private final Set<File> changedFiles;
+    private final Set<File> deletedFiles;
+
+    private GitChangeSet(Set<File> changedFiles, Set<File> deletedFiles) {
+        this.changedFiles = changedFiles;
+        this.deletedFiles = deletedFiles;
+    }
+
+    public static GitChangeSet since(File directory, String revision) throws IOException {
+        File workingDirectory = directory.isDirectory() ? directory : directory.getParentFile();
+
+        //Without rename detection a renamed file shows up under both its old and new path, so the old one counts as deleted
+        List<String> paths = new ArrayList<>();
+        paths.addAll(git(workingDirectory, "diff", "--name-only", "--no-renames", "-z", "--relative", revision, "--"));
+        paths.addAll(git(workingDirectory, "ls-files", "-z", "--others", "--exclude-standard"));
+
+        ImmutableSet.Builder<File> changedFiles = ImmutableSet.builder();
+        ImmutableSet.Builder<File> deletedFiles = ImmutableSet.builder();
+
+        for (String path : paths) {
+            if (!path.endsWith(".java")) continue;
+
+            File file = new File(workingDirectory, path).getAbsoluteFile();
+            if (file.exists()) {
+                changedFiles.add(file);
+            } else {
+                deletedFiles.add(file);
+            }
+        }
+
+        return new GitChangeSet(changedFiles.build(), deletedFiles.build());
+    }
+
+    /**
+     * @return files that were added or modified since the revision, and still exist
+     */
+    public Set<File> getChangedFiles() {
+        return changedFiles;
+    }
+
+    /**
+     * @return files that existed at the revision but have since been deleted
+     */
+    public Set<File> getDeletedFiles() {
+        return deletedFiles;
+    }
+
+    public boolean isEmpty() {
+        return changedFiles.isEmpty() && deletedFiles.isEmpty();
+    }
+
+    private static List<String> git(File workingDirectory, String... arguments) throws IOException {
+        List<String> command = ImmutableList.<String>builder()
+                .add("git", "-C", workingDirectory.getAbsolutePath())
+                .add(arguments)
+                .build();
+
+        Process process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        String output;
+        try (InputStream stdout = process.getInputStream()) {
+            output = IOUtils.toString(stdout, StandardCharsets.UTF_8);
+        }
+
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Command '" + String.join(" ", command) + "' failed with exit code " + exitCode);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for git", e);
+        }
+
+        List<String> paths = new ArrayList<>();
+        for (String path : output.split("\0")) {
+            if (!path.isEmpty()) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+}
@@ -0,0 +1,170 @@
+package org.jasome.input;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads a source file into a byte buffer and decodes it straight into a character buffer, both reused by every file read on
+ * the same thread, so scanning a large tree doesn't allocate a byte array and a String for every file.  Only files too large
+ * for the byte buffer to be worth keeping are memory-mapped instead; a mapping is only released once it's garbage collected,
+ * so mapping every file of a large tree, or of every rescan in watch or daemon mode, could run out of mappings and keep files
+ * open.
+ *
+ * A byte order mark at the start of the file takes precedence over the configured charset.  Because the buffer is shared,
+ * the reader returned by {@link #open()} is only valid until the next file is opened on the same thread, which is fine for
+ * the scanner since each parse worker reads and parses one file at a time.
+ */
+class MappedSourceReader implements SourceReader {
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Files up to this size are read into the thread's byte buffer, larger ones are mapped.
+     */
+    static final int MAPPING_THRESHOLD = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(INITIAL_BUFFER_SIZE));
+    private static final ThreadLocal<CharBuffer> decodeBuffers = ThreadLocal.withInitial(() -> CharBuffer.allocate(INITIAL_BUFFER_SIZE));
+    private static final ThreadLocal<Map<Charset, CharsetDecoder>> decoders = ThreadLocal.withInitial(HashMap::new);
+
+    private final Path path;
+    private final Charset charset;
+
+    MappedSourceReader(Path path, Charset charset) {
+        this.path = path;
+        this.charset = charset;
+    }
+
+    @Override
+    public Reader open() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File is too large to read: " + path);
+            }
+
+            if (size > MAPPING_THRESHOLD) {
+                MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return read(bytes, charset);
+            }
+
+            return read(readFully(channel, (int) size), charset);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int size) throws IOException {
+        ByteBuffer bytes = readBuffers.get();
+        if (bytes.capacity() < size) {
+            bytes = ByteBuffer.allocate(size);
+            readBuffers.set(bytes);
+        }
+        bytes.clear();
+        bytes.limit(size);
+
+        //The file can shrink while it's read, whatever was there is parsed
+        while (bytes.hasRemaining()) {
+            if (channel.read(bytes) < 0) break;
+        }
+
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Decodes source code that is already in memory, such as an entry read from an archive, the same way a mapped file is
+     * decoded.  The same restriction applies, the reader is only valid until the next source is read on this thread.
+     */
+    static Reader read(ByteBuffer bytes, Charset charset) throws IOException {
+        Charset fileCharset = skipByteOrderMark(bytes).orElse(charset);
+
+        return new CharBufferReader(decode(bytes, fileCharset));
+    }
+
+    //Advances past a byte order mark if there is one, returning the charset it identifies
+    static Optional<Charset> skipByteOrderMark(ByteBuffer bytes) {
+        if (startsWith(bytes, 0xEF, 0xBB, 0xBF)) {
+            bytes.position(bytes.position() + 3);
+            return Optional.of(StandardCharsets.UTF_8);
+        } else if (startsWith(bytes, 0xFE, 0xFF)) {
+            bytes.position(bytes.position() + 2);
+            return Optional.of(StandardCharsets.UTF_16BE);
+        } else if (startsWith(bytes, 0xFF, 0xFE)) {
+            bytes.position(bytes.position() + 2);
+            return Optional.of(StandardCharsets.UTF_16LE);
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer bytes, int... mark) {
+        if (bytes.remaining() < mark.length) return false;
+
+        for (int i = 0; i < mark.length; i++) {
+            if ((bytes.get(bytes.position() + i) & 0xFF) != mark[i]) return false;
+        }
+        return true;
+    }
+
+    private static CharBuffer decode(ByteBuffer bytes, Charset charset) throws IOException {
+        CharsetDecoder decoder = decoders.get().computeIfAbsent(charset, c -> c.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+        int requiredCapacity = (int) Math.ceil(bytes.remaining() * (double) decoder.maxCharsPerByte());
+
+        CharBuffer chars = decodeBuffers.get();
+        if (chars.capacity() < requiredCapacity) {
+            chars = CharBuffer.allocate(requiredCapacity);
+            decodeBuffers.set(chars);
+        }
+        chars.clear();
+
+        decoder.reset();
+        CoderResult result = decoder.decode(bytes, chars, true);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+        result = decoder.flush(chars);
+        if (!result.isUnderflow()) {
+            result.throwException();
+        }
+
+        chars.flip();
+        return chars;
+    }
+
+    private static class CharBufferReader extends Reader {
+        private final CharBuffer chars;
+
+        private CharBufferReader(CharBuffer chars) {
+            this.chars = chars;
+        }
+
+        @Override
+        public int read(char[] destination, int offset, int length) {
+            if (!chars.hasRemaining()) return -1;
+
+            int count = Math.min(length, chars.remaining());
+            chars.get(destination, offset, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+            //Nothing to release, the buffer belongs to the thread and is reused for the next file
+        }
+    }
+}
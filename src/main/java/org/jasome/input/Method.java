@@ -1,9 +1,16 @@
 package org.jasome.input;
 
-import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
 
+/**
+ * A method or a constructor, which calculators treat alike.
+ */
 public class Method extends Code {
-    private final MethodDeclaration declaration;
+    private CallableDeclaration<?> declaration;
+    private String signature;
+    private String missingSource;
 
     public final static Method UNKNOWN = new Method();
 
@@ -12,15 +19,47 @@ public class Method extends Code {
         this.declaration = null;
     }
 
-    public Method(MethodDeclaration declaration) {
-        super(declaration.getDeclarationAsString());
+    public Method(CallableDeclaration<?> declaration) {
+        super(nameOf(declaration));
         this.declaration = declaration;
     }
 
-    public MethodDeclaration getSource() {
+    //Stands in for a method whose source was parsed at another time, such as one from another shard
+    Method(String name, String signature) {
+        super(name);
+        this.declaration = null;
+        this.signature = signature;
+        this.missingSource = "isn't loaded";
+    }
+
+    public CallableDeclaration<?> getSource() {
+        if (missingSource != null) {
+            throw new IllegalStateException("The source of " + getName() + " " + missingSource);
+        }
         return declaration;
     }
 
+    //The name and parameter types, which is how calls to the method are matched up with it
+    String getSignature() {
+        return declaration != null ? declaration.getSignature().asString() : signature;
+    }
+
+    void releaseSource() {
+        declaration = null;
+        missingSource = "was released after its metrics were calculated";
+    }
+
+    //Constructors are named like methods that return their own type, "public Thing Thing(int size)", as they always have been
+    private static String nameOf(CallableDeclaration<?> declaration) {
+        if (!(declaration instanceof ConstructorDeclaration)) {
+            return declaration.getDeclarationAsString();
+        }
+
+        String accessSpecifier = Modifier.getAccessSpecifier(declaration.getModifiers()).asString();
+        String prefix = accessSpecifier.isEmpty() ? "" : accessSpecifier + " ";
+        return prefix + declaration.getNameAsString() + " " + declaration.getDeclarationAsString().substring(prefix.length());
+    }
+
     public Type getParentType() {
         return (Type) getParent();
     }
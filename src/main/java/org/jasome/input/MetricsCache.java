@@ -0,0 +1,421 @@
+package org.jasome.input;
+
+import com.github.javaparser.ast.expr.SimpleName;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.graph.Graph;
+import com.google.common.graph.Graphs;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import org.jasome.metrics.Calculator;
+import org.jasome.metrics.Metric;
+import org.jasome.metrics.value.NumericValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An on-disk cache of type and method metrics, so that a re-run over a mostly unchanged project only has to run the type and
+ * method calculators for the types that could actually have different results.
+ *
+ * Entries are kept per source file along with its size, modification time and content hash.  Only files whose size or
+ * modification time changed since they were last hashed are read again, to see whether their contents changed; files
+ * modified too close to when they were last hashed to trust their modification time are always read.
+ *
+ * The cache file itself is named after the jasome version and
+ * the set of registered calculators, so upgrading or changing calculators starts from an empty cache.  Each cached type also
+ * remembers its inheritance relatives and client graph neighbours from the run that computed it.  A type is only restored from
+ * the cache when its file is unchanged since the last run and none of its old or possible new neighbours changed; everything
+ * else is recalculated.  Package and project calculators always run, since they depend on the whole project.
+ */
+public class MetricsCache {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsCache.class);
+
+    private static final int FORMAT_VERSION = 2;
+
+    //The coarsest modification time resolution of common file systems, changes closer than this to a hash can't be seen
+    private static final long MODIFICATION_TIME_RESOLUTION = 2000;
+
+    private final File cacheDirectory;
+    private final String jasomeVersion;
+
+    private File cacheFile;
+    private Map<String, FileEntry> entriesByPath = new HashMap<>();
+    private Map<String, Fingerprint> fingerprintsByPath = new HashMap<>();
+
+    public MetricsCache(File cacheDirectory, String jasomeVersion) {
+        this.cacheDirectory = cacheDirectory;
+        this.jasomeVersion = jasomeVersion;
+    }
+
+    /**
+     * Loads the cache for this set of calculators and copies cached metrics onto every type (and its methods) that can safely
+     * reuse them.
+     *
+     * @return the types whose metrics came from the cache, which don't need their type or method calculators run again
+     */
+    Set<Type> restore(Project project, Collection<? extends Calculator<?>> calculators) {
+        cacheFile = new File(cacheDirectory, namespace(calculators) + ".cache");
+        load();
+
+        String sourceDir = project.getAttributes().getOrDefault("sourceDir", "");
+
+        Map<String, List<Type>> typesByPath = allTypes(project).stream()
+                .collect(Collectors.groupingBy(type -> type.getSourceFile().orElse("")));
+
+        fingerprintsByPath = new HashMap<>();
+        for (String path : typesByPath.keySet()) {
+            File file = new File(sourceDir.isEmpty() ? "." : sourceDir, path);
+            FileEntry previousEntry = entriesByPath.get(path);
+            fingerprint(file, previousEntry != null ? previousEntry.fingerprint : null).ifPresent(fingerprint -> fingerprintsByPath.put(path, fingerprint));
+        }
+
+        Set<String> changedTypes = new HashSet<>();
+        Map<Type, TypeEntry> candidates = new IdentityHashMap<>();
+        List<Type> changedCurrentTypes = new ArrayList<>();
+
+        for (Map.Entry<String, List<Type>> pathAndTypes : typesByPath.entrySet()) {
+            String path = pathAndTypes.getKey();
+            Fingerprint fingerprint = fingerprintsByPath.get(path);
+            FileEntry entry = entriesByPath.get(path);
+
+            boolean unchanged = entry != null && fingerprint != null && fingerprint.hash.equals(entry.fingerprint.hash);
+
+            for (Type type : pathAndTypes.getValue()) {
+                Optional<TypeEntry> typeEntry = unchanged ? entry.lookupType(keyOf(type)) : Optional.empty();
+                if (typeEntry.isPresent()) {
+                    candidates.put(type, typeEntry.get());
+                } else {
+                    changedTypes.add(keyOf(type));
+                    changedCurrentTypes.add(type);
+                }
+            }
+        }
+
+        //Types that used to live in a file that has since changed or been deleted count as changed too, their old neighbours need recalculating
+        for (Map.Entry<String, FileEntry> previousPathAndEntry : entriesByPath.entrySet()) {
+            Fingerprint fingerprint = fingerprintsByPath.get(previousPathAndEntry.getKey());
+            if (fingerprint == null || !fingerprint.hash.equals(previousPathAndEntry.getValue().fingerprint.hash)) {
+                previousPathAndEntry.getValue().types.forEach(typeEntry -> changedTypes.add(typeEntry.key));
+            }
+        }
+
+        Set<String> changedSimpleNames = changedTypes.stream().map(MetricsCache::simpleNameOf).collect(Collectors.toSet());
+        Set<String> namesUsedByChangedTypes = changedCurrentTypes.stream()
+                .flatMap(type -> identifiersIn(type).stream())
+                .collect(Collectors.toSet());
+
+        Deque<Type> invalidated = new ArrayDeque<>();
+        for (Map.Entry<Type, TypeEntry> candidate : candidates.entrySet()) {
+            Type type = candidate.getKey();
+            TypeEntry typeEntry = candidate.getValue();
+
+            boolean hadChangedNeighbour = !Collections.disjoint(typeEntry.relatives, changedTypes) || !Collections.disjoint(typeEntry.clients, changedTypes);
+            boolean mayUseChangedType = !Collections.disjoint(identifiersIn(type), changedSimpleNames);
+            boolean mayBeUsedByChangedType = namesUsedByChangedTypes.contains(simpleNameOf(keyOf(type)));
+
+            if (hadChangedNeighbour || mayUseChangedType || mayBeUsedByChangedType) {
+                invalidated.add(type);
+            }
+        }
+
+        //Inheritance metrics like NOD and NOA are transitive, so anything related to an invalidated type by inheritance goes too
+        Map<String, Type> candidatesByKey = new HashMap<>();
+        candidates.keySet().forEach(type -> candidatesByKey.put(keyOf(type), type));
+        while (!invalidated.isEmpty()) {
+            Type type = invalidated.pop();
+            TypeEntry typeEntry = candidates.remove(type);
+            if (typeEntry == null) continue;
+
+            for (String relative : typeEntry.relatives) {
+                Type relatedType = candidatesByKey.get(relative);
+                if (relatedType != null && candidates.containsKey(relatedType)) {
+                    invalidated.add(relatedType);
+                }
+            }
+        }
+
+        Set<Type> restoredTypes = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Map.Entry<Type, TypeEntry> candidate : candidates.entrySet()) {
+            Type type = candidate.getKey();
+            TypeEntry typeEntry = candidate.getValue();
+
+            Map<String, Method> methodsByName = type.getMethods().stream().collect(Collectors.toMap(Method::getName, m -> m, (a, b) -> a));
+            if (!methodsByName.keySet().equals(typeEntry.methodMetrics.keySet())) continue;
+
+            type.addMetrics(typeEntry.metrics);
+            for (Map.Entry<String, Set<Metric>> methodMetrics : typeEntry.methodMetrics.entrySet()) {
+                methodsByName.get(methodMetrics.getKey()).addMetrics(methodMetrics.getValue());
+            }
+
+            restoredTypes.add(type);
+        }
+
+        int totalTypes = typesByPath.values().stream().mapToInt(List::size).sum();
+        double hitRatio = totalTypes == 0 ? 0.0 : restoredTypes.size() / (double) totalTypes;
+        project.addAttribute("cacheHitRatio", String.format(Locale.ROOT, "%.3f", hitRatio));
+        logger.info("Restored metrics for {} of {} types from {}", restoredTypes.size(), totalTypes, cacheFile);
+
+        return restoredTypes;
+    }
+
+    /**
+     * Saves the metrics of every type in the project, replacing whatever was cached before.  Entries for files that are no
+     * longer part of the project are dropped.
+     */
+    void store(Project project, Set<Type> restoredTypes) {
+        Map<String, TypeEntry> previousTypeEntries = new HashMap<>();
+        for (Type type : restoredTypes) {
+            entriesByPath.get(type.getSourceFile().orElse(""))
+                    .lookupType(keyOf(type))
+                    .ifPresent(typeEntry -> previousTypeEntries.put(keyOf(type), typeEntry));
+        }
+
+        boolean anyCalculated = restoredTypes.size() < allTypes(project).size();
+        Graph<Type> inheritanceGraph = anyCalculated ? project.getMetadata().getInheritanceGraph() : null;
+        Graph<Type> clientGraph = anyCalculated ? project.getMetadata().getClientGraph() : null;
+
+        //Each file gets one entry, even if other files have the same contents, such as the copies listed as its aliases
+        Map<String, FileEntry> newEntriesByPath = new HashMap<>();
+        for (Type type : allTypes(project)) {
+            String path = type.getSourceFile().orElse("");
+            Fingerprint fingerprint = fingerprintsByPath.get(path);
+            if (fingerprint == null) continue;
+
+            TypeEntry typeEntry;
+            if (restoredTypes.contains(type) && previousTypeEntries.containsKey(keyOf(type))) {
+                typeEntry = previousTypeEntries.get(keyOf(type));
+            } else {
+                Set<String> relatives = new HashSet<>();
+                Set<String> clients = new HashSet<>();
+                if (inheritanceGraph != null && inheritanceGraph.nodes().contains(type)) {
+                    Graphs.reachableNodes(inheritanceGraph, type).forEach(t -> relatives.add(keyOf(t)));
+                    Graphs.reachableNodes(Graphs.transpose(inheritanceGraph), type).forEach(t -> relatives.add(keyOf(t)));
+                    relatives.remove(keyOf(type));
+                }
+                if (clientGraph != null && clientGraph.nodes().contains(type)) {
+                    clientGraph.predecessors(type).forEach(t -> clients.add(keyOf(t)));
+                    clientGraph.successors(type).forEach(t -> clients.add(keyOf(t)));
+                }
+
+                Map<String, Set<Metric>> methodMetrics = new HashMap<>();
+                for (Method method : type.getMethods()) {
+                    methodMetrics.put(method.getName(), method.getMetrics());
+                }
+
+                typeEntry = new TypeEntry(keyOf(type), type.getMetrics(), methodMetrics, relatives, clients);
+            }
+
+            newEntriesByPath.computeIfAbsent(path, p -> new FileEntry(fingerprint, new ArrayList<>())).types.add(typeEntry);
+        }
+
+        entriesByPath = newEntriesByPath;
+        save();
+    }
+
+    private void load() {
+        entriesByPath = new HashMap<>();
+
+        if (!cacheFile.isFile()) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(cacheFile))))) {
+            if (in.readInt() != FORMAT_VERSION) return;
+
+            int entryCount = in.readInt();
+            for (int i = 0; i < entryCount; i++) {
+                String path = in.readUTF();
+                Fingerprint fingerprint = new Fingerprint(in.readUTF(), in.readLong(), in.readLong(), in.readLong());
+                int typeCount = in.readInt();
+                List<TypeEntry> types = new ArrayList<>(typeCount);
+                for (int j = 0; j < typeCount; j++) {
+                    String key = in.readUTF();
+                    Set<Metric> metrics = readMetrics(in);
+                    Set<String> relatives = readStrings(in);
+                    Set<String> clients = readStrings(in);
+                    int methodCount = in.readInt();
+                    Map<String, Set<Metric>> methodMetrics = new HashMap<>();
+                    for (int k = 0; k < methodCount; k++) {
+                        methodMetrics.put(in.readUTF(), readMetrics(in));
+                    }
+                    types.add(new TypeEntry(key, metrics, methodMetrics, relatives, clients));
+                }
+                entriesByPath.put(path, new FileEntry(fingerprint, types));
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to read metrics cache {}, starting with an empty cache", cacheFile);
+            entriesByPath = new HashMap<>();
+        }
+    }
+
+    private void save() {
+        cacheDirectory.mkdirs();
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tempFile))))) {
+            out.writeInt(FORMAT_VERSION);
+
+            out.writeInt(entriesByPath.size());
+            for (Map.Entry<String, FileEntry> pathAndEntry : entriesByPath.entrySet()) {
+                Fingerprint fingerprint = pathAndEntry.getValue().fingerprint;
+                out.writeUTF(pathAndEntry.getKey());
+                out.writeUTF(fingerprint.hash);
+                out.writeLong(fingerprint.size);
+                out.writeLong(fingerprint.lastModified);
+                out.writeLong(fingerprint.hashedAt);
+                out.writeInt(pathAndEntry.getValue().types.size());
+                for (TypeEntry typeEntry : pathAndEntry.getValue().types) {
+                    out.writeUTF(typeEntry.key);
+                    writeMetrics(out, typeEntry.metrics);
+                    writeStrings(out, typeEntry.relatives);
+                    writeStrings(out, typeEntry.clients);
+                    out.writeInt(typeEntry.methodMetrics.size());
+                    for (Map.Entry<String, Set<Metric>> methodMetrics : typeEntry.methodMetrics.entrySet()) {
+                        out.writeUTF(methodMetrics.getKey());
+                        writeMetrics(out, methodMetrics.getValue());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write metrics cache {}", cacheFile);
+            return;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn("Unable to write metrics cache {}", cacheFile);
+        }
+    }
+
+    static Set<Metric> readMetrics(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        ImmutableSet.Builder<Metric> metrics = ImmutableSet.builder();
+        for (int i = 0; i < count; i++) {
+            metrics.add(Metric.of(in.readUTF(), in.readUTF(), NumericValue.parseExact(in.readUTF())));
+        }
+        return metrics.build();
+    }
+
+    static void writeMetrics(DataOutputStream out, Set<Metric> metrics) throws IOException {
+        out.writeInt(metrics.size());
+        for (Metric metric : metrics) {
+            out.writeUTF(metric.getName());
+            out.writeUTF(metric.getDescription());
+            out.writeUTF(metric.getValue().toExactString());
+        }
+    }
+
+    private static Set<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<String> strings = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeStrings(DataOutputStream out, Set<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private String namespace(Collection<? extends Calculator<?>> calculators) {
+        String calculatorNames = calculators.stream()
+                .map(calculator -> calculator.getClass().getName())
+                .sorted()
+                .collect(Collectors.joining(","));
+
+        return Hashing.sha256().hashString(jasomeVersion + "|" + calculatorNames, StandardCharsets.UTF_8).toString().substring(0, 16);
+    }
+
+    //A file that can't be read has no fingerprint, so it never matches a cached entry and its types are always recalculated
+    private static Optional<Fingerprint> fingerprint(File file, Fingerprint previous) {
+        long hashedAt = System.currentTimeMillis();
+        long size = file.length();
+        long lastModified = file.lastModified();
+        if (lastModified == 0) {
+            return Optional.empty();
+        }
+
+        if (previous != null && previous.size == size && previous.lastModified == lastModified
+                && lastModified + MODIFICATION_TIME_RESOLUTION < previous.hashedAt) {
+            return Optional.of(previous);
+        }
+
+        try {
+            String hash = MoreFiles.asByteSource(file.toPath()).hash(Hashing.sha256()).toString();
+            return Optional.of(new Fingerprint(hash, size, lastModified, hashedAt));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Set<Type> allTypes(Project project) {
+        return project.getPackages().stream().flatMap(p -> p.getTypes().stream()).collect(Collectors.toSet());
+    }
+
+    private static String keyOf(Type type) {
+        return type.getParentPackage().getName() + "/" + type.getName();
+    }
+
+    private static String simpleNameOf(String key) {
+        return key.substring(Math.max(key.lastIndexOf('/'), key.lastIndexOf('.')) + 1);
+    }
+
+    private static Set<String> identifiersIn(Type type) {
+        return type.getSource().findAll(SimpleName.class).stream().map(SimpleName::getIdentifier).collect(Collectors.toSet());
+    }
+
+    private static class Fingerprint {
+        private final String hash;
+        private final long size;
+        private final long lastModified;
+        private final long hashedAt;
+
+        private Fingerprint(String hash, long size, long lastModified, long hashedAt) {
+            this.hash = hash;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hashedAt = hashedAt;
+        }
+    }
+
+    private static class FileEntry {
+        private final Fingerprint fingerprint;
+        private final List<TypeEntry> types;
+
+        private FileEntry(Fingerprint fingerprint, List<TypeEntry> types) {
+            this.fingerprint = fingerprint;
+            this.types = types;
+        }
+
+        private Optional<TypeEntry> lookupType(String key) {
+            return types.stream().filter(t -> t.key.equals(key)).findFirst();
+        }
+    }
+
+    private static class TypeEntry {
+        private final String key;
+        private final Set<Metric> metrics;
+        private final Map<String, Set<Metric>> methodMetrics;
+        private final Set<String> relatives;
+        private final Set<String> clients;
+
+        private TypeEntry(String key, Set<Metric> metrics, Map<String, Set<Metric>> methodMetrics, Set<String> relatives, Set<String> clients) {
+            this.key = key;
+            this.metrics = metrics;
+            this.methodMetrics = methodMetrics;
+            this.relatives = relatives;
+            this.clients = clients;
+        }
+    }
+}
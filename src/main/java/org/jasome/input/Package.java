@@ -23,6 +23,11 @@ public class Package extends Code {
         addChild(type);
     }
 
+    public void removeType(Type type) {
+        typeLookup.remove(type.getName());
+        removeChild(type);
+    }
+
     public Project getParentProject() {
         return (Project)getParent();
     }
@@ -1,77 +1,152 @@
 package org.jasome.input;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.SetMultimap;
 import org.jasome.metrics.Calculator;
 import org.jasome.metrics.Metric;
+import org.jasome.util.CalculationUtils;
 import org.jasome.util.ProjectMetadata;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 
 //TODO: try to figure out a way to move this to org.jasome.metrics - it needs to access a package-level method on Code which prevents this
 public class Processor {
+    //Every kind of code, each one calculated after the kinds inside it
+    private static final List<Class<? extends Code>> LEVELS = ImmutableList.of(Method.class, Type.class, Package.class, Project.class);
+
     private Set<Calculator<Project>> projectCalculators;
     private Set<Calculator<Package>> packageCalculators;
     private Set<Calculator<Type>> typeCalculators;
     private Set<Calculator<Method>> methodCalculators;
+    private MetricsCache metricsCache;
+    private boolean releaseSources = false;
+    private Set<Calculator<?>> generatedTypeCalculators;
+    private Schedule schedule;
+    private int threads = Runtime.getRuntime().availableProcessors();
 
     public Processor() {
-        projectCalculators = new HashSet<>();
-        packageCalculators = new HashSet<>();
-        typeCalculators = new HashSet<>();
-        methodCalculators = new HashSet<>();
+        projectCalculators = new LinkedHashSet<>();
+        packageCalculators = new LinkedHashSet<>();
+        typeCalculators = new LinkedHashSet<>();
+        methodCalculators = new LinkedHashSet<>();
     }
 
-    public void registerProjectCalculator(Calculator<Project> calculator) {
+    public synchronized void registerProjectCalculator(Calculator<Project> calculator) {
         projectCalculators.add(calculator);
+        schedule = null;
     }
 
-    public void registerPackageCalculator(Calculator<Package> calculator) {
+    public synchronized void registerPackageCalculator(Calculator<Package> calculator) {
         packageCalculators.add(calculator);
+        schedule = null;
     }
 
-    public void registerTypeCalculator(Calculator<Type> calculator) {
+    public synchronized void registerTypeCalculator(Calculator<Type> calculator) {
         typeCalculators.add(calculator);
+        schedule = null;
     }
 
-    public void registerMethodCalculator(Calculator<Method> calculator) {
+    public synchronized void registerMethodCalculator(Calculator<Method> calculator) {
         methodCalculators.add(calculator);
+        schedule = null;
     }
 
-    public void process(Project project) {
+    public void setMetricsCache(MetricsCache metricsCache) {
+        this.metricsCache = metricsCache;
+    }
 
-        ProjectMetadata metadata = new ProjectMetadata(project);
+    /**
+     * Releases the parsed sources of the project once its metrics are calculated, so that it takes far less memory while the
+     * output is written.  A project can't be processed again after its sources are released.
+     */
+    public void setReleaseSources(boolean releaseSources) {
+        this.releaseSources = releaseSources;
+    }
 
-        project.getPackages().parallelStream().forEach(aPackage -> {
+    /**
+     * Sets how many threads calculate metrics.  With a single thread every calculator runs on the calling thread, one after
+     * another in the same order every time, which is slower but easy to follow in a debugger.
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of threads must be at least 1, was " + threads);
+        }
+        this.threads = threads;
+    }
 
-            aPackage.getTypes().parallelStream().forEach(type -> {
+    /**
+     * Only runs the given type and method calculators for generated types, those with a {@code generated} attribute, instead
+     * of every calculator.  Package and project calculators still see generated types along with the rest.
+     */
+    public void setGeneratedTypeCalculators(Set<? extends Calculator<?>> generatedTypeCalculators) {
+        this.generatedTypeCalculators = ImmutableSet.copyOf(generatedTypeCalculators);
+    }
 
-                type.getMethods().parallelStream().forEach(method -> {
+    /**
+     * Works out the order the registered calculators have to run in from the metrics they produce and consume, so that no
+     * calculator runs before the metrics it reads are there.
+     *
+     * @throws IllegalStateException if a calculator consumes a metric no registered calculator produces, or one of enclosing
+     *                               code, or if calculators consume each other's metrics
+     */
+    public void checkDependencies() {
+        schedule();
+    }
 
-                    methodCalculators.parallelStream().forEach(methodMetricCalculator -> {
-                        Set<Metric> methodMetrics = methodMetricCalculator.calculate(method);
-                        method.addMetrics(methodMetrics);
-                    });
-                });
+    public void process(Project project) {
+        process(project, type -> true);
+    }
 
-                typeCalculators.parallelStream().forEach(typeMetricCalculator -> {
-                    Set<Metric> classMetrics = typeMetricCalculator.calculate(type);
-                    type.addMetrics(classMetrics);
-                });
-            });
+    /**
+     * Runs the calculators over a project, but only runs type and method calculators for the types that pass the given test.
+     * Package and project calculators always run.
+     */
+    public void process(Project project, Predicate<Type> typesToCalculate) {
+        process(project, typesToCalculate, aPackage -> true);
+    }
 
-            packageCalculators.parallelStream().forEach(packageMetricCalculator -> {
-                Set<Metric> packageMetrics = packageMetricCalculator.calculate(aPackage);
-                aPackage.addMetrics(packageMetrics);
-            });
+    /**
+     * Runs the calculators over a project, but only runs type and method calculators for the types that pass the given test,
+     * and package calculators for the packages that pass the other.  Project calculators always run.
+     */
+    public void process(Project project, Predicate<Type> typesToCalculate, Predicate<Package> packagesToCalculate) {
+        checkDependencies();
 
-        });
+        ProjectMetadata metadata = new ProjectMetadata(project);
 
-        projectCalculators.parallelStream().forEach(projectMetricCalculator -> {
-            Set<Metric> projectMetrics = projectMetricCalculator.calculate(project);
-            project.addMetrics(projectMetrics);
-        });
+        //Types restored from the cache already have their type and method metrics
+        Set<Type> cachedTypes = metricsCache != null ? metricsCache.restore(project, allCalculators()) : Collections.emptySet();
 
+        calculate(project, type -> !cachedTypes.contains(type) && typesToCalculate.test(type), packagesToCalculate);
+
+        calculateProject(project);
+
+        if (metricsCache != null) {
+            metricsCache.store(project, cachedTypes);
+        }
+
+        //Package calculators look at the sources of types in other packages too, so nothing can go before every calculator is done
+        if (releaseSources) {
+            project.releaseSources();
+            CalculationUtils.isFieldAccessedWithinMethod.invalidateAll();
+        }
 
 //        for (Package aPackage : project.getPackages()) {
 //            System.out.println(aPackage.getName());
@@ -92,4 +167,160 @@ public class Processor {
 //
 //        }
     }
+
+    /**
+     * Runs only the type and method calculators, and only for the types that pass the given test.  Package and project
+     * calculators read the metrics of every type in them, which the types left out don't have, so they don't run at all.
+     * The metrics cache isn't used either, since it keeps the metrics of the whole project.
+     */
+    public void processTypes(Project project, Predicate<Type> typesToCalculate) {
+        checkDependencies();
+
+        calculate(project, typesToCalculate, aPackage -> false);
+
+        if (releaseSources) {
+            project.releaseSources();
+            CalculationUtils.isFieldAccessedWithinMethod.invalidateAll();
+        }
+    }
+
+    //Runs the method, type and package calculators, everything but the project calculators
+    void calculate(Project project, Predicate<Type> typesToCalculate, Predicate<Package> packagesToCalculate) {
+        //Code that's calculated again, such as the types around a change in watch mode, starts over like it would in a fresh
+        //scan, so metrics a calculator no longer produces for it don't linger
+        for (Package aPackage : project.getPackages()) {
+            if (packagesToCalculate.test(aPackage)) {
+                aPackage.clearMetrics();
+            }
+            for (Type type : aPackage.getTypes()) {
+                if (typesToCalculate.test(type)) {
+                    type.clearMetrics();
+                    type.getMethods().forEach(Method::clearMetrics);
+                }
+            }
+        }
+
+        new CalculationExecutor(threads).calculate(project, schedule(), typesToCalculate, packagesToCalculate, this::calculatorsFor);
+    }
+
+    private Predicate<Calculator<?>> calculatorsFor(Type type) {
+        if (generatedTypeCalculators != null && "true".equals(type.getAttributes().get("generated"))) {
+            return generatedTypeCalculators::contains;
+        }
+        return calculator -> true;
+    }
+
+    void calculateProject(Project project) {
+        project.clearMetrics();
+        new CalculationExecutor(threads).calculateProject(project, schedule());
+    }
+
+    private synchronized Schedule schedule() {
+        if (schedule == null) {
+            schedule = new Schedule(ImmutableMap.of(
+                    Method.class, ImmutableList.copyOf(methodCalculators),
+                    Type.class, ImmutableList.copyOf(typeCalculators),
+                    Package.class, ImmutableList.copyOf(packageCalculators),
+                    Project.class, ImmutableList.copyOf(projectCalculators)
+            ));
+        }
+        return schedule;
+    }
+
+    private List<Calculator<?>> allCalculators() {
+        return ImmutableList.<Calculator<?>>builder()
+                .addAll(projectCalculators)
+                .addAll(packageCalculators)
+                .addAll(typeCalculators)
+                .addAll(methodCalculators)
+                .build();
+    }
+
+    /**
+     * The calculators for each kind of code split into layers, where a calculator only consumes metrics produced by the layers
+     * before it or by the code inside.  Calculators that produce the same metric go in the order they were registered, so the
+     * last one registered always wins instead of whichever happens to finish last.
+     */
+    static class Schedule {
+        private final Map<Class<? extends Code>, List<List<Calculator<?>>>> layers;
+
+        Schedule(Map<Class<? extends Code>, List<Calculator<?>>> calculators) {
+            Map<Class<? extends Code>, ListMultimap<String, Calculator<?>>> producers = new HashMap<>();
+            for (Class<? extends Code> level : LEVELS) {
+                ListMultimap<String, Calculator<?>> levelProducers = ArrayListMultimap.create();
+                for (Calculator<?> calculator : calculators.get(level)) {
+                    for (String metric : calculator.getProducedMetrics()) {
+                        levelProducers.put(metric, calculator);
+                    }
+                }
+                producers.put(level, levelProducers);
+            }
+
+            ImmutableMap.Builder<Class<? extends Code>, List<List<Calculator<?>>>> layers = ImmutableMap.builder();
+            for (Class<? extends Code> level : LEVELS) {
+                //Each calculator and the calculators for the same kind of code that have to run before it
+                SetMultimap<Calculator<?>, Calculator<?>> prerequisites = LinkedHashMultimap.create();
+
+                for (Calculator<?> calculator : calculators.get(level)) {
+                    for (Map.Entry<Class<? extends Code>, String> consumed : calculator.getConsumedMetrics().entries()) {
+                        Class<? extends Code> consumedLevel = consumed.getKey();
+                        String metric = consumed.getValue();
+
+                        if (LEVELS.indexOf(consumedLevel) > LEVELS.indexOf(level)) {
+                            throw new IllegalStateException(nameOf(calculator) + " consumes " + metric + " of " + consumedLevel.getSimpleName() + ", which is only calculated after every " + level.getSimpleName());
+                        }
+
+                        List<Calculator<?>> metricProducers = producers.getOrDefault(consumedLevel, ImmutableListMultimap.of()).get(metric);
+                        if (metricProducers.isEmpty()) {
+                            throw new IllegalStateException(nameOf(calculator) + " consumes " + metric + " of " + consumedLevel.getSimpleName() + ", but no registered calculator produces it");
+                        }
+
+                        if (consumedLevel == level) {
+                            prerequisites.putAll(calculator, metricProducers);
+                        }
+                    }
+                }
+
+                for (Collection<Calculator<?>> metricProducers : producers.get(level).asMap().values()) {
+                    List<Calculator<?>> inRegistrationOrder = new ArrayList<>(metricProducers);
+                    for (int i = 1; i < inRegistrationOrder.size(); i++) {
+                        prerequisites.put(inRegistrationOrder.get(i), inRegistrationOrder.get(i - 1));
+                    }
+                }
+
+                layers.put(level, layer(calculators.get(level), prerequisites));
+            }
+            this.layers = layers.build();
+        }
+
+        @SuppressWarnings("unchecked")
+        <T extends Code> List<List<Calculator<T>>> layersOf(Class<T> level) {
+            return (List<List<Calculator<T>>>) (List<?>) layers.get(level);
+        }
+
+        private static List<List<Calculator<?>>> layer(List<Calculator<?>> calculators, SetMultimap<Calculator<?>, Calculator<?>> prerequisites) {
+            List<List<Calculator<?>>> layers = new ArrayList<>();
+            Set<Calculator<?>> scheduled = new HashSet<>();
+            List<Calculator<?>> remaining = new ArrayList<>(calculators);
+
+            while (!remaining.isEmpty()) {
+                List<Calculator<?>> layer = remaining.stream()
+                        .filter(calculator -> scheduled.containsAll(prerequisites.get(calculator)))
+                        .collect(Collectors.toList());
+
+                if (layer.isEmpty()) {
+                    throw new IllegalStateException("Calculators consume each other's metrics: " + remaining.stream().map(Schedule::nameOf).collect(Collectors.joining(", ")));
+                }
+
+                layers.add(ImmutableList.copyOf(layer));
+                scheduled.addAll(layer);
+                remaining.removeAll(layer);
+            }
+            return ImmutableList.copyOf(layers);
+        }
+
+        private static String nameOf(Calculator<?> calculator) {
+            return calculator.getClass().getName();
+        }
+    }
 }
@@ -1,8 +1,10 @@
 package org.jasome.input;
 
+import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.symbolsolver.JavaSymbolSolver;
 import com.github.javaparser.symbolsolver.resolution.SymbolSolver;
 import org.jasome.util.ProjectMetadata;
+import org.jasome.util.SymbolResolution;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -11,7 +13,8 @@ import java.util.Set;
 
 public class Project extends Code {
 
-    private JavaSymbolSolver symbolSolver;
+    private ParserConfiguration parserConfiguration;
+    private SymbolResolution symbolResolution = new SymbolResolution();
     private Map<String, Package> packageLookup;
     private ProjectMetadata metadata;
 
@@ -35,6 +38,11 @@ public class Project extends Code {
         addChild(aPackage);
     }
 
+    public void removePackage(Package aPackage) {
+        packageLookup.remove(aPackage.getName());
+        removeChild(aPackage);
+    }
+
     @Override
     public String toString() {
         return "Project("+this.getName()+")";
@@ -51,12 +59,53 @@ public class Project extends Code {
         return super.hashCode();
     }
 
-    public void setSymbolSolver(JavaSymbolSolver symbolSolver) {
-        this.symbolSolver = symbolSolver;
+    /**
+     * The configuration the project's sources are resolved with, including the symbol solver for them.  Each scan makes its
+     * own, so code parsed with it resolves against this project no matter what else has been scanned in the same JVM.
+     */
+    public ParserConfiguration getParserConfiguration() {
+        return parserConfiguration;
+    }
+
+    /**
+     * @param symbolResolution what resolution against the configuration's solvers has to go through
+     */
+    public void setParserConfiguration(ParserConfiguration parserConfiguration, SymbolResolution symbolResolution) {
+        //The solvers being replaced, such as the ones from before an update, won't be used again
+        if (this.symbolResolution != symbolResolution) {
+            this.symbolResolution.releaseFacades();
+        }
+        this.parserConfiguration = parserConfiguration;
+        this.symbolResolution = symbolResolution;
+    }
+
+    public SymbolResolution getSymbolResolution() {
+        return symbolResolution;
     }
 
     public JavaSymbolSolver getSymbolSolver() {
-        return symbolSolver;
+        if (parserConfiguration == null) {
+            return null;
+        }
+        return (JavaSymbolSolver) parserConfiguration.getSymbolResolver().orElse(null);
+    }
+
+    /**
+     * Drops the parsed source of every type and method in the project, along with the symbol solvers that can reach it, so
+     * that only names, attributes and metrics are left.  Calculators and symbol resolution can't be used on the project
+     * afterwards.
+     */
+    public void releaseSources() {
+        for (Package aPackage : getPackages()) {
+            for (Type type : aPackage.getTypes()) {
+                type.releaseSource();
+            }
+        }
+
+        //The solvers index every compilation unit, and the parser configuration and the symbol solver's facades both keep the
+        //solvers themselves alive, so the sources can't be collected until both let go
+        parserConfiguration = null;
+        symbolResolution.releaseFacades();
     }
 
     public Optional<Package> lookupPackageByName(String packageName) {
@@ -0,0 +1,126 @@
+package org.jasome.input;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.SetMultimap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * A cheap, parse-free index of which source files might reference which others, built by tokenizing each file and noting the
+ * type names it declares and the capitalized identifiers it mentions.  It over-approximates the real client and inheritance
+ * relationships (a name in a comment counts as a reference), which makes it safe for picking the files that have to be
+ * analyzed around a set of changed files without having to parse and resolve the whole project.
+ */
+public class ReferenceIndex {
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceIndex.class);
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Za-z_$][A-Za-z0-9_$]*");
+    private static final Pattern TYPE_DECLARATION = Pattern.compile("\\b(?:class|interface|enum)\\s+([A-Za-z_$][A-Za-z0-9_$]*)");
+
+    private final SetMultimap<File, String> declaredNamesByFile = HashMultimap.create();
+    private final SetMultimap<String, File> filesByDeclaredName = HashMultimap.create();
+    private final Map<File, String[]> referencedNamesByFile = new HashMap<>();
+    private final SetMultimap<String, File> filesByReferencedName = HashMultimap.create();
+
+    /**
+     * @param sourceFiles  the files to index
+     * @param encoding     the encoding of the files
+     * @param removedNames names of types that no longer exist in the project, so references to them are still tracked
+     */
+    public ReferenceIndex(Stream<File> sourceFiles, Charset encoding, Set<String> removedNames) {
+        sourceFiles.forEach(file -> {
+            try {
+                index(file.getAbsoluteFile(), new String(Files.readAllBytes(file.toPath()), encoding));
+            } catch (IOException e) {
+                logger.warn("Unable to read code from file {}, ignoring", file);
+            }
+        });
+
+        //Names that aren't declared anywhere in the project (String, List, Override...) can't link two files, so they're dropped
+        for (Map.Entry<File, String[]> fileAndNames : referencedNamesByFile.entrySet()) {
+            String[] projectNames = Arrays.stream(fileAndNames.getValue())
+                    .filter(name -> filesByDeclaredName.containsKey(name) || removedNames.contains(name))
+                    .toArray(String[]::new);
+            fileAndNames.setValue(projectNames);
+            for (String name : projectNames) {
+                filesByReferencedName.put(name, fileAndNames.getKey());
+            }
+        }
+    }
+
+    private void index(File file, String sourceCode) {
+        Matcher declarations = TYPE_DECLARATION.matcher(sourceCode);
+        while (declarations.find()) {
+            declaredNamesByFile.put(file, declarations.group(1));
+            filesByDeclaredName.put(declarations.group(1), file);
+        }
+
+        Set<String> referencedNames = new HashSet<>();
+        Matcher identifiers = IDENTIFIER.matcher(sourceCode);
+        while (identifiers.find()) {
+            String identifier = identifiers.group();
+            if (Character.isUpperCase(identifier.charAt(0))) {
+                referencedNames.add(identifier.intern());
+            }
+        }
+        referencedNamesByFile.put(file, referencedNames.toArray(new String[0]));
+    }
+
+    /**
+     * @return the type names declared in a file, or nothing if the file wasn't indexed
+     */
+    public Set<String> getDeclaredNames(File file) {
+        return ImmutableSet.copyOf(declaredNamesByFile.get(file.getAbsoluteFile()));
+    }
+
+    /**
+     * @return every file that mentions one of the given type names
+     */
+    public Set<File> filesReferencing(Collection<String> typeNames) {
+        Set<File> files = new HashSet<>();
+        for (String typeName : typeNames) {
+            files.addAll(filesByReferencedName.get(typeName));
+        }
+        return files;
+    }
+
+    /**
+     * Grows a set of files by repeatedly adding the files that reference a type they declare and the files declaring a type
+     * they reference.
+     *
+     * @param files        the starting files
+     * @param removedNames type names that no longer exist, the files that still reference them are included in the first step
+     * @param steps        how many times to grow the set
+     */
+    public Set<File> neighbourhood(Set<File> files, Set<String> removedNames, int steps) {
+        Set<File> neighbourhood = new HashSet<>();
+        files.forEach(file -> neighbourhood.add(file.getAbsoluteFile()));
+        neighbourhood.addAll(filesReferencing(removedNames));
+
+        Set<File> frontier = new HashSet<>(neighbourhood);
+        for (int step = 0; step < steps && !frontier.isEmpty(); step++) {
+            Set<File> next = new HashSet<>();
+            for (File file : frontier) {
+                next.addAll(filesReferencing(declaredNamesByFile.get(file)));
+                for (String referencedName : referencedNamesByFile.getOrDefault(file, new String[0])) {
+                    next.addAll(filesByDeclaredName.get(referencedName));
+                }
+            }
+            next.removeAll(neighbourhood);
+            neighbourhood.addAll(next);
+            frontier = next;
+        }
+
+        return neighbourhood;
+    }
+}
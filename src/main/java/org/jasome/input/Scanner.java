@@ -1,42 +1,178 @@
 package org.jasome.input;
 
 import com.github.javaparser.JavaParser;
-import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParseStart;
 import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Providers;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.ConstructorDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
-import com.github.javaparser.symbolsolver.JavaSymbolSolver;
-import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.PrintWriter;
-import java.io.StringWriter;
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class Scanner<T> {
     private static final Logger logger = LoggerFactory.getLogger(Scanner.class);
 
-    protected Project doScan(Collection<Pair<String, Map<String, String>>> sourceCode, String projectPath) {
+    private int parseThreads = Runtime.getRuntime().availableProcessors();
+    protected Charset encoding = Charset.defaultCharset();
+    protected SourcePatterns patterns = SourcePatterns.NONE;
+    private ClasspathIndex classpathIndex;
+    private ShardedProcessor shardedProcessor;
+    private GeneratedSourceDetector generatedSourceDetector;
+    private boolean skipGeneratedSources;
+
+    /**
+     * Parses the source files into a project.  If a {@link ShardedProcessor} was set, the project is processed as it's
+     * scanned and comes back with its metrics already calculated and without any sources.
+     */
+    public abstract Project scan();
+
+    /**
+     * Narrows down which source files are scanned, on top of any filters already set.
+     */
+    public abstract void setFilter(IOFileFilter filter);
+
+    /**
+     * Includes and excludes source files by their paths inside what's being scanned.  Unlike a filter, patterns can rule out
+     * whole directories, which aren't even listed.
+     */
+    public void setPatterns(SourcePatterns patterns) {
+        this.patterns = patterns;
+    }
+
+    public void setParseThreads(int parseThreads) {
+        if (parseThreads < 1) {
+            throw new IllegalArgumentException("Number of parse threads must be at least 1, was " + parseThreads);
+        }
+        this.parseThreads = parseThreads;
+    }
+
+    /**
+     * Looks at the start of every source file for signs that it was generated before parsing it.  Generated files are left
+     * out of the scan if skip is true; otherwise their types get a {@code generated} attribute, which a {@link Processor} can
+     * use to calculate fewer metrics for them.
+     */
+    public void setGeneratedSourceDetector(GeneratedSourceDetector generatedSourceDetector, boolean skip) {
+        this.generatedSourceDetector = generatedSourceDetector;
+        this.skipGeneratedSources = skip;
+    }
+
+    public Charset getEncoding() {
+        return encoding;
+    }
+
+    public void setEncoding(Charset encoding) {
+        this.encoding = encoding;
+    }
 
-        JavaSymbolSolver symbolSolver = configureParserAndResolver(sourceCode, projectPath);
+    /**
+     * Lets types from the analyzed code's libraries be resolved, in addition to the JDK and the scanned sources.
+     */
+    public void setClasspathIndex(ClasspathIndex classpathIndex) {
+        this.classpathIndex = classpathIndex;
+    }
+
+    /**
+     * Has the project parsed and processed a few packages at a time instead of all at once, for projects too big to hold in
+     * memory.  Each source file is read more than once, so the sources have to stay where they are while the scan runs.
+     */
+    public void setShardedProcessor(ShardedProcessor shardedProcessor) {
+        this.shardedProcessor = shardedProcessor;
+    }
+
+    protected Project doScan(Stream<Pair<SourceReader, Map<String, String>>> sourceCode, String projectPath) {
+
+        if (shardedProcessor != null) {
+            return shardedProcessor.process(this, sourceCode.collect(Collectors.toList()), projectPath);
+        }
+
+        ParseStatistics statistics = new ParseStatistics();
+        List<Pair<CompilationUnit, Map<String, String>>> compilationUnits = parseSources(sourceCode, statistics);
 
         Project project = new Project(FilenameUtils.getBaseName(projectPath));
-        project.setSymbolSolver(symbolSolver);
-        Map<String, List<Pair<ClassOrInterfaceDeclaration, Map<String, String>>>> packages = gatherPackages(sourceCode);
+        configureParserAndResolver(project, compilationUnits, projectPath);
+        statistics.addTo(project);
+
+        addTypes(project, compilationUnits);
+
+        return project;
+
+    }
+
+    /**
+     * Brings an already scanned project up to date with changes to some of its source files, without re-parsing the rest.
+     * Types from the stale source files are dropped and replaced with whatever those files contain now, and the project's
+     * symbol solver and metadata are updated to match.
+     *
+     * @param changedSourceCode the current contents of the source files that were created or modified
+     * @param staleSourceFiles  sourceFile attributes of every file that was created, modified or deleted
+     * @return the types whose metrics have to be recalculated
+     */
+    protected Set<Type> doUpdate(Project project, Stream<Pair<SourceReader, Map<String, String>>> changedSourceCode, Set<String> staleSourceFiles, String projectPath) {
+
+        Set<Type> removedTypes = Sets.newIdentityHashSet();
+        Set<Package> emptiedPackages = new HashSet<>();
+
+        for (Package aPackage : project.getPackages()) {
+            for (Type type : ImmutableList.copyOf(aPackage.getTypes())) {
+                if (type.getSourceFile().filter(staleSourceFiles::contains).isPresent()) {
+                    aPackage.removeType(type);
+                    removedTypes.add(type);
+
+                    if (aPackage.getTypes().isEmpty()) {
+                        emptiedPackages.add(aPackage);
+                    }
+                }
+            }
+        }
+
+        List<Pair<CompilationUnit, Map<String, String>>> newCompilationUnits = parseSources(changedSourceCode);
+
+        //The solver for the source directories has cached the old contents of the changed files, so it's replaced along with them
+        List<Pair<CompilationUnit, Map<String, String>>> allCompilationUnits = new ArrayList<>(compilationUnitsOf(project));
+        allCompilationUnits.addAll(newCompilationUnits);
+        configureParserAndResolver(project, allCompilationUnits, projectPath);
+
+        Set<Type> addedTypes = addTypes(project, newCompilationUnits);
+
+        for (Package emptiedPackage : emptiedPackages) {
+            if (emptiedPackage.getTypes().isEmpty()) {
+                project.removePackage(emptiedPackage);
+            }
+        }
+
+        return project.getMetadata().update(removedTypes, addedTypes);
+    }
+
+    Set<Type> addTypes(Project project, List<Pair<CompilationUnit, Map<String, String>>> compilationUnits) {
+        Set<Type> addedTypes = new HashSet<>();
+
+        Map<String, List<Pair<ClassOrInterfaceDeclaration, Map<String, String>>>> packages = gatherPackages(compilationUnits);
 
         for (Map.Entry<String, List<Pair<ClassOrInterfaceDeclaration, Map<String, String>>>> entry : packages.entrySet()) {
 
-            Package aPackage = new Package(entry.getKey());
-            project.addPackage(aPackage);
+            Package aPackage = project.lookupPackageByName(entry.getKey()).orElseGet(() -> {
+                Package newPackage = new Package(entry.getKey());
+                project.addPackage(newPackage);
+                return newPackage;
+            });
 
             for (Pair<ClassOrInterfaceDeclaration, Map<String, String>> classAndAttributes : entry.getValue()) {
                 ClassOrInterfaceDeclaration classDefinition = classAndAttributes.getLeft();
@@ -44,137 +180,267 @@ public abstract class Scanner<T> {
 
                 Type type = new Type(classDefinition);
                 aPackage.addType(type);
+                addedTypes.add(type);
 
                 for (Map.Entry<String, String> attribute : attributes.entrySet()) {
                     type.addAttribute(attribute);
                 }
 
-                type.addAttribute("lineStart", "" + classDefinition.getBegin().get().line);
-                type.addAttribute("lineEnd", "" + classDefinition.getEnd().get().line);
+                type.setLineRange(classDefinition.getBegin().get().line, classDefinition.getEnd().get().line);
 
-                //We need to convert the constructor declarations to method declarations because we treat them the same, but javaparser don't have them sharing a useful common type
                 for (ConstructorDeclaration constructorDeclaration : classDefinition.findAll(ConstructorDeclaration.class)) {
-                    MethodDeclaration constructorMethodDeclaration = new MethodDeclaration(
-                            constructorDeclaration.getModifiers(),
-                            constructorDeclaration.getAnnotations(),
-                            constructorDeclaration.getTypeParameters(),
-                            JavaParser.parseClassOrInterfaceType(classDefinition.getName().getIdentifier()),
-                            constructorDeclaration.getName(),
-                            false,
-                            constructorDeclaration.getParameters(),
-                            constructorDeclaration.getThrownExceptions(),
-                            constructorDeclaration.getBody()
-                    );
-                    Method constructor = new Method(constructorMethodDeclaration);
+                    Method constructor = new Method(constructorDeclaration);
                     type.addMethod(constructor);
 
-                    constructor.addAttribute("lineStart", "" + constructorDeclaration.getBegin().get().line);
-                    constructor.addAttribute("lineEnd", "" + constructorDeclaration.getEnd().get().line);
-                    constructor.addAttribute("constructor", "true");
+                    constructor.setLineRange(constructorDeclaration.getBegin().get().line, constructorDeclaration.getEnd().get().line);
+                    constructor.setConstructor(true);
                 }
 
                 for (MethodDeclaration methodDeclaration : classDefinition.getMethods()) {
                     Method method = new Method(methodDeclaration);
                     type.addMethod(method);
 
-                    method.addAttribute("lineStart", "" + methodDeclaration.getBegin().get().line);
-                    method.addAttribute("lineEnd", "" + methodDeclaration.getEnd().get().line);
-                    method.addAttribute("constructor", "false");
+                    method.setLineRange(methodDeclaration.getBegin().get().line, methodDeclaration.getEnd().get().line);
+                    method.setConstructor(false);
 
                 }
 
             }
         }
 
-        return project;
+        return addedTypes;
+    }
+
+    private List<Pair<CompilationUnit, Map<String, String>>> compilationUnitsOf(Project project) {
+        Map<CompilationUnit, Map<String, String>> compilationUnits = new IdentityHashMap<>();
+
+        for (Package aPackage : project.getPackages()) {
+            for (Type type : aPackage.getTypes()) {
+                type.getSource().findCompilationUnit().ifPresent(cu -> compilationUnits.put(cu, type.getAttributes()));
+            }
+        }
 
+        List<Pair<CompilationUnit, Map<String, String>>> pairs = new ArrayList<>();
+        compilationUnits.forEach((cu, attributes) -> pairs.add(Pair.of(cu, attributes)));
+        return pairs;
     }
 
-    private JavaSymbolSolver configureParserAndResolver(Collection<Pair<String, Map<String, String>>> sourceCode, String projectPath) {
-        Set<File> sourceDirs = new HashSet<>();
+    //Every file is parsed exactly once, the resulting compilation units are shared by source root discovery and package gathering.
+    //Parsing happens on a fixed pool of workers fed through a bounded queue; when the queue is full the submitting thread parses
+    //the file itself, which keeps the number of sources in flight bounded.  Sources are only read once a worker picks them up
+    //and are dropped as soon as they're parsed, so the memory used for file contents depends on the number of workers rather
+    //than on the size of the project.  Results are collected in submission order so the
+    //resulting project is the same no matter how the workers were scheduled.
+    List<Pair<CompilationUnit, Map<String, String>>> parseSources(Stream<Pair<SourceReader, Map<String, String>>> sourceCode) {
+        return parseSources(sourceCode, new ParseStatistics());
+    }
 
-        for (Pair<String, Map<String, String>> sourceFile : sourceCode) {
-            String sourceCodeContent = sourceFile.getLeft();
-            Map<String, String> attributes = sourceFile.getRight();
+    List<Pair<CompilationUnit, Map<String, String>>> parseSources(Stream<Pair<SourceReader, Map<String, String>>> sourceCode, ParseStatistics statistics) {
+        ExecutorService parsePool = new ThreadPoolExecutor(
+                parseThreads,
+                parseThreads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(parseThreads * 2),
+                new ThreadFactoryBuilder().setNameFormat("jasome-parser-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
 
-            try {
-                CompilationUnit cu = JavaParser.parse(sourceCodeContent);
+        try {
+            List<Future<Optional<Pair<CompilationUnit, Map<String, String>>>>> parsedSources = new ArrayList<>();
 
-                String sourceFileName = attributes.get("sourceFile");
+            sourceCode.forEachOrdered(sourceFile ->
+                    parsedSources.add(parsePool.submit(() -> parseSource(sourceFile.getLeft(), sourceFile.getRight(), statistics)))
+            );
 
-                Optional<String> packageName = cu.getPackageDeclaration().map((p) -> p.getName().asString());
+            List<Pair<CompilationUnit, Map<String, String>>> compilationUnits = new ArrayList<>();
 
-                if (packageName.isPresent()) {
-                    String packagePrefix = packageName.get().replaceAll("[.]", File.separator) + "/";
-                    String sourceDir = FilenameUtils.getPath(sourceFileName);
-                    String baseSourceDir = sourceDir.replace(packagePrefix, "");
-                    String finalSourceBaseDir = baseSourceDir.replace(".", projectPath);
-                    sourceDirs.add(new File(finalSourceBaseDir));
-                } else {
-                    sourceDirs.add(new File(FilenameUtils.getPath(sourceFileName)));
-                }
+            for (Future<Optional<Pair<CompilationUnit, Map<String, String>>>> parsedSource : parsedSources) {
+                parsedSource.get().ifPresent(compilationUnits::add);
+            }
 
-            } catch (ParseProblemException e) {
-                String file = attributes.get("sourceFile");
-                logger.warn("Unable to parse code from file %s, ignoring\n", file);
-                logger.warn(e.getProblems().toString());
+            return compilationUnits;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            parsePool.shutdownNow();
+        }
+    }
+
+    //Syntax errors inside a statement only cost the parser that statement, so a file with problems is kept as long as any of its
+    //types could be made out, with the number of problems as an attribute of those types
+    private Optional<Pair<CompilationUnit, Map<String, String>>> parseSource(SourceReader sourceReader, Map<String, String> attributes, ParseStatistics statistics) {
+        String file = attributes.get("sourceFile");
+
+        long startTime = System.nanoTime();
+        ParseResult<CompilationUnit> result;
+        boolean generated = false;
+        try (Reader sourceCode = sourceReader.open()) {
+            Reader source = sourceCode;
+            if (generatedSourceDetector != null) {
+                //The prefix is read through a buffer and rewound, so the file isn't opened and decoded a second time to parse it
+                BufferedReader bufferedSource = new BufferedReader(sourceCode, GeneratedSourceDetector.PREFIX_LENGTH);
+                generated = generatedSourceDetector.isGenerated(readPrefix(bufferedSource));
+                if (generated) {
+                    statistics.recordGenerated();
+                }
+                if (generated && skipGeneratedSources) {
+                    logger.debug("Skipping generated file {}", file);
+                    return Optional.empty();
+                }
+                source = bufferedSource;
             }
+            result = parse(source);
+        } catch (IOException e) {
+            logger.warn("Unable to read code from file {}, ignoring", file);
+            statistics.recordUnparseable(0, System.nanoTime() - startTime);
+            return Optional.empty();
+        }
+        long parseTime = System.nanoTime() - startTime;
+
+        int problemCount = result.getProblems().size();
+        Optional<CompilationUnit> compilationUnit = result.getResult().filter(cu -> problemCount == 0 || !cu.getTypes().isEmpty());
+
+        if (!compilationUnit.isPresent()) {
+            logger.warn("Unable to parse code from file {}, ignoring", file);
+            logger.warn("{}", result.getProblems());
+            statistics.recordUnparseable(problemCount, parseTime);
+            return Optional.empty();
+        }
+
+        statistics.recordParsed(problemCount, parseTime);
+        logger.debug("Parsed {} in {} ms", file, TimeUnit.NANOSECONDS.toMillis(parseTime));
+
+        if (problemCount == 0 && !generated) {
+            return Optional.of(Pair.of(compilationUnit.get(), attributes));
+        }
+
+        Map<String, String> extendedAttributes = new LinkedHashMap<>(attributes);
+        if (problemCount > 0) {
+            logger.warn("Unable to parse some of the code in file {}, ignoring the statements that couldn't be parsed", file);
+            logger.warn("{}", result.getProblems());
+            extendedAttributes.put("parseProblems", String.valueOf(problemCount));
+        }
+        if (generated) {
+            extendedAttributes.put("generated", "true");
+        }
+        return Optional.of(Pair.of(compilationUnit.get(), Collections.unmodifiableMap(extendedAttributes)));
+    }
+
+    //Reads as much of the start of the source as the detector looks at, then rewinds it to the beginning
+    private static CharSequence readPrefix(BufferedReader source) throws IOException {
+        char[] prefix = new char[GeneratedSourceDetector.PREFIX_LENGTH];
+        source.mark(prefix.length);
+
+        int length = 0;
+        int read;
+        while (length < prefix.length && (read = source.read(prefix, length, prefix.length - length)) != -1) {
+            length += read;
         }
 
+        source.reset();
+        return CharBuffer.wrap(prefix, 0, length);
+    }
+
+    protected ParseResult<CompilationUnit> parse(Reader sourceCode) {
+        return new JavaParser(new ParserConfiguration().setAttributeComments(false))
+                .parse(ParseStart.COMPILATION_UNIT, Providers.provider(sourceCode));
+    }
 
-        TypeSolver reflectionTypeSolver = new ReflectionTypeSolver();
+    /**
+     * Running totals of how the files of a scan parsed, which end up as attributes of the project.
+     */
+    static class ParseStatistics {
+        private int parsedFiles;
+        private int unparseableFiles;
+        private int problems;
+        private int generatedFiles;
+        private long parseTime;
+
+        synchronized void recordParsed(int problemCount, long nanos) {
+            parsedFiles++;
+            problems += problemCount;
+            parseTime += nanos;
+        }
 
-        CombinedTypeSolver combinedTypeSolver = new CombinedTypeSolver();
-        combinedTypeSolver.add(reflectionTypeSolver);
+        synchronized void recordGenerated() {
+            generatedFiles++;
+        }
+
+        synchronized void recordUnparseable(int problemCount, long nanos) {
+            unparseableFiles++;
+            problems += problemCount;
+            parseTime += nanos;
+        }
 
-        for (File sourceDir : sourceDirs) {
-            try {
-                combinedTypeSolver.add(new JavaParserTypeSolver(sourceDir));
-            } catch (IllegalStateException e) {
-                logger.warn("Unable to parse code from dir %s, ignoring\n", sourceDir);
-                StringWriter sw = new StringWriter();
-                e.printStackTrace(new PrintWriter(sw));
-                logger.warn(sw.toString());
+        /**
+         * @param project gets the number of files parsed and left out, the number of parse problems and the total time spent
+         *                parsing, in milliseconds of parser work across all threads, and the number of generated files if
+         *                there were any
+         */
+        synchronized void addTo(Project project) {
+            project.addAttribute("parsedFiles", String.valueOf(parsedFiles));
+            project.addAttribute("unparseableFiles", String.valueOf(unparseableFiles));
+            project.addAttribute("parseProblems", String.valueOf(problems));
+            project.addAttribute("parseTime", String.valueOf(TimeUnit.NANOSECONDS.toMillis(parseTime)));
+            if (generatedFiles > 0) {
+                project.addAttribute("generatedFiles", String.valueOf(generatedFiles));
             }
         }
+    }
 
-        JavaSymbolSolver symbolSolver = new JavaSymbolSolver(combinedTypeSolver);
+    private void configureParserAndResolver(Project project, List<Pair<CompilationUnit, Map<String, String>>> compilationUnits, String projectPath) {
+        configureParserAndResolver(project, compilationUnits, projectPath, Collections.emptySet());
+    }
 
+    /**
+     * Gives every compilation unit the symbol solver for its module, and the project a parser configuration for the whole scan.
+     * Nothing is configured globally, so separate scans can run side by side.
+     *
+     * @param otherSourceRoots source roots to resolve against from disk, on top of the ones the compilation units are in
+     */
+    void configureParserAndResolver(Project project, List<Pair<CompilationUnit, Map<String, String>>> compilationUnits, String projectPath, Collection<Path> otherSourceRoots) {
+        SourceLayout sourceLayout = new SourceLayout(projectPath, classpathIndex);
+        otherSourceRoots.forEach(sourceLayout::addSourceRoot);
+
+        List<Path> sourceRoots = new ArrayList<>();
+        for (Pair<CompilationUnit, Map<String, String>> compilationUnit : compilationUnits) {
+            sourceRoots.add(sourceLayout.addCompilationUnit(compilationUnit.getLeft(), compilationUnit.getRight().get("sourceFile")));
+        }
+
+        //The compilation units were parsed before the resolvers existed, so each one gets the resolver for its own module now
+        for (int i = 0; i < compilationUnits.size(); i++) {
+            sourceLayout.symbolSolverFor(sourceRoots.get(i)).inject(compilationUnits.get(i).getLeft());
+        }
 
         ParserConfiguration parserConfiguration = new ParserConfiguration()
                 .setAttributeComments(false)
-                .setSymbolResolver(symbolSolver);
-        JavaParser.setStaticConfiguration(parserConfiguration);
-        return symbolSolver;
+                .setSymbolResolver(sourceLayout.projectSymbolSolver());
+        project.setParserConfiguration(parserConfiguration, sourceLayout.symbolResolution());
     }
 
 
-    private Map<String, List<Pair<ClassOrInterfaceDeclaration, Map<String, String>>>> gatherPackages(Collection<Pair<String, Map<String, String>>> sourcesAndAttributes) {
+    private Map<String, List<Pair<ClassOrInterfaceDeclaration, Map<String, String>>>> gatherPackages(List<Pair<CompilationUnit, Map<String, String>>> compilationUnits) {
 
         Map<String, List<Pair<ClassOrInterfaceDeclaration, Map<String, String>>>> packages = new HashMap<>();
 
-        for (Pair<String, Map<String, String>> sourceFile : sourcesAndAttributes) {
-            String sourceCode = sourceFile.getLeft();
-            Map<String, String> attributes = sourceFile.getRight();
+        for (Pair<CompilationUnit, Map<String, String>> compilationUnit : compilationUnits) {
+            CompilationUnit cu = compilationUnit.getLeft();
+            Map<String, String> attributes = compilationUnit.getRight();
 
-            try {
-                CompilationUnit cu = JavaParser.parse(sourceCode);
+            String packageName = cu.getPackageDeclaration().map((p) -> p.getName().asString()).orElse("default");
 
-                String packageName = cu.getPackageDeclaration().map((p) -> p.getName().asString()).orElse("default");
+            List<ClassOrInterfaceDeclaration> classes = cu.getNodesByType(ClassOrInterfaceDeclaration.class);
 
-                List<ClassOrInterfaceDeclaration> classes = cu.getNodesByType(ClassOrInterfaceDeclaration.class);
-
-                if (!packages.containsKey(packageName)) {
-                    packages.put(packageName, new ArrayList<>());
-                }
+            if (!packages.containsKey(packageName)) {
+                packages.put(packageName, new ArrayList<>());
+            }
 
-                for (ClassOrInterfaceDeclaration clazz : classes) {
-                    packages.get(packageName).add(Pair.of(clazz, attributes));
-                }
-            } catch (ParseProblemException e) {
-                String file = attributes.get("sourceFile");
-                logger.warn("Unable to parse code from file %s, ignoring\n", file);
-                logger.warn(e.getProblems().toString());
+            for (ClassOrInterfaceDeclaration clazz : classes) {
+                packages.get(packageName).add(Pair.of(clazz, attributes));
             }
         }
 
@@ -182,4 +448,3 @@ public abstract class Scanner<T> {
     }
 
 }
-
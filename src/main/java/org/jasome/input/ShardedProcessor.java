@@ -0,0 +1,601 @@
+package org.jasome.input;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Modifier;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import org.jasome.util.CalculationUtils;
+import org.jasome.util.TypeSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Processes a project a few packages at a time, for projects whose parsed sources don't all fit in memory at once.
+ *
+ * The packages are split into shards of roughly the given number of source files; a package is never split between shards.
+ * A first pass goes through the shards summarizing every type (see {@link TypeSummary}), which is all that calculators need
+ * to know about types in other packages: inheritance, client and call relationships, modifiers, methods and attributes.  The
+ * second pass parses each shard again and runs the type, method and package calculators on it, with every type outside the
+ * shard standing in by its summary.  The metrics of each shard are written to disk and its sources dropped before the next one
+ * is parsed, and once all shards are done the metrics are read back into a single project for the project calculators.
+ *
+ * The results are the same as processing the whole project at once, as long as types in other shards can be resolved from the
+ * source directories on disk.  Only the sources of one shard, plus the summaries of every type, are in memory at any one time;
+ * the price is that every source file is parsed three times, once more to find out which package it's in.  The processor's
+ * metrics cache isn't used.
+ *
+ * With {@link #setWorkers} both passes are handed out to separate worker processes instead, each taking every n-th shard.  The
+ * workers exchange summaries and metrics through files, and since the shard results are always merged in the same order, and
+ * cross-package metrics like coupling and fan-in were already calculated against the summaries of the whole project, the
+ * merged project is the same no matter how many workers there were or which of them finished first.
+ */
+public class ShardedProcessor {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedProcessor.class);
+
+    private static final String SUMMARIZE = "summarize";
+    private static final String CALCULATE = "calculate";
+
+    //How long a worker gets to exit once it has been told to stop before it is killed
+    private static final int WORKER_EXIT_TIMEOUT_SECONDS = 10;
+
+    private final Processor processor;
+    private final int shardSize;
+    private final File spillDirectory;
+
+    private int workers = 0;
+    private List<String> workerCommand;
+
+    /**
+     * @param shardSize      the number of source files to aim for in each shard, packages with more files get a shard to themselves
+     * @param spillDirectory where the metrics of processed shards are kept until they're merged
+     */
+    public ShardedProcessor(Processor processor, int shardSize, File spillDirectory) {
+        if (shardSize < 1) {
+            throw new IllegalArgumentException("Shard size must be at least 1, was " + shardSize);
+        }
+        this.processor = processor;
+        this.shardSize = shardSize;
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Runs the shards in separate processes rather than in this one.
+     *
+     * @param workers       how many worker processes to run at once
+     * @param workerCommand the command that starts a worker, which gets the path of a task file as one more argument and has to
+     *                      pass it to {@link #work} with a scanner for the same source directory
+     */
+    public void setWorkers(int workers, List<String> workerCommand) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("There must be at least 1 worker, was " + workers);
+        }
+        this.workers = workers;
+        this.workerCommand = new ArrayList<>(workerCommand);
+    }
+
+    Project process(Scanner<?> scanner, List<Pair<SourceReader, Map<String, String>>> sources, String projectPath) {
+        String projectName = FilenameUtils.getBaseName(projectPath);
+
+        //Calculators that can't be ordered fail before any shard is parsed, rather than once they first run
+        processor.checkDependencies();
+
+        Map<String, List<Pair<SourceReader, Map<String, String>>>> sourcesByPackage = new TreeMap<>();
+        Set<Path> sourceRoots = new LinkedHashSet<>();
+        Scanner.ParseStatistics statistics = new Scanner.ParseStatistics();
+        survey(scanner, sources, projectPath, sourcesByPackage, sourceRoots, statistics);
+
+        List<List<Pair<SourceReader, Map<String, String>>>> shards = shard(sourcesByPackage);
+        logger.info("Processing {} source files in {} shards", sourcesByPackage.values().stream().mapToInt(List::size).sum(), shards.size());
+
+        File shardDirectory;
+        try {
+            spillDirectory.mkdirs();
+            shardDirectory = Files.createTempDirectory(spillDirectory.toPath(), "shards").toFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create a directory for shard results in " + spillDirectory, e);
+        }
+
+        try {
+            if (workers > 0) {
+                List<File> summaryFiles = runWorkers(SUMMARIZE, shards, projectPath, sourceRoots, shardDirectory, Collections.emptyList());
+                runWorkers(CALCULATE, shards, projectPath, sourceRoots, shardDirectory, summaryFiles);
+            } else {
+                Map<String, Map<String, TypeSummary>> summaries = new TreeMap<>();
+                for (List<Pair<SourceReader, Map<String, String>>> shard : shards) {
+                    summarize(scanner, shard, projectPath, sourceRoots, summaries);
+                }
+
+                for (int i = 0; i < shards.size(); i++) {
+                    calculate(scanner, shards.get(i), projectName, projectPath, sourceRoots, summaries, shardResult(shardDirectory, i));
+                    logger.debug("Processed shard {} of {}", i + 1, shards.size());
+                }
+            }
+
+            Project project = new Project(projectName);
+            statistics.addTo(project);
+            for (int i = 0; i < shards.size(); i++) {
+                restore(project, shardResult(shardDirectory, i));
+            }
+
+            processor.calculateProject(project);
+
+            return project;
+        } finally {
+            FileUtils.deleteQuietly(shardDirectory);
+        }
+    }
+
+    /**
+     * Does the part of a sharded scan described by a task file, as a worker process started by another sharded processor.
+     *
+     * @param scanner a scanner for the source directory being processed, set up the same way as the one that started the scan
+     */
+    public void work(Scanner<?> scanner, File taskFile) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(taskFile)))) {
+            String phase = in.readUTF();
+            String projectPath = in.readUTF();
+            File shardDirectory = new File(in.readUTF());
+
+            Set<Path> sourceRoots = new LinkedHashSet<>();
+            for (String sourceRoot : readStrings(in)) {
+                sourceRoots.add(Paths.get(sourceRoot));
+            }
+
+            List<File> files = readStrings(in).stream().map(File::new).collect(Collectors.toList());
+
+            Map<Integer, List<Pair<SourceReader, Map<String, String>>>> shards = new TreeMap<>();
+            int shardCount = in.readInt();
+            for (int i = 0; i < shardCount; i++) {
+                int index = in.readInt();
+                List<Pair<SourceReader, Map<String, String>>> shard = new ArrayList<>();
+                int fileCount = in.readInt();
+                for (int j = 0; j < fileCount; j++) {
+                    Map<String, String> attributes = readAttributes(in);
+                    Path sourceFile = Paths.get(projectPath).resolve(attributes.get("sourceFile")).normalize();
+                    shard.add(Pair.of(new MappedSourceReader(sourceFile, scanner.getEncoding()), attributes));
+                }
+                shards.put(index, shard);
+            }
+
+            if (phase.equals(SUMMARIZE)) {
+                Map<String, Map<String, TypeSummary>> summaries = new TreeMap<>();
+                for (List<Pair<SourceReader, Map<String, String>>> shard : shards.values()) {
+                    summarize(scanner, shard, projectPath, sourceRoots, summaries);
+                }
+                writeSummaries(files.get(0), summaries);
+            } else {
+                Map<String, Map<String, TypeSummary>> summaries = new TreeMap<>();
+                for (File summaryFile : files) {
+                    readSummaries(summaryFile, summaries);
+                }
+                for (Map.Entry<Integer, List<Pair<SourceReader, Map<String, String>>>> shard : shards.entrySet()) {
+                    calculate(scanner, shard.getValue(), FilenameUtils.getBaseName(projectPath), projectPath, sourceRoots, summaries, shardResult(shardDirectory, shard.getKey()));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read shard task " + taskFile, e);
+        }
+    }
+
+    private static File shardResult(File shardDirectory, int index) {
+        return new File(shardDirectory, "shard-" + index + ".bin");
+    }
+
+    //Starts a worker for every n-th shard, waits for all of them and returns the summary files the workers wrote, if any
+    private List<File> runWorkers(String phase, List<List<Pair<SourceReader, Map<String, String>>>> shards, String projectPath, Set<Path> sourceRoots, File shardDirectory, List<File> summaryFiles) {
+        int workerCount = Math.min(workers, shards.size());
+        List<File> writtenSummaryFiles = new ArrayList<>();
+        List<Process> processes = new ArrayList<>();
+        List<File> logs = new ArrayList<>();
+
+        try {
+            for (int worker = 0; worker < workerCount; worker++) {
+                File taskFile = new File(shardDirectory, phase + "-" + worker + ".task");
+                File summaryFile = new File(shardDirectory, "summaries-" + worker + ".bin");
+                writtenSummaryFiles.add(summaryFile);
+
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(taskFile)))) {
+                    out.writeUTF(phase);
+                    out.writeUTF(projectPath);
+                    out.writeUTF(shardDirectory.getAbsolutePath());
+                    writeStrings(out, sourceRoots.stream().map(Path::toString).collect(Collectors.toList()));
+                    writeStrings(out, (phase.equals(SUMMARIZE) ? Collections.singletonList(summaryFile) : summaryFiles).stream().map(File::getAbsolutePath).collect(Collectors.toList()));
+
+                    out.writeInt((shards.size() - worker + workerCount - 1) / workerCount);
+                    for (int i = worker; i < shards.size(); i += workerCount) {
+                        out.writeInt(i);
+                        out.writeInt(shards.get(i).size());
+                        for (Pair<SourceReader, Map<String, String>> source : shards.get(i)) {
+                            writeAttributes(out, source.getRight());
+                        }
+                    }
+                }
+
+                List<String> command = new ArrayList<>(workerCommand);
+                command.add(taskFile.getAbsolutePath());
+
+                File log = new File(shardDirectory, phase + "-" + worker + ".log");
+                logs.add(log);
+                processes.add(new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start());
+            }
+
+            for (int worker = 0; worker < processes.size(); worker++) {
+                int exitCode = processes.get(worker).waitFor();
+                if (exitCode != 0) {
+                    throw new IllegalStateException("Shard worker " + worker + " failed to " + phase + " its shards with exit code " + exitCode + ":\n" + tail(logs.get(worker)));
+                }
+            }
+            logger.debug("{} workers finished the {} pass", processes.size(), phase);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to start shard workers", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for shard workers", e);
+        } finally {
+            //Workers still running after another one failed are stopped, and the shard directory is only deleted once none of
+            //them can still be writing to it
+            processes.forEach(Process::destroy);
+            processes.forEach(ShardedProcessor::awaitExit);
+        }
+
+        return writtenSummaryFiles;
+    }
+
+    //Waits for a worker that was told to stop, killing it if it takes too long, even if this thread is interrupted meanwhile
+    private static void awaitExit(Process process) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (!process.waitFor(WORKER_EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                        process.destroyForcibly().waitFor();
+                    }
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String tail(File log) {
+        try {
+            List<String> lines = FileUtils.readLines(log, Charset.defaultCharset());
+            return String.join("\n", lines.subList(Math.max(0, lines.size() - 20), lines.size()));
+        } catch (IOException e) {
+            return "(no output from " + log + ")";
+        }
+    }
+
+    //Finds the package and source root of every file, a batch of files at a time.  Files that can't be parsed are left out
+    private void survey(Scanner<?> scanner, List<Pair<SourceReader, Map<String, String>>> sources, String projectPath, Map<String, List<Pair<SourceReader, Map<String, String>>>> sourcesByPackage, Set<Path> sourceRoots, Scanner.ParseStatistics statistics) {
+        for (int start = 0; start < sources.size(); start += shardSize) {
+            List<Pair<SourceReader, Map<String, String>>> batch = sources.subList(start, Math.min(sources.size(), start + shardSize));
+
+            //Parsing can add to the attributes, so the sources are found again by file
+            Map<String, Pair<SourceReader, Map<String, String>>> sourcesByFile = new HashMap<>();
+            batch.forEach(source -> sourcesByFile.put(source.getRight().get("sourceFile"), source));
+
+            for (Pair<CompilationUnit, Map<String, String>> compilationUnit : scanner.parseSources(batch.stream(), statistics)) {
+                CompilationUnit cu = compilationUnit.getLeft();
+                String sourceFile = compilationUnit.getRight().get("sourceFile");
+
+                String packageName = cu.getPackageDeclaration().map(p -> p.getName().asString()).orElse("default");
+                sourcesByPackage.computeIfAbsent(packageName, p -> new ArrayList<>()).add(sourcesByFile.get(sourceFile));
+                sourceRoots.add(SourceLayout.sourceRootOf(projectPath, cu, sourceFile));
+            }
+        }
+    }
+
+    private List<List<Pair<SourceReader, Map<String, String>>>> shard(Map<String, List<Pair<SourceReader, Map<String, String>>>> sourcesByPackage) {
+        List<List<Pair<SourceReader, Map<String, String>>>> shards = new ArrayList<>();
+        List<Pair<SourceReader, Map<String, String>>> shard = new ArrayList<>();
+
+        for (List<Pair<SourceReader, Map<String, String>>> packageSources : sourcesByPackage.values()) {
+            if (!shard.isEmpty() && shard.size() + packageSources.size() > shardSize) {
+                shards.add(shard);
+                shard = new ArrayList<>();
+            }
+            shard.addAll(packageSources);
+        }
+        if (!shard.isEmpty()) {
+            shards.add(shard);
+        }
+
+        return shards;
+    }
+
+    private void summarize(Scanner<?> scanner, List<Pair<SourceReader, Map<String, String>>> shard, String projectPath, Set<Path> sourceRoots, Map<String, Map<String, TypeSummary>> summaries) {
+        Project project = parse(scanner, shard, FilenameUtils.getBaseName(projectPath), projectPath, sourceRoots);
+
+        for (Package aPackage : project.getPackages()) {
+            //One type at a time: most of what gets resolved here is read from the source directories, and the symbol solver
+            //loses resolutions when types are parsed from disk by several threads at once
+            Map<String, TypeSummary> packageSummaries = summaries.computeIfAbsent(aPackage.getName(), p -> new TreeMap<>());
+            for (Type type : aPackage.getTypes()) {
+                packageSummaries.put(type.getName(), project.getMetadata().getSummary(type));
+            }
+        }
+
+        release(project);
+    }
+
+    private void calculate(Scanner<?> scanner, List<Pair<SourceReader, Map<String, String>>> shard, String projectName, String projectPath, Set<Path> sourceRoots, Map<String, Map<String, TypeSummary>> summaries, File shardResult) {
+        Project project = parse(scanner, shard, projectName, projectPath, sourceRoots);
+
+        Set<Package> shardPackages = new HashSet<>(project.getPackages());
+        Set<Type> shardTypes = shardPackages.stream().flatMap(p -> p.getTypes().stream()).collect(Collectors.toSet());
+
+        //Everything outside of the shard is there for calculators to find, but only as names and summaries
+        for (Map.Entry<String, Map<String, TypeSummary>> packageSummaries : summaries.entrySet()) {
+            if (project.lookupPackageByName(packageSummaries.getKey()).isPresent()) continue;
+
+            Package aPackage = new Package(packageSummaries.getKey());
+            project.addPackage(aPackage);
+
+            for (Map.Entry<String, TypeSummary> typeSummary : packageSummaries.getValue().entrySet()) {
+                Type type = new Type(typeSummary.getKey());
+                aPackage.addType(type);
+
+                for (Map.Entry<String, TypeSummary.MethodSummary> methodSummary : typeSummary.getValue().getMethods().entrySet()) {
+                    type.addMethod(new Method(methodSummary.getKey(), methodSummary.getValue().getSignature()));
+                }
+            }
+        }
+
+        //The types in the shard use their summaries from the first pass too, so that every shard sees the same relationships
+        for (Package aPackage : project.getPackages()) {
+            for (Type type : aPackage.getTypes()) {
+                Optional.ofNullable(summaries.getOrDefault(aPackage.getName(), Collections.emptyMap()).get(type.getName()))
+                        .ifPresent(summary -> project.getMetadata().addSummary(type, summary));
+            }
+        }
+
+        processor.calculate(project, shardTypes::contains, shardPackages::contains);
+
+        spill(shardPackages, shardResult);
+
+        release(project);
+    }
+
+    private Project parse(Scanner<?> scanner, List<Pair<SourceReader, Map<String, String>>> shard, String projectName, String projectPath, Set<Path> sourceRoots) {
+        List<Pair<CompilationUnit, Map<String, String>>> compilationUnits = scanner.parseSources(shard.stream());
+
+        Project project = new Project(projectName);
+        scanner.configureParserAndResolver(project, compilationUnits, projectPath, sourceRoots);
+        scanner.addTypes(project, compilationUnits);
+
+        return project;
+    }
+
+    private void release(Project project) {
+        project.releaseSources();
+        CalculationUtils.isFieldAccessedWithinMethod.invalidateAll();
+    }
+
+    private void spill(Set<Package> packages, File shardResult) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(shardResult))))) {
+            out.writeInt(packages.size());
+            for (Package aPackage : packages) {
+                out.writeUTF(aPackage.getName());
+                writeAttributes(out, aPackage.getAttributes());
+                MetricsCache.writeMetrics(out, aPackage.getMetrics());
+
+                out.writeInt(aPackage.getTypes().size());
+                for (Type type : aPackage.getTypes()) {
+                    out.writeUTF(type.getName());
+                    writeAttributes(out, type.getAttributes());
+                    MetricsCache.writeMetrics(out, type.getMetrics());
+
+                    out.writeInt(type.getMethods().size());
+                    for (Method method : type.getMethods()) {
+                        out.writeUTF(method.getName());
+                        out.writeUTF(method.getSignature());
+                        writeAttributes(out, method.getAttributes());
+                        MetricsCache.writeMetrics(out, method.getMetrics());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write shard results to " + shardResult, e);
+        }
+    }
+
+    private void restore(Project project, File shardResult) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(shardResult))))) {
+            int packageCount = in.readInt();
+            for (int i = 0; i < packageCount; i++) {
+                Package aPackage = new Package(in.readUTF());
+                readAttributes(in).forEach(aPackage::addAttribute);
+                aPackage.addMetrics(MetricsCache.readMetrics(in));
+                project.addPackage(aPackage);
+
+                int typeCount = in.readInt();
+                for (int j = 0; j < typeCount; j++) {
+                    Type type = new Type(in.readUTF());
+                    readAttributes(in).forEach(type::addAttribute);
+                    type.addMetrics(MetricsCache.readMetrics(in));
+                    aPackage.addType(type);
+
+                    int methodCount = in.readInt();
+                    for (int k = 0; k < methodCount; k++) {
+                        Method method = new Method(in.readUTF(), in.readUTF());
+                        readAttributes(in).forEach(method::addAttribute);
+                        method.addMetrics(MetricsCache.readMetrics(in));
+                        type.addMethod(method);
+                    }
+
+                    type.releaseSource();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read shard results from " + shardResult, e);
+        }
+    }
+
+    private static void writeSummaries(File file, Map<String, Map<String, TypeSummary>> summaries) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(summaries.size());
+            for (Map.Entry<String, Map<String, TypeSummary>> packageSummaries : summaries.entrySet()) {
+                out.writeUTF(packageSummaries.getKey());
+                out.writeInt(packageSummaries.getValue().size());
+                for (Map.Entry<String, TypeSummary> typeSummary : packageSummaries.getValue().entrySet()) {
+                    TypeSummary summary = typeSummary.getValue();
+                    out.writeUTF(typeSummary.getKey());
+                    writeModifiers(out, summary.getModifiers());
+                    out.writeBoolean(summary.isInterface());
+                    writeStrings(out, summary.getMentionedNames());
+                    writeNames(out, summary.getParents());
+                    writeNames(out, summary.getSuppliers());
+
+                    out.writeInt(summary.getMethods().size());
+                    for (Map.Entry<String, TypeSummary.MethodSummary> methodSummary : summary.getMethods().entrySet()) {
+                        TypeSummary.MethodSummary method = methodSummary.getValue();
+                        out.writeUTF(methodSummary.getKey());
+                        out.writeUTF(method.getSignature());
+                        out.writeUTF(method.getShape());
+                        writeModifiers(out, method.getModifiers());
+                        out.writeInt(method.getCalls().size());
+                        for (Triple<String, String, String> call : method.getCalls()) {
+                            out.writeUTF(call.getLeft());
+                            out.writeUTF(call.getMiddle());
+                            out.writeUTF(call.getRight());
+                        }
+                    }
+
+                    out.writeInt(summary.getAttributes().size());
+                    for (TypeSummary.AttributeSummary attribute : summary.getAttributes()) {
+                        writeModifiers(out, attribute.getModifiers());
+                        out.writeUTF(attribute.getType());
+                        out.writeUTF(attribute.getName());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write type summaries to " + file, e);
+        }
+    }
+
+    private static void readSummaries(File file, Map<String, Map<String, TypeSummary>> summaries) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            int packageCount = in.readInt();
+            for (int i = 0; i < packageCount; i++) {
+                Map<String, TypeSummary> packageSummaries = summaries.computeIfAbsent(in.readUTF(), p -> new TreeMap<>());
+
+                int typeCount = in.readInt();
+                for (int j = 0; j < typeCount; j++) {
+                    String typeName = in.readUTF();
+                    EnumSet<Modifier> modifiers = readModifiers(in);
+                    boolean isInterface = in.readBoolean();
+                    List<String> mentionedNames = readStrings(in);
+                    Set<Pair<String, String>> parents = readNames(in);
+                    Set<Pair<String, String>> suppliers = readNames(in);
+
+                    Map<String, TypeSummary.MethodSummary> methods = new LinkedHashMap<>();
+                    int methodCount = in.readInt();
+                    for (int k = 0; k < methodCount; k++) {
+                        String methodName = in.readUTF();
+                        String signature = in.readUTF();
+                        String shape = in.readUTF();
+                        EnumSet<Modifier> methodModifiers = readModifiers(in);
+                        List<Triple<String, String, String>> calls = new ArrayList<>();
+                        int callCount = in.readInt();
+                        for (int l = 0; l < callCount; l++) {
+                            calls.add(Triple.of(in.readUTF(), in.readUTF(), in.readUTF()));
+                        }
+                        methods.put(methodName, new TypeSummary.MethodSummary(signature, shape, methodModifiers, calls));
+                    }
+
+                    List<TypeSummary.AttributeSummary> attributes = new ArrayList<>();
+                    int attributeCount = in.readInt();
+                    for (int k = 0; k < attributeCount; k++) {
+                        attributes.add(new TypeSummary.AttributeSummary(readModifiers(in), in.readUTF(), in.readUTF()));
+                    }
+
+                    packageSummaries.put(typeName, new TypeSummary(modifiers, isInterface, new HashSet<>(mentionedNames), parents, suppliers, methods, attributes));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read type summaries from " + file, e);
+        }
+    }
+
+    private static void writeModifiers(DataOutputStream out, EnumSet<Modifier> modifiers) throws IOException {
+        writeStrings(out, modifiers.stream().map(Modifier::name).collect(Collectors.toList()));
+    }
+
+    private static EnumSet<Modifier> readModifiers(DataInputStream in) throws IOException {
+        EnumSet<Modifier> modifiers = EnumSet.noneOf(Modifier.class);
+        for (String modifier : readStrings(in)) {
+            modifiers.add(Modifier.valueOf(modifier));
+        }
+        return modifiers;
+    }
+
+    private static void writeNames(DataOutputStream out, Set<Pair<String, String>> names) throws IOException {
+        out.writeInt(names.size());
+        for (Pair<String, String> name : names) {
+            out.writeUTF(name.getLeft());
+            out.writeUTF(name.getRight());
+        }
+    }
+
+    private static Set<Pair<String, String>> readNames(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Set<Pair<String, String>> names = new LinkedHashSet<>();
+        for (int i = 0; i < count; i++) {
+            names.add(Pair.of(in.readUTF(), in.readUTF()));
+        }
+        return names;
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            out.writeUTF(string);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            strings.add(in.readUTF());
+        }
+        return strings;
+    }
+
+    private static void writeAttributes(DataOutputStream out, Map<String, String> attributes) throws IOException {
+        out.writeInt(attributes.size());
+        for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+            out.writeUTF(attribute.getKey());
+            out.writeUTF(attribute.getValue());
+        }
+    }
+
+    private static Map<String, String> readAttributes(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, String> attributes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            attributes.put(in.readUTF(), in.readUTF());
+        }
+        return attributes;
+    }
+}
@@ -0,0 +1,451 @@
+package org.jasome.input;
+
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import org.jasome.util.SymbolResolution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Works out where the source roots of a scanned project are and which Maven or Gradle module each of them belongs to, so that
+ * every compilation unit can be given a symbol solver that only looks through its own module and the modules that module
+ * depends on, nearest dependency first, instead of through every source root in the project.
+ *
+ * Modules are the directories under the project that hold a {@code pom.xml}, {@code build.gradle} or {@code build.gradle.kts},
+ * or failing that the directory above a {@code src/<source set>/java} root.  Dependencies between modules are read from the
+ * {@code <dependencies>} of a pom and the {@code project(':path')} references of a Gradle build.  Source roots that aren't in
+ * any module, and modules without a build file to read dependencies from, resolve against every source root like before.
+ */
+class SourceLayout {
+    private static final Logger logger = LoggerFactory.getLogger(SourceLayout.class);
+
+    private static final List<String> BUILD_FILES = ImmutableList.of("pom.xml", "build.gradle", "build.gradle.kts");
+    private static final List<String> STANDARD_SOURCE_ROOTS = ImmutableList.of("src/main/java", "src/test/java");
+    private static final Set<String> NON_MODULE_DIRECTORIES = ImmutableSet.of("src", "target", "build", "out", "node_modules");
+    private static final Pattern GRADLE_PROJECT_DEPENDENCY = Pattern.compile("project\\s*\\(\\s*(?:path\\s*:\\s*)?['\"]([^'\"]+)['\"]");
+
+    private final Path projectDir;
+    private final ClasspathIndex classpathIndex;
+    private final Map<Path, Module> modules = new LinkedHashMap<>();
+    private final Module looseSources = new Module(null);
+    private final Map<Path, Module> sourceRoots = new LinkedHashMap<>();
+    private final Map<Path, CompilationUnitTypeSolver> parsedSources = new HashMap<>();
+    private final SymbolResolution symbolResolution = new SymbolResolution();
+
+    private Map<Module, JavaSymbolSolver> symbolSolvers;
+    private JavaSymbolSolver projectSymbolSolver;
+
+    /**
+     * @param classpathIndex the libraries the sources use, or null to only resolve against the JDK and the sources themselves
+     */
+    SourceLayout(String projectPath, ClasspathIndex classpathIndex) {
+        this.projectDir = Paths.get(projectPath).toAbsolutePath().normalize();
+        this.classpathIndex = classpathIndex;
+
+        if (Files.isDirectory(projectDir)) {
+            findModules();
+        }
+    }
+
+    /**
+     * Records the source root a compilation unit was found under, based on where its file is and what package it declares,
+     * and makes its types available to the solvers for that root without reading the file again.
+     *
+     * @param sourceFile the sourceFile attribute of the compilation unit, relative to the project
+     * @return the source root, which may not be a directory at all if the sources weren't read from disk
+     */
+    Path addCompilationUnit(CompilationUnit compilationUnit, String sourceFile) {
+        Path sourceRoot = sourceRootOf(projectDir, compilationUnit, sourceFile);
+
+        addSourceRoot(sourceRoot);
+        parsedSources.computeIfAbsent(sourceRoot, root -> tracked(new CompilationUnitTypeSolver())).add(compilationUnit);
+
+        return sourceRoot;
+    }
+
+    /**
+     * Records a source root whose files aren't kept in memory, so that its types are resolved from disk.
+     */
+    void addSourceRoot(Path sourceRoot) {
+        if (symbolSolvers != null) {
+            throw new IllegalStateException("Source roots have to be added before symbol solvers are created");
+        }
+
+        if (!sourceRoots.containsKey(sourceRoot)) {
+            Module module = moduleOf(sourceRoot);
+            module.sourceRoots.add(sourceRoot);
+            sourceRoots.put(sourceRoot, module);
+        }
+    }
+
+    /**
+     * @see #addCompilationUnit
+     */
+    static Path sourceRootOf(String projectPath, CompilationUnit compilationUnit, String sourceFile) {
+        return sourceRootOf(Paths.get(projectPath).toAbsolutePath().normalize(), compilationUnit, sourceFile);
+    }
+
+    private static Path sourceRootOf(Path projectDir, CompilationUnit compilationUnit, String sourceFile) {
+        Path directory = projectDir.resolve(sourceFile).normalize().getParent();
+
+        List<String> packagePath = compilationUnit.getPackageDeclaration()
+                .map(p -> Arrays.asList(p.getNameAsString().split("[.]")))
+                .orElse(Collections.emptyList());
+        Path sourceRoot = directory;
+        for (int i = packagePath.size() - 1; i >= 0 && sourceRoot != null; i--) {
+            if (sourceRoot.getFileName() == null || !sourceRoot.getFileName().toString().equals(packagePath.get(i))) {
+                //The file isn't where its package says it should be, so the best guess is the directory it's in
+                sourceRoot = directory;
+                break;
+            }
+            sourceRoot = sourceRoot.getParent();
+        }
+        if (sourceRoot == null) sourceRoot = directory;
+
+        return sourceRoot;
+    }
+
+    JavaSymbolSolver symbolSolverFor(Path sourceRoot) {
+        createSymbolSolvers();
+        return symbolSolvers.get(sourceRoots.getOrDefault(sourceRoot, looseSources));
+    }
+
+    /**
+     * A solver that can see every source root in the project, for resolving things that don't belong to any one module.
+     */
+    JavaSymbolSolver projectSymbolSolver() {
+        createSymbolSolvers();
+        return projectSymbolSolver;
+    }
+
+    /**
+     * What resolution with the symbol solvers has to go through, which knows every type solver they use.
+     */
+    SymbolResolution symbolResolution() {
+        return symbolResolution;
+    }
+
+    private void createSymbolSolvers() {
+        if (symbolSolvers != null) return;
+
+        List<Module> allModules = new ArrayList<>(modules.values());
+        allModules.add(looseSources);
+
+        //Every module's solver chain is the parent of the solvers for its own roots, so types found in a dependency are
+        //themselves resolved against the dependency's chain rather than the chain of whoever looked them up
+        Map<Module, ModuleTypeSolver> chains = new LinkedHashMap<>();
+        Map<Path, TypeSolver> inMemorySolvers = new LinkedHashMap<>();
+        Map<Path, TypeSolver> onDiskSolvers = new LinkedHashMap<>();
+        for (Module module : allModules) {
+            ModuleTypeSolver chain = tracked(new ModuleTypeSolver());
+            chains.put(module, chain);
+
+            for (Path sourceRoot : module.allSourceRoots()) {
+                if (parsedSources.containsKey(sourceRoot)) {
+                    parsedSources.get(sourceRoot).setParent(chain);
+                    inMemorySolvers.put(sourceRoot, parsedSources.get(sourceRoot));
+                }
+
+                //Sources read from an archive have no source root on disk to resolve against
+                if (!Files.isDirectory(sourceRoot)) continue;
+
+                try {
+                    JavaParserTypeSolver rootSolver = tracked(new JavaParserTypeSolver(sourceRoot.toFile()));
+                    rootSolver.setParent(chain);
+                    onDiskSolvers.put(sourceRoot, rootSolver);
+                } catch (IllegalStateException e) {
+                    logger.warn("Unable to parse code from dir {}, ignoring", sourceRoot, e);
+                }
+            }
+        }
+
+        Set<Path> allSourceRoots = new LinkedHashSet<>(inMemorySolvers.keySet());
+        allSourceRoots.addAll(onDiskSolvers.keySet());
+
+        //Libraries can't refer back to the sources, so what they refer to is only looked for in the JDK and the other libraries
+        Optional<TypeSolver> librarySolver = Optional.ofNullable(classpathIndex).map(index -> {
+            ModuleTypeSolver libraries = tracked(new ModuleTypeSolver());
+            ClasspathTypeSolver classpathSolver = tracked(new ClasspathTypeSolver(index));
+            classpathSolver.setParent(libraries);
+            libraries.add(tracked(new ReflectionTypeSolver()));
+            libraries.add(classpathSolver);
+            return classpathSolver;
+        });
+
+        ModuleTypeSolver projectChain = tracked(new ModuleTypeSolver());
+        addSolvers(projectChain, allSourceRoots, inMemorySolvers, onDiskSolvers, librarySolver);
+
+        symbolSolvers = new HashMap<>();
+        for (Module module : allModules) {
+            Set<Path> visibleRoots = new LinkedHashSet<>(module.allSourceRoots());
+            if (module.dependenciesKnown()) {
+                for (Module dependency : dependenciesInOrder(module)) {
+                    visibleRoots.addAll(dependency.mainSourceRoots());
+                }
+            } else {
+                visibleRoots.addAll(allSourceRoots);
+            }
+
+            addSolvers(chains.get(module), visibleRoots, inMemorySolvers, onDiskSolvers, librarySolver);
+            symbolSolvers.put(module, new JavaSymbolSolver(chains.get(module)));
+        }
+
+        projectSymbolSolver = new JavaSymbolSolver(projectChain);
+
+        logger.debug("Resolving {} source roots in {} modules", allSourceRoots.size(), modules.size());
+    }
+
+    //Files that have already been parsed are looked up in memory first, the ones on disk are only needed for files that
+    //weren't scanned, such as tests when they're excluded.  Libraries come last, as they would on a compiler's classpath
+    private void addSolvers(ModuleTypeSolver chain, Set<Path> sourceRoots, Map<Path, TypeSolver> inMemorySolvers, Map<Path, TypeSolver> onDiskSolvers, Optional<TypeSolver> librarySolver) {
+        chain.add(tracked(new ReflectionTypeSolver()));
+        for (Path sourceRoot : sourceRoots) {
+            if (inMemorySolvers.containsKey(sourceRoot)) chain.add(inMemorySolvers.get(sourceRoot));
+        }
+        for (Path sourceRoot : sourceRoots) {
+            if (onDiskSolvers.containsKey(sourceRoot)) chain.add(onDiskSolvers.get(sourceRoot));
+        }
+        librarySolver.ifPresent(chain::add);
+    }
+
+    private <T extends TypeSolver> T tracked(T typeSolver) {
+        symbolResolution.addTypeSolver(typeSolver);
+        return typeSolver;
+    }
+
+    //Direct dependencies first, then theirs, so the most likely places for a type are tried before the less likely ones
+    private List<Module> dependenciesInOrder(Module module) {
+        Set<Module> visited = new LinkedHashSet<>();
+        Deque<Module> toVisit = new ArrayDeque<>();
+        toVisit.add(module);
+
+        while (!toVisit.isEmpty()) {
+            Module next = toVisit.remove();
+            for (Module dependency : dependenciesOf(next)) {
+                if (dependency != module && visited.add(dependency)) {
+                    toVisit.add(dependency);
+                }
+            }
+        }
+
+        return new ArrayList<>(visited);
+    }
+
+    private List<Module> dependenciesOf(Module module) {
+        List<Module> dependencies = new ArrayList<>();
+        for (String dependencyName : module.dependencyNames) {
+            for (Module candidate : modules.values()) {
+                if (dependencyName.equals(candidate.artifactId) || dependencyName.equals(candidate.gradlePath)) {
+                    dependencies.add(candidate);
+                }
+            }
+        }
+        return dependencies;
+    }
+
+    private Module moduleOf(Path sourceRoot) {
+        if (!sourceRoot.startsWith(projectDir)) return looseSources;
+
+        for (Path directory = sourceRoot; directory != null && directory.startsWith(projectDir); directory = directory.getParent()) {
+            if (modules.containsKey(directory)) {
+                return modules.get(directory);
+            }
+        }
+
+        //A src/main/java style root makes its grandparent a module even without a build file
+        Path sourceSet = sourceRoot.getParent();
+        if (sourceRoot.endsWith("java") && sourceSet != null && sourceSet.getParent() != null && sourceSet.getParent().endsWith("src")) {
+            Path moduleDir = sourceSet.getParent().getParent();
+            if (moduleDir != null && moduleDir.startsWith(projectDir)) {
+                return modules.computeIfAbsent(moduleDir, Module::new);
+            }
+        }
+
+        return looseSources;
+    }
+
+    private void findModules() {
+        try {
+            Files.walkFileTree(projectDir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+                    String name = directory.getFileName() == null ? "" : directory.getFileName().toString();
+                    if (!directory.equals(projectDir) && (name.startsWith(".") || NON_MODULE_DIRECTORIES.contains(name))) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    if (BUILD_FILES.stream().anyMatch(buildFile -> Files.isRegularFile(directory.resolve(buildFile)))) {
+                        Module module = new Module(directory);
+                        readBuildFiles(module);
+                        modules.put(directory, module);
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("Unable to look for modules in {}, resolving against every source root", projectDir, e);
+        }
+    }
+
+    private void readBuildFiles(Module module) {
+        module.hasBuildFile = true;
+
+        Path relativePath = projectDir.relativize(module.directory);
+        module.gradlePath = ":" + relativePath.toString().replace(File.separatorChar, ':');
+
+        Path pom = module.directory.resolve("pom.xml");
+        if (Files.isRegularFile(pom)) {
+            try {
+                Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(pom.toFile());
+                Element project = document.getDocumentElement();
+
+                module.artifactId = childText(project, "artifactId").orElse(null);
+
+                for (Element dependencies : children(project, "dependencies")) {
+                    for (Element dependency : children(dependencies, "dependency")) {
+                        childText(dependency, "artifactId").ifPresent(module.dependencyNames::add);
+                    }
+                }
+            } catch (IOException | SAXException | ParserConfigurationException e) {
+                logger.warn("Unable to read {}, resolving its sources against every source root", pom);
+                module.hasBuildFile = false;
+            }
+        }
+
+        for (String buildFile : ImmutableList.of("build.gradle", "build.gradle.kts")) {
+            Path gradleBuild = module.directory.resolve(buildFile);
+            if (!Files.isRegularFile(gradleBuild)) continue;
+
+            try {
+                Matcher matcher = GRADLE_PROJECT_DEPENDENCY.matcher(new String(Files.readAllBytes(gradleBuild), StandardCharsets.UTF_8));
+                while (matcher.find()) {
+                    String dependencyPath = matcher.group(1);
+                    module.dependencyNames.add(dependencyPath.startsWith(":") ? dependencyPath : ":" + dependencyPath);
+                }
+            } catch (IOException e) {
+                logger.warn("Unable to read {}, resolving its sources against every source root", gradleBuild);
+                module.hasBuildFile = false;
+            }
+        }
+    }
+
+    private static List<Element> children(Element parent, String name) {
+        List<Element> children = new ArrayList<>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node.getNodeType() == Node.ELEMENT_NODE && node.getNodeName().equals(name)) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    private static Optional<String> childText(Element parent, String name) {
+        return children(parent, name).stream().findFirst().map(element -> element.getTextContent().trim());
+    }
+
+    private static class Module {
+        private final Path directory;
+        private final Set<Path> sourceRoots = new LinkedHashSet<>();
+        private final Set<String> dependencyNames = new LinkedHashSet<>();
+        private boolean hasBuildFile;
+        private String artifactId;
+        private String gradlePath;
+
+        Module(Path directory) {
+            this.directory = directory;
+        }
+
+        boolean dependenciesKnown() {
+            return hasBuildFile;
+        }
+
+        //The roots that were scanned plus the standard ones, so types in files that were filtered out can still be resolved
+        Set<Path> allSourceRoots() {
+            Set<Path> roots = new LinkedHashSet<>();
+            if (directory != null) {
+                for (String standardRoot : STANDARD_SOURCE_ROOTS) {
+                    Path root = directory.resolve(standardRoot);
+                    if (Files.isDirectory(root)) roots.add(root);
+                }
+            }
+            roots.addAll(sourceRoots);
+            return roots;
+        }
+
+        //Other modules can only see a module's production code, not its tests
+        Set<Path> mainSourceRoots() {
+            Set<Path> roots = new LinkedHashSet<>();
+            for (Path root : allSourceRoots()) {
+                if (directory == null || !root.startsWith(directory.resolve("src/test"))) {
+                    roots.add(root);
+                }
+            }
+            return roots;
+        }
+    }
+
+    /**
+     * Tries a fixed list of solvers in order.  Unlike a CombinedTypeSolver it doesn't take over as the parent of the solvers it
+     * is given, which lets the solver for one source root take part in the chains of several modules.
+     */
+    private static class ModuleTypeSolver implements TypeSolver {
+        private final List<TypeSolver> elements = new ArrayList<>();
+        private TypeSolver parent;
+
+        void add(TypeSolver typeSolver) {
+            elements.add(typeSolver);
+        }
+
+        @Override
+        public TypeSolver getParent() {
+            return parent;
+        }
+
+        @Override
+        public void setParent(TypeSolver parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+            for (TypeSolver typeSolver : elements) {
+                SymbolReference<ResolvedReferenceTypeDeclaration> reference = typeSolver.tryToSolveType(name);
+                if (reference.isSolved()) {
+                    return reference;
+                }
+            }
+            return SymbolReference.unsolved(ResolvedReferenceTypeDeclaration.class);
+        }
+    }
+}
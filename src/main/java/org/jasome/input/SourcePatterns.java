@@ -0,0 +1,112 @@
+package org.jasome.input;
+
+import com.google.common.collect.ImmutableList;
+
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Which source files to scan, by their paths relative to what's being scanned.  Patterns are globs unless they start with
+ * {@code regex:} (an explicit {@code glob:} prefix works too).  Like in a .gitignore, a glob without a {@code /} is matched
+ * against the name of each file and directory, so {@code build} excludes every directory called build and
+ * {@code *Test.java} every file ending in Test.java; other globs, and regular expressions, are matched against the whole
+ * relative path with {@code /} between directories.
+ *
+ * A directory that matches an exclude pattern is skipped along with everything in it, so scanners that walk a directory tree
+ * never have to look inside it.  If there are include patterns, a file has to match at least one of them as well.
+ */
+public class SourcePatterns {
+    public static final SourcePatterns NONE = new SourcePatterns(Collections.emptyList(), Collections.emptyList());
+
+    /**
+     * What {@code --excludetests} leaves out: test classes by their usual suffixes, and test and example directories.
+     */
+    public static final List<String> TESTS = ImmutableList.of(
+            "*Test.java", "*Spec.java", "*Tests.java", "*Specs.java", "*Suite.java", "*TestCase.java",
+            "test", "tests", "examples", "example", "samples", "sample"
+    );
+
+    private final List<Matcher> includes;
+    private final List<Matcher> excludes;
+
+    /**
+     * @throws IllegalArgumentException if one of the patterns isn't a valid glob or regular expression
+     */
+    public SourcePatterns(List<String> includes, List<String> excludes) {
+        this.includes = compile(includes);
+        this.excludes = compile(excludes);
+    }
+
+    /**
+     * @param relativeDirectory a directory inside the scanned one, relative to it
+     * @return true if nothing in the directory should be scanned
+     */
+    public boolean excludesDirectory(Path relativeDirectory) {
+        return matchesAny(excludes, relativeDirectory);
+    }
+
+    /**
+     * Checks a file whose directories are already known not to be excluded, like the files met while walking a tree that skips
+     * excluded directories.
+     *
+     * @param relativeFile a file inside the scanned directory, relative to it
+     */
+    public boolean includesFile(Path relativeFile) {
+        return !matchesAny(excludes, relativeFile) && (includes.isEmpty() || matchesAny(includes, relativeFile));
+    }
+
+    /**
+     * Checks a file and every directory it's in, for scanners that can't skip directories, like the ones reading archives.
+     *
+     * @param relativeFile a file inside the scanned directory, relative to it
+     */
+    public boolean accepts(Path relativeFile) {
+        for (Path directory = relativeFile.getParent(); directory != null; directory = directory.getParent()) {
+            if (excludesDirectory(directory)) {
+                return false;
+            }
+        }
+        return includesFile(relativeFile);
+    }
+
+    private static boolean matchesAny(List<Matcher> matchers, Path relativePath) {
+        for (Matcher matcher : matchers) {
+            if (matcher.matches(relativePath)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<Matcher> compile(List<String> patterns) {
+        List<Matcher> matchers = new ArrayList<>();
+        for (String pattern : patterns) {
+            if (pattern.startsWith("regex:")) {
+                matchers.add(new Matcher(FileSystems.getDefault().getPathMatcher(pattern), false));
+            } else {
+                String glob = pattern.startsWith("glob:") ? pattern.substring("glob:".length()) : pattern;
+                matchers.add(new Matcher(FileSystems.getDefault().getPathMatcher("glob:" + glob), !glob.contains("/")));
+            }
+        }
+        return ImmutableList.copyOf(matchers);
+    }
+
+    private static class Matcher {
+        private final PathMatcher pathMatcher;
+        private final boolean matchesName;
+
+        Matcher(PathMatcher pathMatcher, boolean matchesName) {
+            this.pathMatcher = pathMatcher;
+            this.matchesName = matchesName;
+        }
+
+        boolean matches(Path relativePath) {
+            Path matched = matchesName ? relativePath.getFileName() : relativePath;
+            return matched != null && pathMatcher.matches(matched);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package org.jasome.input;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Lazily opens the contents of a single source file.  Scanners hand these to {@link Scanner#doScan} instead of the source
+ * code itself so that a file is only read when a parser is ready for it, and can be released as soon as it has been parsed.
+ */
+@FunctionalInterface
+public interface SourceReader {
+    Reader open() throws IOException;
+}
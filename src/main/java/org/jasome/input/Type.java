@@ -9,7 +9,8 @@ import java.util.Optional;
 import java.util.Set;
 
 public class Type extends Code {
-    private final ClassOrInterfaceDeclaration declaration;
+    private ClassOrInterfaceDeclaration declaration;
+    private String missingSource;
     private Map<String, Method> methodLookup;
 
     public Type(ClassOrInterfaceDeclaration declaration) {
@@ -18,10 +19,30 @@ public class Type extends Code {
         this.methodLookup = new HashMap<>();
     }
 
+    //Stands in for a type whose source was parsed at another time, such as one from another shard
+    Type(String name) {
+        super(name);
+        this.declaration = null;
+        this.missingSource = "isn't loaded";
+        this.methodLookup = new HashMap<>();
+    }
+
     public ClassOrInterfaceDeclaration getSource() {
+        if (declaration == null) {
+            throw new IllegalStateException("The source of " + getName() + " " + missingSource);
+        }
         return declaration;
     }
 
+    //Leaves the name, attributes, metrics and method signatures, which is all the output needs
+    void releaseSource() {
+        declaration = null;
+        missingSource = "was released after its metrics were calculated";
+        for (Method method : getMethods()) {
+            method.releaseSource();
+        }
+    }
+
     private static String getClassNameFromDeclaration(ClassOrInterfaceDeclaration classDefinition) {
         String className = classDefinition.getNameAsString();
 
@@ -41,7 +62,7 @@ public class Type extends Code {
     }
 
     public void addMethod(Method method) {
-        methodLookup.put(method.getSource().getSignature().asString(), method);
+        methodLookup.put(method.getSignature(), method);
         addChild(method);
     }
 
@@ -1,5 +1,8 @@
 package org.jasome.metrics;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
 import org.jasome.input.Code;
 import org.jasome.util.ProjectMetadata;
 
@@ -9,4 +12,20 @@ public interface Calculator<T extends Code> {
 
     Set<Metric> calculate(T t);
 
+    /**
+     * The names of the metrics this calculator returns.  The processor runs a calculator before every calculator that
+     * consumes one of these, and when two calculators produce the same metric, the one registered last wins.
+     */
+    default Set<String> getProducedMetrics() {
+        return ImmutableSet.of();
+    }
+
+    /**
+     * The metrics this calculator reads off the code it's given or off the code inside it, keyed by the kind of code they're
+     * on, for example {@code Method.class -> "VG"} for a type calculator that adds up the complexity of its methods.  Only
+     * the same kind of code or the kinds inside it can be read, since enclosing code is calculated afterwards.
+     */
+    default SetMultimap<Class<? extends Code>, String> getConsumedMetrics() {
+        return ImmutableSetMultimap.of();
+    }
 }
@@ -11,6 +11,11 @@ import java.util.Set;
 import java.util.Stack;
 
 public class ClassInheritanceCalculator implements Calculator<Type> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("NOPa", "NOCh", "NOD", "NOA");
+    }
+
     @Override
     public Set<Metric> calculate(Type type) {
         Graph<Type> inheritanceGraph = type.getParentPackage().getParentProject().getMetadata().getInheritanceGraph();
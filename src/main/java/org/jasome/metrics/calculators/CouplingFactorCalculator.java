@@ -10,6 +10,11 @@ import org.jasome.metrics.value.NumericValue;
 import java.util.Set;
 
 public class CouplingFactorCalculator implements Calculator<Type> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("NODa", "NODe", "CF");
+    }
+
     @Override
     public Set<Metric> calculate(Type type) {
         Graph<Type> unchecked = type.getParentPackage().getParentProject().getMetadata().getClientGraph();
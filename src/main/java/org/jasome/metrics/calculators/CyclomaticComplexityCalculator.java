@@ -17,6 +17,11 @@ import static com.github.javaparser.ast.expr.BinaryExpr.Operator.AND;
 import static com.github.javaparser.ast.expr.BinaryExpr.Operator.OR;
 
 public class CyclomaticComplexityCalculator implements Calculator<Method> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("VG");
+    }
+
     @Override
     public Set<Metric> calculate(Method method) {
         List<IfStmt> ifStmts = method.getSource().getNodesByType(IfStmt.class);
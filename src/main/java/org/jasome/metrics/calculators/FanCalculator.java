@@ -1,9 +1,11 @@
 package org.jasome.metrics.calculators;
 
-import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.type.VoidType;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.graph.Network;
+import org.apache.commons.lang3.tuple.Triple;
 import org.jasome.input.Method;
 import org.jasome.metrics.Calculator;
 import org.jasome.metrics.Metric;
@@ -14,17 +16,22 @@ import java.util.Set;
 
 public class FanCalculator implements Calculator<Method> {
 
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("Fout", "Fin", "Si", "IOVars", "Di", "Ci");
+    }
+
     @Override
     public synchronized Set<Metric> calculate(Method method) {
 
-        Network<Method, Distinct<Expression>> methodCalls = method.getParentType().getParentPackage().getParentProject().getMetadata().getCallNetwork();
+        Network<Method, Distinct<Triple<String, String, String>>> methodCalls = method.getParentType().getParentPackage().getParentProject().getMetadata().getCallNetwork();
 
         Set<Method> methodsCalled = methodCalls.successors(method);
 
         int fanOut = 0;
 
         for (Method methodCalled : methodsCalled) {
-            Set<Distinct<Expression>> calls = methodCalls.edgesConnecting(method, methodCalled);
+            Set<Distinct<Triple<String, String, String>>> calls = methodCalls.edgesConnecting(method, methodCalled);
             fanOut += calls.size();
         }
 
@@ -33,12 +40,14 @@ public class FanCalculator implements Calculator<Method> {
         int fanIn = 0;
 
         for (Method methodCalling : methodsCalling) {
-            Set<Distinct<Expression>> calls = methodCalls.edgesConnecting(methodCalling, method);
+            Set<Distinct<Triple<String, String, String>>> calls = methodCalls.edgesConnecting(methodCalling, method);
             fanIn += calls.size();
         }
 
-        int returns = method.getSource().getType() instanceof VoidType ? 0 : 1;
-        int parameters = method.getSource().getParameters().size();
+        //Constructors count as returning what they construct
+        CallableDeclaration<?> declaration = method.getSource();
+        int returns = declaration instanceof MethodDeclaration && ((MethodDeclaration) declaration).getType() instanceof VoidType ? 0 : 1;
+        int parameters = declaration.getParameters().size();
         int iovars = parameters + returns;
 
         NumericValue dataComplexity = NumericValue.of(iovars).divide(NumericValue.ONE.plus(NumericValue.of(fanOut)));
@@ -1,7 +1,7 @@
 package org.jasome.metrics.calculators;
 
 import com.github.javaparser.ast.body.FieldDeclaration;
-import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
 import com.github.javaparser.ast.body.VariableDeclarator;
 import com.google.common.collect.ImmutableSet;
 import org.apache.commons.lang3.tuple.Pair;
@@ -18,6 +18,11 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 public class LackOfCohesionMethodsCalculator implements Calculator<Type> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("LCOM*");
+    }
+
     @Override
     public Set<Metric> calculate(Type type) {
         List<FieldDeclaration> fieldDeclarations = type.getSource().getFields();
@@ -25,13 +30,13 @@ public class LackOfCohesionMethodsCalculator implements Calculator<Type> {
 
         fieldDeclarations.stream().map(FieldDeclaration::getVariables).forEach(variables::addAll);
 
-        List<MethodDeclaration> methods = type.getMethods().stream().map(Method::getSource).collect(Collectors.toList());
+        List<CallableDeclaration<?>> methods = type.getMethods().stream().map(Method::getSource).collect(Collectors.toList());
 
         NumericValue total = NumericValue.ZERO;
 
         for (VariableDeclarator variable : variables) {
             int numberOfMethodsAccessingVariable = 0;
-            for (MethodDeclaration method : methods) {
+            for (CallableDeclaration<?> method : methods) {
                 if (CalculationUtils.isFieldAccessedWithinMethod.getUnchecked(Pair.of(method, variable))) {
                     numberOfMethodsAccessingVariable++;
                 }
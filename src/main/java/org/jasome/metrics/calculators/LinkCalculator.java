@@ -10,6 +10,11 @@ import java.util.Set;
 
 public class LinkCalculator implements Calculator<Type> {
 
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("NOL");
+    }
+
     @Override
     public Set<Metric> calculate(Type type) {
 
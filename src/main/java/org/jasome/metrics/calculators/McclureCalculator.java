@@ -1,6 +1,6 @@
 package org.jasome.metrics.calculators;
 
-import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
 import com.github.javaparser.ast.expr.BinaryExpr;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.NameExpr;
@@ -17,9 +17,14 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class McclureCalculator implements Calculator<Method> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("NCOMP", "NVAR", "MCLC");
+    }
+
     @Override
     public Set<Metric> calculate(Method method) {
-        MethodDeclaration methodDeclaration = method.getSource();
+        CallableDeclaration<?> methodDeclaration = method.getSource();
 
         List<BinaryExpr> comparisons = methodDeclaration.findAll(BinaryExpr.class);
 
@@ -1,11 +1,6 @@
 package org.jasome.metrics.calculators;
 
 import com.github.javaparser.ast.Modifier;
-import com.github.javaparser.ast.NodeList;
-import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
-import com.github.javaparser.ast.body.FieldDeclaration;
-import com.github.javaparser.ast.body.VariableDeclarator;
-import com.github.javaparser.ast.expr.SimpleName;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import com.google.common.graph.Graph;
@@ -14,18 +9,25 @@ import org.jasome.input.Type;
 import org.jasome.metrics.Calculator;
 import org.jasome.metrics.Metric;
 import org.jasome.metrics.value.NumericValue;
+import org.jasome.util.ProjectMetadata;
+import org.jasome.util.TypeSummary.AttributeSummary;
+import org.jasome.util.TypeSummary.MethodSummary;
 
 import java.util.*;
 import java.util.stream.Collectors;
 
 public class MethodAndAttributeInheritanceCalculator implements Calculator<Type> {
 
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("Mit", "Mi", "Md", "Mo", "Ma", "PMi", "PMd", "HMi", "HMd", "NMIR", "MIF", "PMR", "MHF", "Ait", "Ai", "Ad", "Ao", "Aa", "Av", "AIF", "AHF");
+    }
+
 
     @Override
     public Set<Metric> calculate(Type type) {
-        Graph<Type> inheritanceGraph = type.getParentPackage().getParentProject().getMetadata().getInheritanceGraph();
-
-        ClassOrInterfaceDeclaration declaration = type.getSource();
+        ProjectMetadata metadata = type.getParentPackage().getParentProject().getMetadata();
+        Graph<Type> inheritanceGraph = metadata.getInheritanceGraph();
 
         Set<Type> ancestors = new HashSet<Type>();
 
@@ -48,10 +50,10 @@ public class MethodAndAttributeInheritanceCalculator implements Calculator<Type>
                     //We only want to count a method as inherited if it's a parent method that has an implementation
                     //In other words we want to exclude anything on an interface unless it's got a default impl
                     //And we want to exclude any abstract methods
-                    boolean isDefinedOnAbstractClass = method.getParentType().getSource().isAbstract();
-                    boolean isAbstract = isDefinedOnAbstractClass && method.getSource().isAbstract();
-                    boolean isDefinedOnInterface = method.getParentType().getSource().isInterface();
-                    boolean isDefaultImpl = isDefinedOnInterface && method.getSource().isDefault();
+                    boolean isDefinedOnAbstractClass = metadata.getSummary(method.getParentType()).isAbstract();
+                    boolean isAbstract = isDefinedOnAbstractClass && summaryOf(metadata, method).isAbstract();
+                    boolean isDefinedOnInterface = metadata.getSummary(method.getParentType()).isInterface();
+                    boolean isDefaultImpl = isDefinedOnInterface && summaryOf(metadata, method).isDefault();
 
                     if(isDefinedOnInterface) {
                         return isDefaultImpl;
@@ -65,10 +67,10 @@ public class MethodAndAttributeInheritanceCalculator implements Calculator<Type>
 
         Set<Method> definedMethods = type.getMethods().stream()
                 .filter(method -> {
-                    boolean isDefinedOnAbstractClass = method.getParentType().getSource().isAbstract();
-                    boolean isAbstract = isDefinedOnAbstractClass && method.getSource().isAbstract();
-                    boolean isDefinedOnInterface = method.getParentType().getSource().isInterface();
-                    boolean isDefaultImpl = isDefinedOnInterface && method.getSource().isDefault();
+                    boolean isDefinedOnAbstractClass = metadata.getSummary(method.getParentType()).isAbstract();
+                    boolean isAbstract = isDefinedOnAbstractClass && summaryOf(metadata, method).isAbstract();
+                    boolean isDefinedOnInterface = metadata.getSummary(method.getParentType()).isInterface();
+                    boolean isDefaultImpl = isDefinedOnInterface && summaryOf(metadata, method).isDefault();
 
                     if(isAbstract) {
                         return false;
@@ -81,35 +83,35 @@ public class MethodAndAttributeInheritanceCalculator implements Calculator<Type>
                 .collect(Collectors.toSet());
 
         Set<String> inheritedMethodSignatures = inheritableMethods.stream()
-                .map(im->im.getSource().getSignature().asString())
+                .map(im -> summaryOf(metadata, im).getSignature())
                 .collect(Collectors.toSet());
 
         Set<Method> overriddenMethods = definedMethods.stream()
-                .filter(dm -> inheritedMethodSignatures.contains(dm.getSource().getSignature().asString()))
+                .filter(dm -> inheritedMethodSignatures.contains(summaryOf(metadata, dm).getSignature()))
                 .collect(Collectors.toSet());
 
         Set<String> overriddenMethodSignatures = overriddenMethods.stream()
-                .map(im->im.getSource().getSignature().asString())
+                .map(im -> summaryOf(metadata, im).getSignature())
                 .collect(Collectors.toSet());
 
         Set<Method> inheritedAndNotOverriddenMethods = inheritableMethods.stream()
-                .filter(im -> !overriddenMethodSignatures.contains(im.getSource().getSignature().asString()))
-                .filter(im -> !im.getSource().isPrivate())
+                .filter(im -> !overriddenMethodSignatures.contains(summaryOf(metadata, im).getSignature()))
+                .filter(im -> !summaryOf(metadata, im).isPrivate())
                 .collect(Collectors.toSet());
 
         Set<Method> allMethods = Sets.union(definedMethods, inheritedAndNotOverriddenMethods);
 
         Set<Method> publicDefinedMethods = definedMethods.stream()
-                .filter(dm->dm.getSource().isPublic())
+                .filter(dm -> summaryOf(metadata, dm).isPublic())
                 .collect(Collectors.toSet());
 
         Set<Method> publicInheritedNotOverriddenMethods = inheritedAndNotOverriddenMethods.stream()
-                .filter(dm->dm.getSource().isPublic())
+                .filter(dm -> summaryOf(metadata, dm).isPublic())
                 .collect(Collectors.toSet());
 
         Set<Method> hiddenInheritedNotOverridden = Sets.difference(inheritedAndNotOverriddenMethods, publicInheritedNotOverriddenMethods)
                 .stream()
-                .filter(method -> method.getSource().isDefault() || method.getSource().isProtected()) //Private methods aren't 'inherited' because they can't be called
+                .filter(method -> summaryOf(metadata, method).isDefault() || summaryOf(metadata, method).isProtected()) //Private methods aren't 'inherited' because they can't be called
                 .collect(Collectors.toSet());
         
         Set<Method> hiddenDefined = Sets.difference(definedMethods, publicDefinedMethods);
@@ -141,11 +143,11 @@ public class MethodAndAttributeInheritanceCalculator implements Calculator<Type>
 
 
         Set<Attribute> inheritableAttributes = ancestors.stream()
-                .flatMap(p->getFlattenedAttributes(p).stream())
+                .flatMap(p->getFlattenedAttributes(metadata, p).stream())
                 .filter(attribute -> !attribute.isPrivate())
                 .collect(Collectors.toSet());
 
-        Set<Attribute> definedAttributes = getFlattenedAttributes(type);
+        Set<Attribute> definedAttributes = getFlattenedAttributes(metadata, type);
 
         Set<Attribute> inheritedNotOverriddenAttributes = Sets.difference(inheritableAttributes,definedAttributes);
         Set<Attribute> overriddenAttributes = Sets.intersection(inheritableAttributes, definedAttributes);
@@ -183,17 +185,14 @@ public class MethodAndAttributeInheritanceCalculator implements Calculator<Type>
         return metricBuilder.build();
     }
 
-    private Set<Attribute> getFlattenedAttributes(Type type) {
+    private MethodSummary summaryOf(ProjectMetadata metadata, Method method) {
+        return metadata.getSummary(method.getParentType()).getMethod(method);
+    }
+
+    private Set<Attribute> getFlattenedAttributes(ProjectMetadata metadata, Type type) {
         Set<Attribute> attributes = new HashSet<>();
-        List<FieldDeclaration> declarations = type.getSource().getFields();
-        for(FieldDeclaration declaration: declarations) {
-            EnumSet<Modifier> modifiers = declaration.getModifiers();
-            NodeList<VariableDeclarator> variables = declaration.getVariables();
-            for(VariableDeclarator variableDeclarator: variables) {
-                com.github.javaparser.ast.type.Type variableType = variableDeclarator.getType();
-                SimpleName name = variableDeclarator.getName();
-                attributes.add(new Attribute(type, modifiers, variableType, name));
-            }
+        for (AttributeSummary attribute : metadata.getSummary(type).getAttributes()) {
+            attributes.add(new Attribute(type, attribute.getModifiers(), attribute.getType(), attribute.getName()));
         }
 
         return ImmutableSet.copyOf(attributes);
@@ -203,10 +202,10 @@ public class MethodAndAttributeInheritanceCalculator implements Calculator<Type>
 
         private Type parentType;
         private EnumSet<Modifier> modifiers;
-        private com.github.javaparser.ast.type.Type variableType;
-        private SimpleName name;
+        private String variableType;
+        private String name;
 
-        public Attribute(Type parentType, EnumSet<Modifier> modifiers, com.github.javaparser.ast.type.Type variableType, SimpleName name) {
+        public Attribute(Type parentType, EnumSet<Modifier> modifiers, String variableType, String name) {
             this.parentType = parentType;
             this.modifiers = modifiers;
             this.variableType = variableType;
@@ -234,13 +233,13 @@ public class MethodAndAttributeInheritanceCalculator implements Calculator<Type>
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             Attribute attribute = (Attribute) o;
-            return Objects.equals(variableType.asString(), attribute.variableType.asString()) &&
-                    Objects.equals(name.getIdentifier(), attribute.name.getIdentifier());
+            return Objects.equals(variableType, attribute.variableType) &&
+                    Objects.equals(name, attribute.name);
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(variableType.asString(), name.getIdentifier());
+            return Objects.hash(variableType, name);
         }
 
         public boolean isPublicish() {
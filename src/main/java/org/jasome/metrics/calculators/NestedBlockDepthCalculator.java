@@ -2,7 +2,7 @@ package org.jasome.metrics.calculators;
 
 import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
-import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
 import com.github.javaparser.ast.expr.LambdaExpr;
 import com.github.javaparser.ast.stmt.*;
 import com.google.common.collect.ImmutableSet;
@@ -16,6 +16,11 @@ import java.util.OptionalInt;
 import java.util.Set;
 
 public class NestedBlockDepthCalculator implements Calculator<Method> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("NBD");
+    }
+
     @Override
     public Set<Metric> calculate(Method method) {
         List<BlockStmt> blocks = method.getSource().getNodesByType(BlockStmt.class);
@@ -25,7 +30,7 @@ public class NestedBlockDepthCalculator implements Calculator<Method> {
         allNestedBlocks.addAll(blocks);
         allNestedBlocks.addAll(switchEntries);
 
-        OptionalInt maxDepth = allNestedBlocks.parallelStream().mapToInt(block -> {
+        OptionalInt maxDepth = allNestedBlocks.stream().mapToInt(block -> {
             //figure out this block's depth and return it
             Node theNode = block;
             int i = 1;
@@ -40,7 +45,7 @@ public class NestedBlockDepthCalculator implements Calculator<Method> {
                             || theNode instanceof DoStmt
                             || theNode instanceof LambdaExpr
                             || theNode instanceof ClassOrInterfaceDeclaration
-                            || theNode instanceof MethodDeclaration
+                            || theNode instanceof CallableDeclaration
                             || theNode instanceof SynchronizedStmt
                     ) {
                     //Javaparser has an interesting relationship that shows up here.. basically if you have something like an
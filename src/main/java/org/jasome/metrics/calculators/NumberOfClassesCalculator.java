@@ -15,6 +15,11 @@ import java.util.Set;
  */
 public class NumberOfClassesCalculator implements Calculator<Package> {
 
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("NOC");
+    }
+
     @Override
     public Set<Metric> calculate(Package aPackage) {
         return ImmutableSet.of(Metric.of("NOC", "Number of Classes", aPackage.getTypes().size()));
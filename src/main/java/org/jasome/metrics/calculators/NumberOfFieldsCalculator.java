@@ -26,6 +26,11 @@ import java.util.Set;
  */
 public class NumberOfFieldsCalculator implements Calculator<Type> {
 
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("NF", "NSF", "NPF", "NM", "NSM", "NPM");
+    }
+
     @Override
     public Set<Metric> calculate(Type type) {
         ClassOrInterfaceDeclaration declaration = type.getSource();
@@ -14,6 +14,11 @@ import java.util.Set;
  * @since 0.3
  */
 public class NumberOfParametersCalculator implements Calculator<Method> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("NOP");
+    }
+
     @Override
     public Set<Metric> calculate(Method method) {
         return ImmutableSet.of(Metric.of("NOP", "Number of Parameters", method.getSource().getParameters().size()));
@@ -1,6 +1,9 @@
 package org.jasome.metrics.calculators;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import org.jasome.input.Code;
 import org.jasome.input.Method;
 import org.jasome.input.Package;
 import org.jasome.input.Type;
@@ -14,6 +17,16 @@ import java.util.Set;
 import java.util.stream.Stream;
 
 public class PackageAggregatorCalculator implements Calculator<Package> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("PkgTCi", "PkgRCi", "CCRC");
+    }
+
+    @Override
+    public SetMultimap<Class<? extends Code>, String> getConsumedMetrics() {
+        return ImmutableSetMultimap.of(Method.class, "Ci", Type.class, "NOL");
+    }
+
     @Override
     public Set<Metric> calculate(Package aPackage) {
 
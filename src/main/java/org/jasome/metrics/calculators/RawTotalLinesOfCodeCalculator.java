@@ -21,6 +21,11 @@ import java.util.Set;
  */
 public class RawTotalLinesOfCodeCalculator implements Calculator<Type> {
 
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("RTLOC");
+    }
+
     @Override
     public Set<Metric> calculate(Type type) {
 
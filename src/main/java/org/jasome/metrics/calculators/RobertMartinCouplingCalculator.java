@@ -1,13 +1,12 @@
 package org.jasome.metrics.calculators;
 
-import com.github.javaparser.ast.expr.SimpleName;
-import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.google.common.collect.ImmutableSet;
 import org.jasome.input.Package;
 import org.jasome.input.Type;
 import org.jasome.metrics.Calculator;
 import org.jasome.metrics.Metric;
 import org.jasome.metrics.value.NumericValue;
+import org.jasome.util.ProjectMetadata;
 
 import java.util.List;
 import java.util.Map;
@@ -16,70 +15,53 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 public class RobertMartinCouplingCalculator implements Calculator<Package> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("Ca", "Ce", "I", "NOI", "A", "DMS");
+    }
+
     @Override
     public Set<Metric> calculate(Package aPackage) {
+        ProjectMetadata metadata = aPackage.getParentProject().getMetadata();
+
         Map<String, List<Type>> allClassesOutsideOfPackage = aPackage.getParentProject().getPackages()
-                .parallelStream()
+                .stream()
                 .filter(p -> p != aPackage)
                 .map(Package::getTypes)
                 .flatMap(Set::stream)
-                .filter(type -> type.getSource().isPublic()) //only public classes count, nothing else is visible outside of the package)
+                .filter(type -> metadata.getSummary(type).isPublic()) //only public classes count, nothing else is visible outside of the package)
                 .collect(Collectors.groupingBy(Type::getName));
 
         Map<String, Type> allClassesInsideOfPackage = aPackage.getTypes()
-                .parallelStream()
-                .filter(type -> type.getSource().isPublic())
+                .stream()
+                .filter(type -> metadata.getSummary(type).isPublic())
                 .collect(Collectors.toMap(Type::getName, t -> t));
 
         NumericValue afferentCoupling = NumericValue.ZERO; //The number of classes outside a package that depend on classes inside the package.
         NumericValue efferentCoupling = NumericValue.ZERO; //The number of classes inside a package that depend on classes outside the package.
 
         for (Type typeInsidePackage : aPackage.getTypes()) {
-            List<ClassOrInterfaceType> referencedTypes = typeInsidePackage.getSource().getNodesByType(ClassOrInterfaceType.class);
-
-            long numberOfTypesReferencedThatAreInsideAnotherPackage = referencedTypes
-                    .parallelStream()
-                    .map(typ -> typ.getName().getIdentifier())
-                    .filter(typeName ->
-                            allClassesOutsideOfPackage.containsKey(typeName) && !allClassesInsideOfPackage.containsKey(typeName)
-                    ).count();
-
-            //TODO: this should be more restrictive, we only need these inside of certain kinds of expressions
-            List<SimpleName> referencedNames = typeInsidePackage.getSource().getNodesByType(SimpleName.class);
-
-            long numberOfSimpleNamesReferencedThatCorrespondToTypesInsideAnotherPackage = referencedNames
-                    .parallelStream()
-                    .map(SimpleName::getIdentifier)
+            //Every type name used in the type is one of these identifiers, whether it's used as a type or to call something static
+            long numberOfNamesReferencedThatAreInsideAnotherPackage = metadata.getSummary(typeInsidePackage).getMentionedNames()
+                    .stream()
                     .filter(typeName ->
                             allClassesOutsideOfPackage.containsKey(typeName) && !allClassesInsideOfPackage.containsKey(typeName)
                     ).count();
 
-            if (numberOfTypesReferencedThatAreInsideAnotherPackage + numberOfSimpleNamesReferencedThatCorrespondToTypesInsideAnotherPackage > 0) {
+            if (numberOfNamesReferencedThatAreInsideAnotherPackage > 0) {
                 efferentCoupling = efferentCoupling.plus(NumericValue.ONE);
             }
         }
 
         for (List<Type> typesOutsidePackage : allClassesOutsideOfPackage.values()) {
             for (Type typeOutsidePackage : typesOutsidePackage) {
-                List<ClassOrInterfaceType> referencedTypes = typeOutsidePackage.getSource().getNodesByType(ClassOrInterfaceType.class);
-
-                long numberOfTypesReferencedThatAreInsideThisPackage = referencedTypes
-                        .parallelStream()
-                        .map(typ -> typ.getName().getIdentifier())
-                        .filter(typeName ->
-                                allClassesInsideOfPackage.containsKey(typeName) && !allClassesOutsideOfPackage.containsKey(typeName)
-                        ).count();
-
-                List<SimpleName> referencedNames = typeOutsidePackage.getSource().getNodesByType(SimpleName.class);
-
-                long numberOfSimpleNamesReferencedThatCorrespondToTypesInsideThisPackage = referencedNames
-                        .parallelStream()
-                        .map(SimpleName::getIdentifier)
+                long numberOfNamesReferencedThatAreInsideThisPackage = metadata.getSummary(typeOutsidePackage).getMentionedNames()
+                        .stream()
                         .filter(typeName ->
                                 allClassesInsideOfPackage.containsKey(typeName) && !allClassesOutsideOfPackage.containsKey(typeName)
                         ).count();
 
-                if (numberOfTypesReferencedThatAreInsideThisPackage + numberOfSimpleNamesReferencedThatCorrespondToTypesInsideThisPackage > 0) {
+                if (numberOfNamesReferencedThatAreInsideThisPackage > 0) {
                     afferentCoupling = afferentCoupling.plus(NumericValue.ONE);
                 }
             }
@@ -99,8 +81,8 @@ public class RobertMartinCouplingCalculator implements Calculator<Package> {
 
         NumericValue numberOfAbstractClassesAndInterfacesInPackage = NumericValue.of(
                 aPackage.getTypes()
-                        .parallelStream()
-                        .filter(type -> type.getSource().isInterface() || type.getSource().isAbstract())
+                        .stream()
+                        .filter(type -> metadata.getSummary(type).isInterface() || metadata.getSummary(type).isAbstract())
                         .count()
         );
 
@@ -1,10 +1,8 @@
 package org.jasome.metrics.calculators;
 
-import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.graph.Graph;
 import org.apache.commons.lang3.tuple.Pair;
-import org.apache.commons.lang3.tuple.Triple;
 import org.jasome.input.Method;
 import org.jasome.input.Type;
 import org.jasome.metrics.Calculator;
@@ -12,13 +10,17 @@ import org.jasome.metrics.Metric;
 import org.jasome.metrics.value.NumericValue;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * http://support.objecteering.com/objecteering6.1/help/us/metrics/metrics_in_detail/specialization_index.htm
  */
 public class SpecializationIndexCalculator implements Calculator<Type> {
 
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("DIT", "NORM", "NM", "NMI", "NMA", "SIX");
+    }
+
 
     @Override
     public Set<Metric> calculate(Type type) {
@@ -53,7 +55,7 @@ public class SpecializationIndexCalculator implements Calculator<Type> {
 
     private Pair<Integer, Integer> calculateOverloadedAndInheritedOperations(Type type) {
 
-        Set<Triple<com.github.javaparser.ast.type.Type, String, List<com.github.javaparser.ast.type.Type>>> parentMethods = new HashSet<>();
+        Set<String> parentMethods = new HashSet<>();
 
         Stack<Type> typesToCheck = new Stack<>();
 
@@ -63,8 +65,7 @@ public class SpecializationIndexCalculator implements Calculator<Type> {
             Type typeToCheck = typesToCheck.pop();
 
             for (Method method : typeToCheck.getMethods()) {
-                Triple<com.github.javaparser.ast.type.Type, String, List<com.github.javaparser.ast.type.Type>> methodSignature = getMethodSignatureData(method);
-                parentMethods.add(methodSignature);
+                parentMethods.add(getMethodSignatureData(method));
             }
 
             typesToCheck.addAll(getParentTypes(typeToCheck));
@@ -74,9 +75,7 @@ public class SpecializationIndexCalculator implements Calculator<Type> {
 
         for (Method m : type.getMethods()) {
 
-            Triple<com.github.javaparser.ast.type.Type, String, List<com.github.javaparser.ast.type.Type>> methodSignature = getMethodSignatureData(m);
-
-            if (parentMethods.contains(methodSignature)) {
+            if (parentMethods.contains(getMethodSignatureData(m))) {
                 numberOverridden++;
             }
         }
@@ -84,12 +83,9 @@ public class SpecializationIndexCalculator implements Calculator<Type> {
         return Pair.of(numberOverridden, parentMethods.size() - numberOverridden);
     }
 
-    private Triple<com.github.javaparser.ast.type.Type, String, List<com.github.javaparser.ast.type.Type>> getMethodSignatureData(Method method) {
-        com.github.javaparser.ast.type.Type returnType = method.getSource().getType();
-        String name = method.getSource().getName().getIdentifier();
-        List<com.github.javaparser.ast.type.Type> parameterTypes = method.getSource().getParameters().stream().map(parameter -> parameter.getType()).collect(Collectors.toList());
-
-        return Triple.of(returnType, name, parameterTypes);
+    //The parent types may not have their sources loaded, so this goes by their summaries
+    private String getMethodSignatureData(Method method) {
+        return method.getParentType().getParentPackage().getParentProject().getMetadata().getSummary(method.getParentType()).getMethod(method).getShape();
     }
 
     private Set<Type> getParentTypes(Type type) {
@@ -98,8 +94,6 @@ public class SpecializationIndexCalculator implements Calculator<Type> {
     }
 
     private int calculateInheritanceDepth(Type type) {
-        ClassOrInterfaceDeclaration decl = type.getSource();
-
         Collection<Type> nextLevelTypes = getParentTypes(type);
 
 
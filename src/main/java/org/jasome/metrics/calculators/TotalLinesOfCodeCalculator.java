@@ -10,6 +10,9 @@ import com.github.javaparser.ast.stmt.*;
 import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import com.github.javaparser.ast.type.TypeParameter;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import org.jasome.input.Code;
 import org.jasome.input.Method;
 import org.jasome.input.Package;
 import org.jasome.input.Project;
@@ -92,6 +95,16 @@ public class TotalLinesOfCodeCalculator {
 
     public static class ProjectCalculator implements Calculator<Project> {
 
+        @Override
+        public Set<String> getProducedMetrics() {
+            return ImmutableSet.of("TLOC");
+        }
+
+        @Override
+        public SetMultimap<Class<? extends Code>, String> getConsumedMetrics() {
+            return ImmutableSetMultimap.of(Package.class, "TLOC");
+        }
+
         @Override
         public Set<Metric> calculate(Project aProject) {
             NumericValue total = aProject.getPackages().stream().map(m -> m.getMetric("TLOC").get().getValue()).reduce(NumericValue.ZERO, NumericValue::plus);
@@ -102,6 +115,16 @@ public class TotalLinesOfCodeCalculator {
 
     public static class PackageCalculator implements Calculator<Package> {
 
+        @Override
+        public Set<String> getProducedMetrics() {
+            return ImmutableSet.of("TLOC");
+        }
+
+        @Override
+        public SetMultimap<Class<? extends Code>, String> getConsumedMetrics() {
+            return ImmutableSetMultimap.of(Type.class, "TLOC");
+        }
+
         @Override
         public Set<Metric> calculate(Package aPackage) {
             NumericValue total = aPackage.getTypes().stream().map(m -> m.getMetric("TLOC").get().getValue()).reduce(NumericValue.ZERO, NumericValue::plus);
@@ -112,6 +135,11 @@ public class TotalLinesOfCodeCalculator {
 
     public static class TypeCalculator implements Calculator<Type> {
 
+        @Override
+        public Set<String> getProducedMetrics() {
+            return ImmutableSet.of("TLOC");
+        }
+
         @Override
         public Set<Metric> calculate(Type type) {
             Stack<Node> nodeStack = new Stack<Node>();
@@ -124,6 +152,11 @@ public class TotalLinesOfCodeCalculator {
 
     public static class MethodCalculator implements Calculator<Method> {
 
+        @Override
+        public Set<String> getProducedMetrics() {
+            return ImmutableSet.of("TLOC");
+        }
+
         @Override
         public Set<Metric> calculate(Method method) {
             Stack<Node> nodeStack = new Stack<Node>();
@@ -1,6 +1,9 @@
 package org.jasome.metrics.calculators;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import org.jasome.input.Code;
 import org.jasome.input.Method;
 import org.jasome.input.Type;
 import org.jasome.metrics.Calculator;
@@ -13,6 +16,16 @@ import java.util.Set;
 import java.util.stream.Stream;
 
 public class TypeAggregatorCalculator implements Calculator<Type> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("ClTCi", "ClRCi", "PF");
+    }
+
+    @Override
+    public SetMultimap<Class<? extends Code>, String> getConsumedMetrics() {
+        return ImmutableSetMultimap.of(Method.class, "Ci", Type.class, "NOD", Type.class, "Mo", Type.class, "Md");
+    }
+
     @Override
     public Set<Metric> calculate(Type type) {
 
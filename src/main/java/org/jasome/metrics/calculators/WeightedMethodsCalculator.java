@@ -1,6 +1,10 @@
 package org.jasome.metrics.calculators;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import org.jasome.input.Code;
+import org.jasome.input.Method;
 import org.jasome.input.Type;
 import org.jasome.metrics.Calculator;
 import org.jasome.metrics.Metric;
@@ -9,9 +13,19 @@ import org.jasome.metrics.value.NumericValue;
 import java.util.Set;
 
 public class WeightedMethodsCalculator implements Calculator<Type> {
+    @Override
+    public Set<String> getProducedMetrics() {
+        return ImmutableSet.of("WMC");
+    }
+
+    @Override
+    public SetMultimap<Class<? extends Code>, String> getConsumedMetrics() {
+        return ImmutableSetMultimap.of(Method.class, "VG");
+    }
+
     @Override
     public Set<Metric> calculate(Type method) {
-        NumericValue total = method.getMethods().parallelStream().map(m -> m.getMetric("VG").get().getValue()).reduce(NumericValue.ZERO, NumericValue::plus);
+        NumericValue total = method.getMethods().stream().map(m -> m.getMetric("VG").get().getValue()).reduce(NumericValue.ZERO, NumericValue::plus);
 
         return ImmutableSet.of(Metric.of("WMC", "Weighted methods per Class", total));
     }
@@ -211,6 +211,35 @@ public class NumericValue implements Comparable<NumericValue> {
         }
     }
 
+    /**
+     * Unlike toString, which formats everything but integers as a decimal, this keeps the kind of number being stored so
+     * that {@link #parseExact(String)} can recreate an equal value, e.g. when metrics are persisted between runs.
+     */
+    public String toExactString() {
+        if(value instanceof LargeInteger) {
+            return "I:" + value.toString();
+        } else if (value instanceof Rational) {
+            return "R:" + ((Rational) value).getDividend() + "/" + ((Rational) value).getDivisor();
+        } else {
+            return "D:" + Double.toString(value.doubleValue());
+        }
+    }
+
+    public static NumericValue parseExact(String exactString) {
+        String number = exactString.substring(2);
+        switch (exactString.substring(0, 2)) {
+            case "I:":
+                return new NumericValue(LargeInteger.valueOf(number));
+            case "R:":
+                String[] parts = number.split("/");
+                return new NumericValue(Rational.valueOf(LargeInteger.valueOf(parts[0]), LargeInteger.valueOf(parts[1])));
+            case "D:":
+                return new NumericValue(Real.valueOf(Double.parseDouble(number)));
+            default:
+                throw new IllegalArgumentException("Not an exact numeric value: " + exactString);
+        }
+    }
+
     public long longValue() {
         return value.longValue();
     }
@@ -0,0 +1,125 @@
+package org.jasome.output;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Folds the output of a partial analysis into the output of an earlier, complete one.  Classes that came from files that
+ * changed are dropped from the earlier output, and the selected classes from the partial output take their place.  Package
+ * and project metrics are kept from the earlier output, since a partial analysis can't calculate them correctly.
+ */
+public class XMLMerger {
+
+    /**
+     * @param previous           output of an earlier run, which is modified in place and returned
+     * @param partial            output of the partial run
+     * @param replacedSourceFiles sourceFile attributes of classes that must be removed from the earlier output
+     * @param classesToTake      whether a class of the partial output, identified by package name and class name, should be merged
+     */
+    public Document merge(Document previous, Document partial, Set<String> replacedSourceFiles, ClassSelector classesToTake) {
+        Element previousPackages = child(previous.getDocumentElement(), "Packages");
+        Element partialPackages = child(partial.getDocumentElement(), "Packages");
+
+        Set<Element> touchedPackages = new HashSet<>();
+
+        for (Element packageElement : children(previousPackages, "Package")) {
+            Element classesElement = child(packageElement, "Classes");
+            for (Element classElement : children(classesElement, "Class")) {
+                if (replacedSourceFiles.contains(classElement.getAttribute("sourceFile"))) {
+                    classesElement.removeChild(classElement);
+                    touchedPackages.add(packageElement);
+                }
+            }
+        }
+
+        for (Element partialPackage : children(partialPackages, "Package")) {
+            String packageName = partialPackage.getAttribute("name");
+
+            for (Element partialClass : children(child(partialPackage, "Classes"), "Class")) {
+                if (!classesToTake.test(packageName, partialClass.getAttribute("name"))) continue;
+
+                Element packageElement = findByName(previousPackages, "Package", packageName)
+                        .orElseGet(() -> insertSorted(previousPackages, emptyPackage(previous, partialPackage)));
+                Element classesElement = child(packageElement, "Classes");
+
+                findByName(classesElement, "Class", partialClass.getAttribute("name")).ifPresent(classesElement::removeChild);
+                insertSorted(classesElement, (Element) previous.importNode(partialClass, true));
+                touchedPackages.add(packageElement);
+            }
+        }
+
+        for (Element packageElement : touchedPackages) {
+            if (children(child(packageElement, "Classes"), "Class").isEmpty()) {
+                previousPackages.removeChild(packageElement);
+            }
+        }
+
+        return previous;
+    }
+
+    /**
+     * An empty document with the same project element as the given one, to merge into when there is no earlier output.
+     */
+    public Document emptyCopyOf(Document document) {
+        Document copy = (Document) document.cloneNode(false);
+        Element project = (Element) copy.importNode(document.getDocumentElement(), false);
+        copy.appendChild(project);
+        project.appendChild(copy.createElement("Metrics"));
+        project.appendChild(copy.createElement("Packages"));
+        return copy;
+    }
+
+    private Element emptyPackage(Document document, Element partialPackage) {
+        Element packageElement = (Element) document.importNode(partialPackage, false);
+        packageElement.appendChild(document.createElement("Metrics"));
+        packageElement.appendChild(document.createElement("Classes"));
+        return packageElement;
+    }
+
+    //Output is sorted by name, so merged elements are inserted in order rather than appended
+    private Element insertSorted(Element parent, Element newChild) {
+        String name = newChild.getAttribute("name");
+        for (Element existing : children(parent, newChild.getTagName())) {
+            if (existing.getAttribute("name").compareTo(name) > 0) {
+                parent.insertBefore(newChild, existing);
+                return newChild;
+            }
+        }
+        parent.appendChild(newChild);
+        return newChild;
+    }
+
+    private Optional<Element> findByName(Element parent, String tagName, String name) {
+        return children(parent, tagName).stream().filter(e -> e.getAttribute("name").equals(name)).findFirst();
+    }
+
+    private Element child(Element parent, String tagName) {
+        List<Element> children = children(parent, tagName);
+        if (children.isEmpty()) {
+            throw new IllegalArgumentException("Expected a " + tagName + " element inside " + parent.getTagName());
+        }
+        return children.get(0);
+    }
+
+    private List<Element> children(Element parent, String tagName) {
+        List<Element> children = new ArrayList<>();
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && ((Element) node).getTagName().equals(tagName)) {
+                children.add((Element) node);
+            }
+        }
+        return children;
+    }
+
+    @FunctionalInterface
+    public interface ClassSelector {
+        boolean test(String packageName, String className);
+    }
+}
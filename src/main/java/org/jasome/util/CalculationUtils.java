@@ -1,6 +1,8 @@
 package org.jasome.util;
 
 import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.ConstructorDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
 import com.github.javaparser.ast.body.VariableDeclarator;
 import com.github.javaparser.ast.expr.FieldAccessExpr;
@@ -31,17 +33,18 @@ import java.util.stream.Collectors;
 
 public class CalculationUtils {
     //TODO: Can likely make this faster/more accurate using java resolver
-    public static LoadingCache<Pair<MethodDeclaration, VariableDeclarator>, Boolean> isFieldAccessedWithinMethod = CacheBuilder.newBuilder()
+    public static LoadingCache<Pair<CallableDeclaration<?>, VariableDeclarator>, Boolean> isFieldAccessedWithinMethod = CacheBuilder.newBuilder()
             .expireAfterWrite(10, TimeUnit.MINUTES)
-            .build(new CacheLoader<Pair<MethodDeclaration, VariableDeclarator>, Boolean>() {
+            .build(new CacheLoader<Pair<CallableDeclaration<?>, VariableDeclarator>, Boolean>() {
                 @Override
-                public Boolean load(Pair<MethodDeclaration, VariableDeclarator> key) throws Exception {
-                    MethodDeclaration method = key.getLeft();
+                public Boolean load(Pair<CallableDeclaration<?>, VariableDeclarator> key) throws Exception {
+                    CallableDeclaration<?> method = key.getLeft();
                     VariableDeclarator variable = key.getRight();
 
-                    if (!method.getBody().isPresent()) return false;
+                    Optional<BlockStmt> body = bodyOf(method);
+                    if (!body.isPresent()) return false;
 
-                    List<FieldAccessExpr> fieldAccesses = method.getBody().get().getNodesByType(FieldAccessExpr.class);
+                    List<FieldAccessExpr> fieldAccesses = body.get().getNodesByType(FieldAccessExpr.class);
 
                     //If we have a field match we can just count it, it's directly prefixed with 'this.' so there's no room for shadowing
 
@@ -49,7 +52,7 @@ public class CalculationUtils {
 
                     if (anyDirectAccess) return true;
                     else {
-                        List<NameExpr> nameAccesses = method.getBody().get().getNodesByType(NameExpr.class);
+                        List<NameExpr> nameAccesses = body.get().getNodesByType(NameExpr.class);
 
                         boolean anyIndirectAccess = nameAccesses
                                 .stream()
@@ -100,10 +103,20 @@ public class CalculationUtils {
     
 
 
+    /**
+     * @return the body of a method or constructor, which only abstract and native methods don't have
+     */
+    public static Optional<BlockStmt> bodyOf(CallableDeclaration<?> declaration) {
+        if (declaration instanceof ConstructorDeclaration) {
+            return Optional.of(((ConstructorDeclaration) declaration).getBody());
+        }
+        return ((MethodDeclaration) declaration).getBody();
+    }
+
     private static List<BlockStmt> getAllVariableDefinitionScopesBetweenMethodDefinitionAndNode(Node theNode) {
         List<BlockStmt> blocksOnPathToMethodDeclaration = new ArrayList<>();
 
-        while (!(theNode instanceof MethodDeclaration)) {
+        while (!(theNode instanceof CallableDeclaration)) {
 
             if (theNode instanceof BlockStmt) {
                 blocksOnPathToMethodDeclaration.add((BlockStmt) theNode);
@@ -152,8 +165,7 @@ public class CalculationUtils {
 
                         for (ClassOrInterfaceType parentType : parentTypes) {
                             try {
-                                ResolvedReferenceType refType = parentType.resolve();
-                                Optional<Type> closestType = CalculationUtils.lookupType(parentProject, refType);
+                                Optional<Type> closestType = parentProject.getSymbolResolution().resolve(() -> CalculationUtils.lookupType(parentProject, parentType.resolve()));
 
                                 closestType.ifPresent(c ->
                                         graph.putEdge(c, type)
@@ -1,25 +1,19 @@
 package org.jasome.util;
 
-import com.github.javaparser.ast.expr.Expression;
-import com.github.javaparser.ast.expr.MethodCallExpr;
-import com.github.javaparser.ast.type.ClassOrInterfaceType;
-import com.github.javaparser.ast.type.ReferenceType;
-import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
-import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
-import com.github.javaparser.resolution.types.ResolvedReferenceType;
-import com.github.javaparser.resolution.types.ResolvedType;
-import com.google.common.collect.HashMultimap;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.graph.*;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
 import org.jasome.input.Method;
 import org.jasome.input.Package;
 import org.jasome.input.Project;
 import org.jasome.input.Type;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 public class ProjectMetadata {
@@ -30,6 +24,30 @@ public class ProjectMetadata {
         this.project = project;
     }
 
+    private final Map<Type, TypeSummary> summaries = new ConcurrentHashMap<>();
+
+    /**
+     * What the rest of the project can know about a type, worked out from its source the first time it's asked for.  The graphs
+     * below are built from these summaries, and calculators that look at types other than the one they're calculating for
+     * should use them too, since types in a partially loaded project may not have a source to look at.
+     */
+    public TypeSummary getSummary(Type type) {
+        TypeSummary summary = summaries.get(type);
+        if (summary == null) {
+            summary = TypeSummary.of(type);
+            TypeSummary existingSummary = summaries.putIfAbsent(type, summary);
+            if (existingSummary != null) summary = existingSummary;
+        }
+        return summary;
+    }
+
+    /**
+     * Supplies the summary of a type that was summarized elsewhere, usually because its source isn't loaded.
+     */
+    public void addSummary(Type type, TypeSummary summary) {
+        summaries.put(type, summary);
+    }
+
     private volatile Graph<Type> inheritanceGraph;
 
     public Graph<Type> getInheritanceGraph() {
@@ -46,14 +64,6 @@ public class ProjectMetadata {
     private Graph<Type> buildInheritanceGraph() {
         MutableGraph<Type> graph = GraphBuilder.directed().build();
 
-        Multimap<String, Type> allClassesByName = HashMultimap.create();
-
-        project.getPackages()
-                .stream()
-                .map(Package::getTypes)
-                .flatMap(Set::stream)
-                .forEach(type -> allClassesByName.put(type.getName(), type));
-
         Set<Type> allClasses = project.getPackages()
                 .stream()
                 .map(Package::getTypes)
@@ -61,30 +71,20 @@ public class ProjectMetadata {
                 .collect(Collectors.toSet());
 
         for (Type type : allClasses) {
-            List<ClassOrInterfaceType> extendedTypes = type.getSource().getExtendedTypes();
-            List<ClassOrInterfaceType> implementedTypes = type.getSource().getImplementedTypes();
-
-            graph.addNode(type);
-
-            List<ClassOrInterfaceType> parentTypes = new ArrayList<>();
-            parentTypes.addAll(extendedTypes);
-            parentTypes.addAll(implementedTypes);
-
-            for (ClassOrInterfaceType parentType : parentTypes) {
-                try {
-                    ResolvedReferenceType refType = parentType.resolve();
-                    Optional<Type> closestType = CalculationUtils.lookupType(project, refType);
+            addInheritanceEdges(graph, type);
+        }
+        return ImmutableGraph.copyOf(graph);
+    }
 
-                    closestType.ifPresent(c ->
-                            graph.putEdge(c, type)
-                    );
-                } catch (Exception e) {
-                    //Ignore if a symbol can't be resolved
-                }
+    //Edges go from parent to child, so these are the edges into the given type
+    private void addInheritanceEdges(MutableGraph<Type> graph, Type type) {
+        graph.addNode(type);
 
-            }
+        for (Pair<String, String> parent : getSummary(type).getParents()) {
+            lookupType(parent.getLeft(), parent.getRight()).ifPresent(parentType ->
+                    graph.putEdge(parentType, type)
+            );
         }
-        return ImmutableGraph.copyOf(graph);
     }
 
     private volatile Graph<Type> clientGraph;
@@ -109,62 +109,29 @@ public class ProjectMetadata {
                 .map(Package::getTypes).flatMap(Set::stream).collect(Collectors.toSet());
 
         for (Type type : allTypes) {
-            dependencyGraph.addNode(type);
-
-            //We can have class uses via chained method calls without referencing one of the types directly
-            List<MethodCallExpr> calls = type.getSource().findAll(MethodCallExpr.class);
-
-            for (MethodCallExpr methodCall : calls) {
-                try {
-                    ResolvedMethodDeclaration resolvedMethodDeclaration = methodCall.resolve();
-                    ResolvedReferenceTypeDeclaration declaringType = resolvedMethodDeclaration.declaringType();
-
-                    String packageName = declaringType.getPackageName();
-                    String className = declaringType.getName();
-
-                    project
-                            .lookupPackageByName(packageName)
-                            .flatMap(pkg -> pkg.lookupTypeByName(className))
-                            .ifPresent(referencedType -> {
-                                if (type != referencedType)
-                                    dependencyGraph.putEdge(type, referencedType);
-                            });
-                } catch (Exception e) {
-                    //Ignore anything unresolvable
-                }
-
-            }
-
-            List<ReferenceType> parameters = type.getSource().findAll(ReferenceType.class);
-
-            for (ReferenceType parameter : parameters) {
+            addClientEdges(dependencyGraph, type);
+        }
 
-                try {
-                    ResolvedType declaration = parameter.resolve();
-                    String packageName = declaration.asReferenceType().asReferenceType().getTypeDeclaration().getPackageName();
-                    String className = declaration.asReferenceType().asReferenceType().getTypeDeclaration().getName();
+        return ImmutableGraph.copyOf(dependencyGraph);
+    }
 
-                    project.
-                            lookupPackageByName(packageName)
-                            .flatMap(pkg -> pkg.lookupTypeByName(className))
-                            .ifPresent(referencedType -> {
-                                if (type != referencedType)
-                                    dependencyGraph.putEdge(type, referencedType);
-                            });
-                } catch (Exception e) {
-                    //Ignore anything unresolvable
-                }
-            }
+    private void addClientEdges(MutableGraph<Type> graph, Type type) {
+        graph.addNode(type);
 
+        for (Pair<String, String> supplier : getSummary(type).getSuppliers()) {
+            lookupType(supplier.getLeft(), supplier.getRight()).ifPresent(referencedType -> {
+                if (type != referencedType)
+                    graph.putEdge(type, referencedType);
+            });
         }
-
-
-        return ImmutableGraph.copyOf(dependencyGraph);
     }
 
-    private volatile Network<Method, Distinct<Expression>> callNetwork;
+    private volatile Network<Method, Distinct<Triple<String, String, String>>> callNetwork;
 
-    public Network<Method, Distinct<Expression>> getCallNetwork() {
+    /**
+     * Which methods call which, with an edge for every call made, so calling the same method twice gives two edges.
+     */
+    public Network<Method, Distinct<Triple<String, String, String>>> getCallNetwork() {
         if (callNetwork == null) {
             synchronized(this) {
                 if (callNetwork == null) {
@@ -175,33 +142,42 @@ public class ProjectMetadata {
         return callNetwork;
     }
 
-    private Network<Method, Distinct<Expression>> buildCallNetwork() {
-        MutableNetwork<Method, Distinct<Expression>> network = NetworkBuilder.directed().allowsSelfLoops(true).allowsParallelEdges(true).build();
+    private Network<Method, Distinct<Triple<String, String, String>>> buildCallNetwork() {
+        MutableNetwork<Method, Distinct<Triple<String, String, String>>> network = NetworkBuilder.directed().allowsSelfLoops(true).allowsParallelEdges(true).build();
 
-        Set<Method> allMethods = project.getPackages()
+        Set<Type> allTypes = project.getPackages()
                 .stream()
-                .map(Package::getTypes)
-                .flatMap(Set::stream).map(Type::getMethods).flatMap(Set::stream).collect(Collectors.toSet());
+                .map(Package::getTypes).flatMap(Set::stream).collect(Collectors.toSet());
+
+        for (Type type : allTypes) {
+            for (Method method : type.getMethods()) {
+                addCalls(network, method);
+            }
+        }
 
-        for (Method method : allMethods) {
-            network.addNode(method);
+        //TODO: should also check for method calls in static initializers
 
-            List<MethodCallExpr> calls = method.getSource().findAll(MethodCallExpr.class);
+        return ImmutableNetwork.copyOf(network);
+    }
 
-            for (MethodCallExpr methodCall : calls) {
+    private void addCalls(MutableNetwork<Method, Distinct<Triple<String, String, String>>> network, Method method) {
+        network.addNode(method);
 
-                Optional<Method> methodCalled = getMethodCalledByMethodExpression(methodCall);
+        for (Triple<String, String, String> call : getSummary(method.getParentType()).getMethod(method).getCalls()) {
 
-                if (methodCalled.isPresent()) {
-                    network.addEdge(method, methodCalled.orElse(Method.UNKNOWN), Distinct.of(methodCall));
-                }
+            Optional<Method> methodCalled = lookupType(call.getLeft(), call.getMiddle())
+                    .flatMap(type -> type.lookupMethodBySignature(call.getRight()));
 
+            if (methodCalled.isPresent()) {
+                network.addEdge(method, methodCalled.orElse(Method.UNKNOWN), Distinct.of(call));
             }
 
+        }
+
 
-            //This is not straightforward because the constructor being called might not actually be a Method on the Type - if it's a
-            //default constructor that isn't defined in the source it's still possible to call it in the code, but it wasn't parsed
-            //and added to the type's list of methods
+        //This is not straightforward because the constructor being called might not actually be a Method on the Type - if it's a
+        //default constructor that isn't defined in the source it's still possible to call it in the code, but it wasn't parsed
+        //and added to the type's list of methods
 
 //                            List<ObjectCreationExpr> constructions = method.getSource().findAll(ObjectCreationExpr.class);
 //
@@ -216,34 +192,129 @@ public class ProjectMetadata {
 //                            }
 
 
-            //TODO: Track these as well
-            //List<MethodReferenceExpr> references = method.getSource().findAll(MethodReferenceExpr.class);
+        //TODO: Track these as well
+        //List<MethodReferenceExpr> references = method.getSource().findAll(MethodReferenceExpr.class);
+    }
+
+    private Optional<Type> lookupType(String packageName, String typeName) {
+        return project.lookupPackageByName(packageName).flatMap(pkg -> pkg.lookupTypeByName(typeName));
+    }
+
+    /**
+     * Brings the graphs up to date after types were taken out of the project and new ones put in, re-resolving only the
+     * relationships that could have changed instead of rebuilding everything.  Graphs that haven't been built yet are simply
+     * left to be built when they're first needed.
+     *
+     * @param removedTypes the types that were taken out of the project
+     * @param addedTypes   the types that were put into the project, possibly replacing removed types of the same name
+     * @return every type whose metrics may be different because of the change
+     */
+    public synchronized Set<Type> update(Set<Type> removedTypes, Set<Type> addedTypes) {
+        //Summaries are looked up the way types are compared, by name, so the summary of a removed type would otherwise be taken
+        //for the type that replaced it
+        removedTypes.forEach(summaries::remove);
+
+        Set<Type> allTypes = project.getPackages()
+                .stream()
+                .map(Package::getTypes).flatMap(Set::stream).collect(Collectors.toSet());
+
+        if (inheritanceGraph == null || clientGraph == null) {
+            inheritanceGraph = null;
+            clientGraph = null;
+            callNetwork = null;
+            summaries.clear();
+            return allTypes;
         }
 
-        //TODO: should also check for method calls in static initializers
+        Set<String> changedNames = new HashSet<>();
+        removedTypes.forEach(type -> changedNames.add(type.getSource().getNameAsString()));
+        addedTypes.forEach(type -> changedNames.add(type.getSource().getNameAsString()));
+
+        //Relationships can only have changed for the new types, the old neighbours of the removed types (including callers of
+        //their methods), and types that mention one of the names that came or went
+        Set<Type> rebuiltTypes = new HashSet<>(addedTypes);
+        for (Type removedType : removedTypes) {
+            currentVersionsOf(relativesOf(removedType)).forEach(rebuiltTypes::add);
+            if (callNetwork != null) {
+                for (Method method : removedType.getMethods()) {
+                    if (callNetwork.nodes().contains(method)) {
+                        currentVersionsOf(callNetwork.predecessors(method).stream().map(Method::getParentType).collect(Collectors.toSet())).forEach(rebuiltTypes::add);
+                    }
+                }
+            }
+        }
+        allTypes.stream().filter(type -> mentionsAny(type, changedNames)).forEach(rebuiltTypes::add);
 
+        //What the rebuilt types refer to may resolve to something else now
+        rebuiltTypes.forEach(summaries::remove);
 
-        return ImmutableNetwork.copyOf(network);
-    }
+        MutableGraph<Type> inheritance = Graphs.copyOf(inheritanceGraph);
+        MutableGraph<Type> clients = Graphs.copyOf(clientGraph);
+        removedTypes.forEach(inheritance::removeNode);
+        removedTypes.forEach(clients::removeNode);
+
+        for (Type type : rebuiltTypes) {
+            if (inheritance.nodes().contains(type)) {
+                ImmutableList.copyOf(inheritance.predecessors(type)).forEach(parent -> inheritance.removeEdge(parent, type));
+            }
+            addInheritanceEdges(inheritance, type);
+
+            if (clients.nodes().contains(type)) {
+                ImmutableList.copyOf(clients.successors(type)).forEach(supplier -> clients.removeEdge(type, supplier));
+            }
+            addClientEdges(clients, type);
+        }
 
+        if (callNetwork != null) {
+            MutableNetwork<Method, Distinct<Triple<String, String, String>>> calls = Graphs.copyOf(callNetwork);
+            removedTypes.stream().map(Type::getMethods).flatMap(Set::stream).forEach(calls::removeNode);
 
-    private Optional<Method> getMethodCalledByMethodExpression(MethodCallExpr methodCall) {
-        try {
-            ResolvedMethodDeclaration blah = methodCall.resolve();
-            ResolvedReferenceTypeDeclaration declaringType = blah.declaringType();
+            for (Type type : rebuiltTypes) {
+                for (Method method : type.getMethods()) {
+                    if (calls.nodes().contains(method)) {
+                        ImmutableList.copyOf(calls.outEdges(method)).forEach(calls::removeEdge);
+                    }
+                    addCalls(calls, method);
+                }
+            }
 
-            Optional<Package> pkg = project.lookupPackageByName(declaringType.getPackageName());
-            if (!pkg.isPresent()) return Optional.empty();
+            callNetwork = ImmutableNetwork.copyOf(calls);
+        }
 
-            Optional<Type> typ = pkg.get().lookupTypeByName(declaringType.getName());
+        inheritanceGraph = ImmutableGraph.copyOf(inheritance);
+        clientGraph = ImmutableGraph.copyOf(clients);
 
-            if (!typ.isPresent()) return Optional.empty();
+        Set<Type> affectedTypes = new HashSet<>(rebuiltTypes);
+        addedTypes.forEach(type -> affectedTypes.addAll(relativesOf(type)));
+        return affectedTypes;
+    }
 
-            Optional<Method> method = typ.get().lookupMethodBySignature(blah.getSignature());
+    //Everything up and down the inheritance hierarchy, plus direct clients and suppliers
+    private Set<Type> relativesOf(Type type) {
+        Set<Type> relatives = new HashSet<>();
+        if (inheritanceGraph.nodes().contains(type)) {
+            relatives.addAll(Graphs.reachableNodes(inheritanceGraph, type));
+            relatives.addAll(Graphs.reachableNodes(Graphs.transpose(inheritanceGraph), type));
+        }
+        if (clientGraph.nodes().contains(type)) {
+            relatives.addAll(clientGraph.predecessors(type));
+            relatives.addAll(clientGraph.successors(type));
+        }
+        return relatives;
+    }
 
-            return method;
-        } catch (Exception e) {
-            return Optional.empty();
+    //Types from an old version of the graphs may have been replaced since, by new types that are equal to them
+    private Set<Type> currentVersionsOf(Set<Type> types) {
+        Set<Type> currentTypes = new HashSet<>();
+        for (Type type : types) {
+            project.lookupPackageByName(type.getParentPackage().getName())
+                    .flatMap(pkg -> pkg.lookupTypeByName(type.getName()))
+                    .ifPresent(currentTypes::add);
         }
+        return currentTypes;
+    }
+
+    private boolean mentionsAny(Type type, Set<String> names) {
+        return getSummary(type).getMentionedNames().stream().anyMatch(names::contains);
     }
 }
@@ -0,0 +1,66 @@
+package org.jasome.util;
+
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+import com.google.common.collect.Sets;
+
+import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Symbol resolution for the sources of one scan.  The type solvers a scan creates, and the facades the symbol solver makes for
+ * them, cache what they've resolved without any synchronization, so the resolutions of a scan go through here one at a time.
+ * Nothing is shared with other scans except the static map the symbol solver keeps every facade in, which is swapped for a
+ * synchronized one, so separate projects still resolve side by side.
+ */
+public class SymbolResolution {
+    private static final Map<TypeSolver, JavaParserFacade> facades = synchronizeFacades();
+
+    private final Set<TypeSolver> typeSolvers = Sets.newIdentityHashSet();
+
+    /**
+     * Records a type solver that belongs to this scan, so that its facade can be let go of along with the scan.  Must be
+     * called before the solver is used.
+     */
+    public synchronized void addTypeSolver(TypeSolver typeSolver) {
+        typeSolvers.add(typeSolver);
+    }
+
+    /**
+     * Runs something that resolves symbols, including anything that looks at what was resolved, since resolved declarations
+     * resolve more symbols lazily.
+     */
+    public synchronized <T> T resolve(Supplier<T> resolution) {
+        return resolution.get();
+    }
+
+    /**
+     * Lets go of the facades made for this scan's solvers.  Each facade keeps its type solver, and with it every compilation
+     * unit the solver can see, from being collected; the facades of other scans are left alone.  Nothing can be resolved
+     * afterwards.
+     */
+    public synchronized void releaseFacades() {
+        for (TypeSolver typeSolver : typeSolvers) {
+            facades.remove(typeSolver);
+        }
+        typeSolvers.clear();
+    }
+
+    //The symbol solver has no way to remove a single facade or to share the map between threads, so it gets a map that can
+    private static Map<TypeSolver, JavaParserFacade> synchronizeFacades() {
+        try {
+            Field instances = JavaParserFacade.class.getDeclaredField("instances");
+            instances.setAccessible(true);
+
+            Map<TypeSolver, JavaParserFacade> synchronizedFacades = Collections.synchronizedMap(new WeakHashMap<>());
+            instances.set(null, synchronizedFacades);
+            return synchronizedFacades;
+        } catch (NoSuchFieldException | IllegalAccessException | IllegalArgumentException e) {
+            throw new IllegalStateException("Unsupported version of the symbol solver, its facades can't be shared between threads", e);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package org.jasome.util;
+
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
+import com.github.javaparser.ast.body.FieldDeclaration;
+import com.github.javaparser.ast.body.CallableDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.SimpleName;
+import com.github.javaparser.ast.type.ClassOrInterfaceType;
+import com.github.javaparser.ast.type.ReferenceType;
+import com.github.javaparser.resolution.declarations.ResolvedMethodDeclaration;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.declarations.ResolvedTypeDeclaration;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.commons.lang3.tuple.Triple;
+import org.jasome.input.Method;
+import org.jasome.input.Type;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Everything calculators need to know about a type from outside of it, boiled down from its source: how it's declared, the
+ * names it mentions, its methods and attributes, and the types and methods it refers to, already resolved to package and type
+ * names.  A summary holds on to none of the parsed source, so summaries can be kept for every type in a project even when only
+ * a few packages are parsed at a time.
+ */
+public class TypeSummary {
+    //Identifiers repeat a lot between types, there's no reason to keep a copy of each one per type
+    private static final Interner<String> names = Interners.newWeakInterner();
+
+    private final EnumSet<Modifier> modifiers;
+    private final boolean isInterface;
+    private final Set<String> mentionedNames;
+    private final Set<Pair<String, String>> parents;
+    private final Set<Pair<String, String>> suppliers;
+    private final Map<String, MethodSummary> methods;
+    private final List<AttributeSummary> attributes;
+
+    public TypeSummary(EnumSet<Modifier> modifiers, boolean isInterface, Set<String> mentionedNames, Set<Pair<String, String>> parents, Set<Pair<String, String>> suppliers, Map<String, MethodSummary> methods, List<AttributeSummary> attributes) {
+        this.modifiers = EnumSet.copyOf(modifiers);
+        this.isInterface = isInterface;
+        this.mentionedNames = ImmutableSet.copyOf(mentionedNames.stream().map(names::intern).iterator());
+        this.parents = ImmutableSet.copyOf(parents);
+        this.suppliers = ImmutableSet.copyOf(suppliers);
+        this.methods = ImmutableMap.copyOf(methods);
+        this.attributes = ImmutableList.copyOf(attributes);
+    }
+
+    /**
+     * Summarizes a type from its source, resolving what it refers to with the symbol solver of its compilation unit.
+     */
+    public static TypeSummary of(Type type) {
+        ClassOrInterfaceDeclaration declaration = type.getSource();
+        SymbolResolution symbolResolution = type.getParentPackage().getParentProject().getSymbolResolution();
+
+        Set<String> mentionedNames = declaration.findAll(SimpleName.class).stream()
+                .map(SimpleName::getIdentifier)
+                .collect(Collectors.toSet());
+
+        ImmutableMap.Builder<String, MethodSummary> methods = ImmutableMap.builder();
+        for (Method method : type.getMethods()) {
+            methods.put(method.getName(), MethodSummary.of(method.getSource(), symbolResolution));
+        }
+
+        List<AttributeSummary> attributes = new ArrayList<>();
+        for (FieldDeclaration field : declaration.getFields()) {
+            for (VariableDeclarator variable : field.getVariables()) {
+                attributes.add(new AttributeSummary(field.getModifiers(), variable.getType().asString(), variable.getName().getIdentifier()));
+            }
+        }
+
+        return new TypeSummary(declaration.getModifiers(), declaration.isInterface(), mentionedNames, resolveParents(declaration, symbolResolution), resolveSuppliers(declaration, symbolResolution), methods.build(), attributes);
+    }
+
+    //Extended and implemented types, as the package and the (possibly nested) class name they were declared with
+    private static Set<Pair<String, String>> resolveParents(ClassOrInterfaceDeclaration declaration, SymbolResolution symbolResolution) {
+        List<ClassOrInterfaceType> parentTypes = new ArrayList<>();
+        parentTypes.addAll(declaration.getExtendedTypes());
+        parentTypes.addAll(declaration.getImplementedTypes());
+
+        Set<Pair<String, String>> parents = new LinkedHashSet<>();
+        for (ClassOrInterfaceType parentType : parentTypes) {
+            try {
+                parents.add(symbolResolution.resolve(() -> {
+                    ResolvedReferenceTypeDeclaration parentDeclaration = parentType.resolve().getTypeDeclaration();
+                    return Pair.of(names.intern(parentDeclaration.getPackageName()), names.intern(parentDeclaration.getClassName()));
+                }));
+            } catch (Exception e) {
+                //Ignore if a symbol can't be resolved
+            }
+        }
+        return parents;
+    }
+
+    //We can have class uses via chained method calls without referencing one of the types directly
+    private static Set<Pair<String, String>> resolveSuppliers(ClassOrInterfaceDeclaration declaration, SymbolResolution symbolResolution) {
+        Set<Pair<String, String>> suppliers = new LinkedHashSet<>();
+
+        for (MethodCallExpr methodCall : declaration.findAll(MethodCallExpr.class)) {
+            try {
+                suppliers.add(symbolResolution.resolve(() -> nameOf(methodCall.resolve().declaringType())));
+            } catch (Exception e) {
+                //Ignore anything unresolvable
+            }
+        }
+
+        for (ReferenceType referenceType : declaration.findAll(ReferenceType.class)) {
+            try {
+                suppliers.add(symbolResolution.resolve(() -> nameOf(referenceType.resolve().asReferenceType().getTypeDeclaration())));
+            } catch (Exception e) {
+                //Ignore anything unresolvable
+            }
+        }
+
+        return suppliers;
+    }
+
+    private static Pair<String, String> nameOf(ResolvedTypeDeclaration declaration) {
+        return Pair.of(names.intern(declaration.getPackageName()), names.intern(declaration.getName()));
+    }
+
+    public boolean isPublic() {
+        return modifiers.contains(Modifier.PUBLIC);
+    }
+
+    public boolean isAbstract() {
+        return modifiers.contains(Modifier.ABSTRACT);
+    }
+
+    public boolean isInterface() {
+        return isInterface;
+    }
+
+    public EnumSet<Modifier> getModifiers() {
+        return EnumSet.copyOf(modifiers);
+    }
+
+    /**
+     * Every identifier that appears anywhere in the type: the names of the types, methods, variables and so on that it declares
+     * or uses.
+     */
+    public Set<String> getMentionedNames() {
+        return mentionedNames;
+    }
+
+    /**
+     * The types this one extends or implements, as pairs of package name and class name, with nested classes named the way
+     * {@link Type#getName()} names them.
+     */
+    public Set<Pair<String, String>> getParents() {
+        return parents;
+    }
+
+    /**
+     * The types whose methods this one calls or that it refers to by name, as pairs of package name and simple type name.
+     */
+    public Set<Pair<String, String>> getSuppliers() {
+        return suppliers;
+    }
+
+    /**
+     * @param method one of the methods of the summarized type
+     */
+    public MethodSummary getMethod(Method method) {
+        MethodSummary summary = methods.get(method.getName());
+        if (summary == null) {
+            throw new IllegalArgumentException(method + " isn't a method of the summarized type");
+        }
+        return summary;
+    }
+
+    public Map<String, MethodSummary> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Each variable declared by the type's fields, in the order they're declared.
+     */
+    public List<AttributeSummary> getAttributes() {
+        return attributes;
+    }
+
+    public static class MethodSummary {
+        private final String signature;
+        private final String shape;
+        private final EnumSet<Modifier> modifiers;
+        private final List<Triple<String, String, String>> calls;
+
+        public MethodSummary(String signature, String shape, EnumSet<Modifier> modifiers, List<Triple<String, String, String>> calls) {
+            this.signature = signature;
+            this.shape = shape;
+            this.modifiers = EnumSet.copyOf(modifiers);
+            this.calls = ImmutableList.copyOf(calls);
+        }
+
+        static MethodSummary of(CallableDeclaration<?> declaration, SymbolResolution symbolResolution) {
+            //A constructor's shape has its type where a method's has its return type
+            String returnType = declaration instanceof MethodDeclaration ? ((MethodDeclaration) declaration).getType().toString() : declaration.getNameAsString();
+            String shape = returnType + " " + declaration.getNameAsString() + declaration.getParameters().stream()
+                    .map(parameter -> parameter.getType().toString())
+                    .collect(Collectors.joining(", ", "(", ")"));
+
+            List<Triple<String, String, String>> calls = new ArrayList<>();
+            for (MethodCallExpr methodCall : declaration.findAll(MethodCallExpr.class)) {
+                try {
+                    calls.add(symbolResolution.resolve(() -> {
+                        ResolvedMethodDeclaration calledMethod = methodCall.resolve();
+                        ResolvedReferenceTypeDeclaration declaringType = calledMethod.declaringType();
+                        return Triple.of(names.intern(declaringType.getPackageName()), names.intern(declaringType.getName()), calledMethod.getSignature());
+                    }));
+                } catch (Exception e) {
+                    //Calls that can't be resolved can't be counted
+                }
+            }
+
+            return new MethodSummary(declaration.getSignature().asString(), shape, declaration.getModifiers(), calls);
+        }
+
+        /**
+         * The name and parameter types, the way methods are looked up by {@link Type#lookupMethodBySignature}.
+         */
+        public String getSignature() {
+            return signature;
+        }
+
+        /**
+         * The return type, name and parameter types, written out as they appear in the source.
+         */
+        public String getShape() {
+            return shape;
+        }
+
+        public EnumSet<Modifier> getModifiers() {
+            return EnumSet.copyOf(modifiers);
+        }
+
+        public boolean isAbstract() {
+            return modifiers.contains(Modifier.ABSTRACT);
+        }
+
+        public boolean isDefault() {
+            return modifiers.contains(Modifier.DEFAULT);
+        }
+
+        public boolean isPublic() {
+            return modifiers.contains(Modifier.PUBLIC);
+        }
+
+        public boolean isProtected() {
+            return modifiers.contains(Modifier.PROTECTED);
+        }
+
+        public boolean isPrivate() {
+            return modifiers.contains(Modifier.PRIVATE);
+        }
+
+        /**
+         * One entry for every call in the method that could be resolved, as the package, simple type name and signature of the
+         * method called.  Calling the same method twice gives two entries.
+         */
+        public List<Triple<String, String, String>> getCalls() {
+            return calls;
+        }
+    }
+
+    public static class AttributeSummary {
+        private final EnumSet<Modifier> modifiers;
+        private final String type;
+        private final String name;
+
+        public AttributeSummary(EnumSet<Modifier> modifiers, String type, String name) {
+            this.modifiers = EnumSet.copyOf(modifiers);
+            this.type = type;
+            this.name = name;
+        }
+
+        public EnumSet<Modifier> getModifiers() {
+            return EnumSet.copyOf(modifiers);
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package org.jasome.executive
+
+import com.google.common.io.Files
+import org.jasome.input.FileScanner
+import org.jasome.input.Project
+import org.jasome.output.XMLOutputter
+import spock.lang.Specification
+
+import javax.xml.transform.stream.StreamResult
+import java.nio.file.attribute.PosixFilePermissions
+
+class AnalysisServerSpec extends Specification {
+
+    AnalysisServer server
+
+    def setup() {
+        server = new AnalysisServer(0, Files.createTempDir())
+        server.start()
+    }
+
+    def cleanup() {
+        server.stop()
+    }
+
+    def "responds with the same output as a command line run"() {
+        given:
+        File srcPath = new File(new File(".").getCanonicalPath(), "src/test/resources/org/jasome/resolver")
+
+        Project project = new FileScanner(srcPath).scan()
+        ProcessorFactory.getProcessor().process(project)
+        StringWriter expected = new StringWriter()
+        CommandLineExecutive.writeXml(new XMLOutputter().output(project), new StreamResult(expected))
+
+        when:
+        HttpURLConnection connection = request("/analyze?path=" + URLEncoder.encode(srcPath.path, "UTF-8"))
+
+        then:
+        connection.responseCode == 200
+        withoutParseTime(connection.inputStream.getText("UTF-8")) == withoutParseTime(expected.toString())
+    }
+
+    def "rejects requests without an existing absolute path"() {
+        when:
+        HttpURLConnection connection = request("/analyze?path=" + URLEncoder.encode(path, "UTF-8"))
+
+        then:
+        connection.responseCode == 400
+
+        where:
+        path << ["relative/path", "/no/such/directory/anywhere"]
+    }
+
+    def "only lets the owner read the token"() {
+        expect:
+        PosixFilePermissions.toString(java.nio.file.Files.getPosixFilePermissions(server.tokenFile.toPath())) == "rw-------"
+        server.tokenFile.text ==~ /[0-9a-f]{64}/
+    }
+
+    def "rejects requests without the right token"() {
+        given:
+        File srcPath = new File(new File(".").getCanonicalPath(), "src/test/resources/org/jasome/resolver")
+
+        when:
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.port + "/analyze?path=" + URLEncoder.encode(srcPath.path, "UTF-8")).openConnection()
+        if (token != null) connection.setRequestProperty(AnalysisServer.TOKEN_HEADER, token)
+
+        then:
+        connection.responseCode == 403
+
+        where:
+        token << [null, "", "not hex", "0" * 64]
+    }
+
+    def "rejects requests addressed to any other host"() {
+        when:
+        String response = rawRequest("POST /shutdown HTTP/1.1", "Host: attacker.example:" + server.port)
+
+        then:
+        response.startsWith("HTTP/1.1 403")
+
+        when:
+        response = rawRequest("POST /shutdown HTTP/1.1", "Host: localhost:" + server.port)
+
+        then:
+        response.startsWith("HTTP/1.1 200")
+    }
+
+    def "brings a project analyzed earlier up to date with the files changed since"() {
+        given:
+        File srcPath = Files.createTempDir()
+        write(srcPath, "lib/Library.java", "package lib; public class Library { public int answer(int x) { return 42; } }")
+        write(srcPath, "lib/Unused.java", "package lib; public class Unused { }")
+        write(srcPath, "app/Client.java", "package app; import lib.Library; public class Client { public int run() { return new Library().answer(1); } }")
+
+        when:
+        HttpURLConnection first = request("/analyze?path=" + URLEncoder.encode(srcPath.path, "UTF-8"))
+
+        then:
+        first.responseCode == 200
+        first.inputStream.getText("UTF-8").contains('name="Unused"')
+
+        when:
+        write(srcPath, "lib/Library.java", "package lib; public class Library { public int answer(int x) { if (x > 0) { return 42; } return 0; } }")
+        new File(srcPath, "lib/Library.java").setLastModified(System.currentTimeMillis() + 10000)
+        new File(srcPath, "lib/Unused.java").delete()
+        write(srcPath, "app/Other.java", "package app; public class Other { }")
+
+        HttpURLConnection second = request("/analyze?path=" + URLEncoder.encode(srcPath.path, "UTF-8"))
+
+        Project freshProject = new FileScanner(srcPath).scan()
+        ProcessorFactory.getProcessor().process(freshProject)
+        StringWriter expected = new StringWriter()
+        CommandLineExecutive.writeXml(new XMLOutputter().output(freshProject), new StreamResult(expected))
+
+        then:
+        second.responseCode == 200
+        withoutProjectAttributes(second.inputStream.getText("UTF-8")) == withoutProjectAttributes(expected.toString())
+    }
+
+    private HttpURLConnection request(String path) {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + server.port + path).openConnection()
+        connection.setRequestProperty(AnalysisServer.TOKEN_HEADER, server.tokenFile.text)
+        return connection
+    }
+
+    //HttpURLConnection won't send a Host header of its own choosing
+    private String rawRequest(String requestLine, String hostHeader) {
+        Socket socket = new Socket("127.0.0.1", server.port)
+        try {
+            socket.outputStream.write((requestLine + "\r\n" + hostHeader + "\r\n" + AnalysisServer.TOKEN_HEADER + ": " + server.tokenFile.text + "\r\nContent-Length: 0\r\nConnection: close\r\n\r\n").getBytes("US-ASCII"))
+            socket.outputStream.flush()
+            return socket.inputStream.getText("US-ASCII")
+        } finally {
+            socket.close()
+        }
+    }
+
+    private static void write(File directory, String path, String contents) {
+        File file = new File(directory, path)
+        file.parentFile.mkdirs()
+        file.text = contents
+    }
+
+    //Statistics about the parse are kept from the first scan of a project, the rest has to match a fresh scan
+    private static String withoutProjectAttributes(String output) {
+        output.replaceAll(/<Project [^>]*>/, "<Project>")
+    }
+
+    //How long parsing took is the one thing that differs between two runs
+    private static String withoutParseTime(String output) {
+        output.replaceAll(/ parseTime="\d+"/, "")
+    }
+}
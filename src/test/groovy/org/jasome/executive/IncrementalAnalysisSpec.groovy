@@ -0,0 +1,162 @@
+package org.jasome.executive
+
+import com.google.common.io.Files
+import org.jasome.input.FileScanner
+import org.jasome.input.Project
+import org.jasome.output.XMLOutputter
+import org.w3c.dom.Document
+import org.w3c.dom.Element
+import spock.lang.Specification
+
+class IncrementalAnalysisSpec extends Specification {
+
+    File repository
+
+    def setup() {
+        repository = Files.createTempDir()
+        git("init", "-q")
+        git("config", "user.email", "jasome@example.com")
+        git("config", "user.name", "Jasome")
+
+        //A uses B and B uses C, so C is two steps away from A
+        write("p/A.java", '''
+            package p;
+            public class A {
+                private B b = new B();
+                public int go() { return b.go(); }
+            }
+        ''')
+        write("p/B.java", '''
+            package p;
+            public class B {
+                private C c = new C();
+                public int go() { return c.go(); }
+            }
+        ''')
+        write("p/C.java", '''
+            package p;
+            public class C {
+                public int go() { return 1; }
+            }
+        ''')
+        git("add", "-A")
+        git("commit", "-q", "-m", "Initial")
+    }
+
+    def "recalculates the changed type and keeps package and project metrics from the earlier output"() {
+        given:
+        Document previous = analyze()
+        Map<String, String> previousMetricsOfA = metricsOf(classElement(previous, "p", "A"))
+        Map<String, String> previousMetricsOfC = metricsOf(classElement(previous, "p", "C"))
+        Map<String, String> previousPackageMetrics = metricsOf(packageElement(previous, "p"))
+        Map<String, String> previousProjectMetrics = metricsOf(previous.documentElement)
+
+        write("p/A.java", '''
+            package p;
+            public class A {
+                private B b = new B();
+                public int go() { return b.go(); }
+                public int goTwice() {
+                    if (b.go() > 0) {
+                        return b.go() + b.go();
+                    }
+                    return 0;
+                }
+            }
+        ''')
+
+        when:
+        Document merged = new IncrementalAnalysis(repository, "HEAD").run(new FileScanner(repository), ProcessorFactory.getProcessor(), Optional.of(previous))
+
+        then:
+        merged.documentElement.getAttribute("changedSince") == "HEAD"
+        metricsOf(classElement(merged, "p", "A")) == metricsOf(classElement(analyze(), "p", "A"))
+        metricsOf(classElement(merged, "p", "A")) != previousMetricsOfA
+        metricsOf(classElement(merged, "p", "C")) == previousMetricsOfC
+        metricsOf(packageElement(merged, "p")) == previousPackageMetrics
+        metricsOf(merged.documentElement) == previousProjectMetrics
+    }
+
+    def "replaces the classes of renamed files"() {
+        given:
+        Document previous = analyze()
+
+        git("mv", "p/C.java", "p/D.java")
+        write("p/D.java", '''
+            package p;
+            public class D {
+                public int go() { return 1; }
+            }
+        ''')
+        write("p/B.java", '''
+            package p;
+            public class B {
+                private D d = new D();
+                public int go() { return d.go(); }
+            }
+        ''')
+
+        when:
+        Document merged = new IncrementalAnalysis(repository, "HEAD").run(new FileScanner(repository), ProcessorFactory.getProcessor(), Optional.of(previous))
+
+        then:
+        classNames(merged) == ["A", "B", "D"]
+        metricsOf(classElement(merged, "p", "B")) == metricsOf(classElement(analyze(), "p", "B"))
+        metricsOf(classElement(merged, "p", "D")) == metricsOf(classElement(analyze(), "p", "D"))
+    }
+
+    def "reports the changed types without an earlier output"() {
+        given:
+        write("p/C.java", '''
+            package p;
+            public class C {
+                public int go() { return 2; }
+                public int stop() { return 0; }
+            }
+        ''')
+
+        when:
+        Document merged = new IncrementalAnalysis(repository, "HEAD").run(new FileScanner(repository), ProcessorFactory.getProcessor(), Optional.empty())
+
+        then:
+        metricsOf(classElement(merged, "p", "C")) == metricsOf(classElement(analyze(), "p", "C"))
+    }
+
+    private Document analyze() {
+        Project project = new FileScanner(repository).scan()
+        ProcessorFactory.getProcessor().process(project)
+        return new XMLOutputter().output(project)
+    }
+
+    private static Element packageElement(Document document, String name) {
+        return document.getElementsByTagName("Package").find { it.getAttribute("name") == name } as Element
+    }
+
+    private static Element classElement(Document document, String packageName, String name) {
+        return packageElement(document, packageName).getElementsByTagName("Class").find { it.getAttribute("name") == name } as Element
+    }
+
+    private static List<String> classNames(Document document) {
+        return document.getElementsByTagName("Class").collect { it.getAttribute("name") }.sort()
+    }
+
+    //The element's own metrics, not those of the code inside it
+    private static Map<String, String> metricsOf(Element element) {
+        Element metrics = element.childNodes.find { it instanceof Element && it.tagName == "Metrics" } as Element
+        if (metrics == null) return [:]
+
+        return metrics.childNodes.findAll { it instanceof Element }.collectEntries { [(it.getAttribute("name")): it.getAttribute("value")] }
+    }
+
+    private void write(String path, String source) {
+        File file = new File(repository, path)
+        file.parentFile.mkdirs()
+        file.text = source.stripIndent()
+    }
+
+    private void git(String... arguments) {
+        Process process = new ProcessBuilder(["git", "-C", repository.path] + arguments.toList()).redirectErrorStream(true).start()
+        String output = process.inputStream.text
+        assert process.waitFor() == 0, output
+    }
+}
@@ -0,0 +1,85 @@
+package org.jasome.executive
+
+import com.google.common.io.Files
+import org.jasome.input.FileScanner
+import org.jasome.input.Method
+import org.jasome.input.Package
+import org.jasome.input.Processor
+import org.jasome.input.Project
+import org.jasome.input.Type
+import spock.lang.Specification
+
+class ProjectWatcherSpec extends Specification {
+
+    File sourceDir
+
+    def setup() {
+        sourceDir = Files.createTempDir()
+
+        write("shapes/Shape.java", '''
+            package shapes;
+            public abstract class Shape {
+                protected int sides;
+                public abstract double area();
+                public int getSides() { return sides; }
+            }
+        ''')
+        write("shapes/Square.java", '''
+            package shapes;
+            public class Square extends Shape {
+                private double length;
+                public double area() { return length * length; }
+            }
+        ''')
+        write("app/Drawing.java", '''
+            package app;
+            import shapes.Square;
+            public class Drawing {
+                public double draw() { return new Square().area(); }
+            }
+        ''')
+    }
+
+    def "updates the metrics of unchanged types to match a fresh scan when an inheritance edge is removed"() {
+        given:
+        Processor processor = ProcessorFactory.getProcessor()
+        FileScanner scanner = new FileScanner(sourceDir)
+        Project project = scanner.scan()
+        processor.process(project)
+
+        when:
+        write("shapes/Square.java", '''
+            package shapes;
+            public class Square {
+                private double length;
+                public double area() { return length * length; }
+            }
+        ''')
+        ProjectWatcher.update(sourceDir, scanner, processor, project, [new File(sourceDir, "shapes/Square.java")] as Set, [] as Set)
+
+        then:
+        describe(project) == describe(analyze())
+    }
+
+    private Project analyze() {
+        Project project = new FileScanner(sourceDir).scan()
+        ProcessorFactory.getProcessor().process(project)
+        return project
+    }
+
+    private void write(String path, String source) {
+        File file = new File(sourceDir, path)
+        file.parentFile.mkdirs()
+        file.text = source.stripIndent()
+    }
+
+    private static List<String> describe(Project project) {
+        [project.getMetrics().collect { it.name + "=" + it.value }.sort().toString()] + project.getPackages().collectMany { Package pkg ->
+            [pkg.name + " " + pkg.getMetrics().collect { it.name + "=" + it.value }.sort()] + pkg.getTypes().collectMany { Type type ->
+                [pkg.name + "." + type.name + " " + type.getMetrics().collect { it.name + "=" + it.value }.sort()] + type.getMethods().collect { Method method ->
+                    pkg.name + "." + type.name + "#" + method.name + " " + method.getMetrics().collect { it.name + "=" + it.value }.sort()
+                }
+            }
+        }.sort()
+    }
+}
@@ -0,0 +1,91 @@
+package org.jasome.input
+
+import com.google.common.io.Files
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream
+import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream
+import spock.lang.Specification
+
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class ArchiveScannerSpec extends Specification {
+
+    File srcPath = new File(new File(".").getCanonicalPath(), "src/test/resources/org/jasome/resolver")
+
+    def "scans a source jar the same as the extracted sources"() {
+        given:
+        File jar = new File(Files.createTempDir(), "resolver-sources.jar")
+        new ZipOutputStream(new FileOutputStream(jar)).withCloseable { zip ->
+            sourceFiles().each { String path, File file ->
+                zip.putNextEntry(new ZipEntry(path))
+                zip.write(file.bytes)
+                zip.closeEntry()
+            }
+        }
+
+        when:
+        Project project = new ArchiveScanner(jar).scan()
+
+        then:
+        describe(project) == describe(new FileScanner(srcPath).scan())
+        project.getAttributes().get("sourceDir") == jar.absolutePath
+    }
+
+    def "scans a gzipped tarball the same as the extracted sources"() {
+        given:
+        File tarball = new File(Files.createTempDir(), "resolver.tar.gz")
+        new TarArchiveOutputStream(new GzipCompressorOutputStream(new FileOutputStream(tarball))).withCloseable { tar ->
+            tar.putArchiveEntry(new TarArchiveEntry("README.txt").with { size = 5; it })
+            tar.write("hello".bytes)
+            tar.closeArchiveEntry()
+
+            sourceFiles().each { String path, File file ->
+                TarArchiveEntry entry = new TarArchiveEntry("./" + path)
+                entry.size = file.length()
+                tar.putArchiveEntry(entry)
+                tar.write(file.bytes)
+                tar.closeArchiveEntry()
+            }
+        }
+
+        when:
+        Project project = new ArchiveScanner(tarball).scan()
+
+        then:
+        describe(project) == describe(new FileScanner(srcPath).scan())
+    }
+
+    def "refuses archives without any source files"() {
+        given:
+        File jar = new File(Files.createTempDir(), "empty.jar")
+        new ZipOutputStream(new FileOutputStream(jar)).withCloseable { zip ->
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"))
+            zip.closeEntry()
+        }
+
+        when:
+        new ArchiveScanner(jar).scan()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    private Map<String, File> sourceFiles() {
+        Map<String, File> files = [:]
+        srcPath.eachFileRecurse { File file ->
+            if (file.name.endsWith(".java")) {
+                files[srcPath.toURI().relativize(file.toURI()).path] = file
+            }
+        }
+        return files
+    }
+
+    private static List<String> describe(Project project) {
+        project.getPackages().collectMany { Package pkg ->
+            pkg.getTypes().collect { Type type ->
+                pkg.name + "." + type.name + " " + type.getAttributes() + " " + type.getMethods()*.name.sort()
+            }
+        }.sort()
+    }
+}
@@ -0,0 +1,99 @@
+package org.jasome.input
+
+import com.google.common.io.Files
+import spock.lang.Specification
+
+import java.util.jar.JarEntry
+import java.util.jar.JarOutputStream
+
+import static org.jasome.util.TestUtil.augmentProjectMetaclass
+
+class ClasspathIndexSpec extends Specification {
+
+    File workDir = Files.createTempDir()
+
+    def setup() {
+        augmentProjectMetaclass()
+    }
+
+    def "indexes the classes in a jar by their source name"() {
+        given:
+        File jar = jarOf(Specification)
+
+        when:
+        ClasspathIndex index = ClasspathIndex.open([jar], new File(workDir, "index"))
+
+        then:
+        index.binaryNameOf("spock.lang.Specification") == Optional.of("spock.lang.Specification")
+        !index.binaryNameOf("spock.lang.Missing").isPresent()
+        !index.binaryNameOf("spock").isPresent()
+        !index.binaryNameOf("spock.lang.Specification.1").isPresent()
+
+        cleanup:
+        index?.close()
+    }
+
+    def "keeps the index on disk and reuses it until the classpath changes"() {
+        given:
+        File indexDir = new File(workDir, "index")
+        File jar = jarOf(String)
+        ClasspathIndex.open([jar], indexDir).close()
+        File indexFile = indexDir.listFiles().find { it.name.endsWith(".idx") }
+        long builtAt = indexFile.lastModified()
+
+        when:
+        ClasspathIndex reopened = ClasspathIndex.open([jar], indexDir)
+
+        then:
+        indexDir.listFiles().findAll { it.name.endsWith(".idx") } == [indexFile]
+        indexFile.lastModified() == builtAt
+        reopened.binaryNameOf("java.lang.String") == Optional.of("java.lang.String")
+
+        when:
+        jarOf(Map, Map.Entry)
+        ClasspathIndex rebuilt = ClasspathIndex.open([jar], indexDir)
+
+        then:
+        rebuilt.binaryNameOf("java.util.Map.Entry") == Optional.of("java.util.Map\$Entry")
+        !rebuilt.binaryNameOf("java.lang.String").isPresent()
+
+        cleanup:
+        reopened?.close()
+        rebuilt?.close()
+    }
+
+    def "resolves library types used by the scanned sources"() {
+        given:
+        File sources = new File(workDir, "src")
+        new File(sources, "app").mkdirs()
+        new File(sources, "app/Lister.java").text = "package app; public class Lister extends com.google.common.collect.ForwardingList<String> { protected java.util.List<String> delegate() { return null; } }"
+
+        File guava = new File(com.google.common.collect.ForwardingList.protectionDomain.codeSource.location.toURI())
+
+        FileScanner scanner = new FileScanner(sources)
+        scanner.setClasspathIndex(ClasspathIndex.open([guava], new File(workDir, "index")))
+
+        when:
+        Project project = scanner.scan()
+        def superclass = project.locateType("Lister").getSource().getExtendedTypes(0).resolve()
+
+        then:
+        superclass.getQualifiedName() == "com.google.common.collect.ForwardingList"
+        superclass.getAllAncestors().collect { it.getQualifiedName() }.contains("java.util.List")
+    }
+
+    private File jarOf(Class... classes) {
+        File jar = new File(workDir, "classes.jar")
+        new JarOutputStream(new FileOutputStream(jar)).withCloseable { out ->
+            classes.each { Class type ->
+                out.putNextEntry(new JarEntry(type.name.replace('.', '/') + ".class"))
+                out.write(type.getResourceAsStream("/" + type.name.replace('.', '/') + ".class").bytes)
+                out.closeEntry()
+            }
+            out.putNextEntry(new JarEntry("spock/lang/Specification\$1.class"))
+            out.write(new byte[0])
+            out.closeEntry()
+        }
+        return jar
+    }
+}
@@ -0,0 +1,92 @@
+package org.jasome.input
+
+import com.google.common.io.Files
+import spock.lang.Specification
+
+class GitChangeSetSpec extends Specification {
+
+    File repository
+
+    def setup() {
+        repository = Files.createTempDir()
+        git("init", "-q")
+        git("config", "user.email", "jasome@example.com")
+        git("config", "user.name", "Jasome")
+
+        write("p/Kept.java", "package p; public class Kept { }")
+        write("p/Modified.java", "package p; public class Modified { }")
+        write("p/Deleted.java", "package p; public class Deleted { }")
+        write("p/Renamed.java", "package p; public class Renamed { }")
+        write("README.txt", "Not source code")
+        git("add", "-A")
+        git("commit", "-q", "-m", "Initial")
+    }
+
+    def "finds nothing when the working tree matches the revision"() {
+        when:
+        GitChangeSet changes = GitChangeSet.since(repository, "HEAD")
+
+        then:
+        changes.isEmpty()
+    }
+
+    def "finds modified, added, deleted, renamed and untracked files"() {
+        given:
+        write("p/Modified.java", "package p; public class Modified { int x; }")
+        write("p/Added.java", "package p; public class Added { }")
+        git("add", "p/Added.java")
+        git("rm", "-q", "p/Deleted.java")
+        git("mv", "p/Renamed.java", "p/NewName.java")
+        write("p/Untracked.java", "package p; public class Untracked { }")
+        write("README.txt", "Still not source code")
+
+        when:
+        GitChangeSet changes = GitChangeSet.since(repository, "HEAD")
+
+        then:
+        names(changes.getChangedFiles()) == ["Added.java", "Modified.java", "NewName.java", "Untracked.java"]
+        names(changes.getDeletedFiles()) == ["Deleted.java", "Renamed.java"]
+    }
+
+    def "finds renames that were committed since the revision"() {
+        given:
+        git("mv", "p/Renamed.java", "p/NewName.java")
+        git("commit", "-q", "-m", "Rename")
+
+        when:
+        GitChangeSet changes = GitChangeSet.since(repository, "HEAD~1")
+
+        then:
+        names(changes.getChangedFiles()) == ["NewName.java"]
+        names(changes.getDeletedFiles()) == ["Renamed.java"]
+    }
+
+    def "gives paths relative to a subdirectory of the work tree"() {
+        given:
+        write("p/Modified.java", "package p; public class Modified { int x; }")
+        write("q/Other.java", "package q; public class Other { }")
+
+        when:
+        GitChangeSet changes = GitChangeSet.since(new File(repository, "p"), "HEAD")
+
+        then:
+        changes.getChangedFiles() == [new File(repository, "p/Modified.java").absoluteFile] as Set
+        changes.getDeletedFiles().isEmpty()
+    }
+
+    private static List<String> names(Set<File> files) {
+        files.collect { it.name }.sort()
+    }
+
+    private void write(String path, String source) {
+        File file = new File(repository, path)
+        file.parentFile.mkdirs()
+        file.text = source
+    }
+
+    private void git(String... arguments) {
+        Process process = new ProcessBuilder(["git", "-C", repository.path] + arguments.toList()).redirectErrorStream(true).start()
+        String output = process.inputStream.text
+        assert process.waitFor() == 0, output
+    }
+}
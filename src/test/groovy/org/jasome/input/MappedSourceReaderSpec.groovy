@@ -0,0 +1,73 @@
+package org.jasome.input
+
+import com.google.common.io.Files
+import spock.lang.Specification
+
+import java.nio.charset.Charset
+import java.nio.charset.StandardCharsets
+
+class MappedSourceReaderSpec extends Specification {
+
+    def "decodes using the configured encoding when there is no byte order mark"() {
+        given:
+        File source = writeSource([] as byte[], "class Caf\u00e9 {}", StandardCharsets.ISO_8859_1)
+
+        expect:
+        read(source, StandardCharsets.ISO_8859_1) == "class Caf\u00e9 {}"
+    }
+
+    def "byte order marks override the configured encoding and are not passed to the parser"() {
+        given:
+        File source = writeSource(bom as byte[], "class Caf\u00e9 {}", charset)
+
+        expect:
+        read(source, StandardCharsets.ISO_8859_1) == "class Caf\u00e9 {}"
+
+        where:
+        bom                      | charset
+        [0xEF, 0xBB, 0xBF]       | StandardCharsets.UTF_8
+        [0xFE, 0xFF]             | StandardCharsets.UTF_16BE
+        [0xFF, 0xFE]             | StandardCharsets.UTF_16LE
+    }
+
+    def "reuses its buffer across files without leaking earlier contents"() {
+        given:
+        File longSource = writeSource([] as byte[], "class SomethingWithAVeryLongName {}", StandardCharsets.UTF_8)
+        File shortSource = writeSource([] as byte[], "class A {}", StandardCharsets.UTF_8)
+
+        expect:
+        read(longSource, StandardCharsets.UTF_8) == "class SomethingWithAVeryLongName {}"
+        read(shortSource, StandardCharsets.UTF_8) == "class A {}"
+    }
+
+    def "maps only files too large to read into the reused buffer"() {
+        given:
+        String padding = "//" + ("x" * 100) + "\n"
+        String contents = (padding * (MappedSourceReader.MAPPING_THRESHOLD.intdiv(padding.length()) + 1)) + "class Large {}"
+        File largeSource = writeSource([] as byte[], contents, StandardCharsets.UTF_8)
+        File smallSource = writeSource([] as byte[], "class Small {}", StandardCharsets.UTF_8)
+
+        expect:
+        largeSource.length() > MappedSourceReader.MAPPING_THRESHOLD
+        read(largeSource, StandardCharsets.UTF_8) == contents
+        read(smallSource, StandardCharsets.UTF_8) == "class Small {}"
+    }
+
+    private static File writeSource(byte[] bom, String contents, Charset charset) {
+        File source = new File(Files.createTempDir(), "Source.java")
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream()
+        bytes.write(bom)
+        bytes.write(contents.getBytes(charset))
+        source.bytes = bytes.toByteArray()
+        return source
+    }
+
+    private static String read(File source, Charset charset) {
+        Reader reader = new MappedSourceReader(source.toPath(), charset).open()
+        try {
+            return reader.text
+        } finally {
+            reader.close()
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.jasome.input
+
+import com.google.common.io.Files
+import org.jasome.metrics.calculators.CyclomaticComplexityCalculator
+import org.jasome.metrics.calculators.LinkCalculator
+import org.jasome.metrics.calculators.WeightedMethodsCalculator
+import spock.lang.Specification
+
+class MetricsCacheSpec extends Specification {
+
+    File sourceDir
+    File cacheDir
+
+    def setup() {
+        sourceDir = Files.createTempDir()
+        cacheDir = Files.createTempDir()
+
+        write("Library.java", '''
+        package org.example.lib;
+
+        public class Library {
+            public int answer(int x) {
+                if (x > 0) {
+                    return 42;
+                }
+                return 0;
+            }
+        }
+        ''')
+
+        write("Client.java", '''
+        package org.example.app;
+
+        import org.example.lib.Library;
+
+        public class Client {
+            public int run() {
+                return new Library().answer(1);
+            }
+        }
+        ''')
+
+        write("Unrelated.java", '''
+        package org.example.app;
+
+        public class Unrelated {
+            public void nothing() {
+            }
+        }
+        ''')
+    }
+
+    def "restores every type when nothing has changed"() {
+        given:
+        Project firstRun = analyze()
+
+        when:
+        Project secondRun = analyze()
+
+        then:
+        firstRun.getAttributes().get("cacheHitRatio") == "0.000"
+        secondRun.getAttributes().get("cacheHitRatio") == "1.000"
+        metricsOf(secondRun) == metricsOf(firstRun)
+    }
+
+    def "recalculates changed types and the types that depend on them"() {
+        given:
+        analyze()
+
+        when:
+        write("Library.java", '''
+        package org.example.lib;
+
+        public class Library {
+            public int answer(int x) {
+                if (x > 0 && x < 10) {
+                    return 42;
+                }
+                return 0;
+            }
+        }
+        ''')
+        Project secondRun = analyze()
+
+        then:
+        secondRun.getAttributes().get("cacheHitRatio") == "0.333"
+        metricsOf(secondRun)["org.example.lib.Library"]["WMC"] == "3"
+    }
+
+    def "doesn't read files again when their size and modification time haven't changed"() {
+        given:
+        File library = new File(sourceDir, "Library.java")
+        long lastModified = System.currentTimeMillis() - 60000
+        sourceDir.listFiles().each { it.setLastModified(lastModified) }
+        analyze()
+
+        when:
+        //Same size and modification time, so only reading the file would show that it changed
+        library.text = library.text.replace("x > 0", "x < 0")
+        library.setLastModified(lastModified)
+        Project secondRun = analyze()
+
+        then:
+        secondRun.getAttributes().get("cacheHitRatio") == "1.000"
+    }
+
+    def "reads files again when their modification time changed but keeps their types if the contents didn't"() {
+        given:
+        sourceDir.listFiles().each { it.setLastModified(System.currentTimeMillis() - 60000) }
+        analyze()
+
+        when:
+        new File(sourceDir, "Library.java").setLastModified(System.currentTimeMillis())
+        Project secondRun = analyze()
+
+        then:
+        secondRun.getAttributes().get("cacheHitRatio") == "1.000"
+    }
+
+    def "reads files modified too recently to tell changes apart by modification time"() {
+        given:
+        File library = new File(sourceDir, "Library.java")
+        analyze()
+        long lastModified = library.lastModified()
+
+        when:
+        library.text = library.text.replace("x > 0", "x < 0")
+        library.setLastModified(lastModified)
+        Project secondRun = analyze()
+
+        then:
+        secondRun.getAttributes().get("cacheHitRatio") == "0.333"
+    }
+
+    def "restores the types of files that have copies listed as their aliases"() {
+        given:
+        new File(sourceDir, "copy").mkdirs()
+        new File(sourceDir, "copy/Library.java").text = new File(sourceDir, "Library.java").text
+        Project firstRun = analyze(true)
+
+        when:
+        Project secondRun = analyze(true)
+
+        then:
+        secondRun.getAttributes().get("cacheHitRatio") == "1.000"
+        metricsOf(secondRun) == metricsOf(firstRun)
+        secondRun.getPackages().find { it.name == "org.example.lib" }.getTypes()[0].getAttributes().get("aliases") == "./copy/Library.java"
+    }
+
+    private Project analyze(boolean deduplicate = false) {
+        Processor processor = new Processor()
+        processor.registerMethodCalculator(new CyclomaticComplexityCalculator())
+        processor.registerTypeCalculator(new WeightedMethodsCalculator())
+        processor.registerTypeCalculator(new LinkCalculator())
+        processor.setMetricsCache(new MetricsCache(cacheDir, "test"))
+
+        FileScanner scanner = new FileScanner(sourceDir)
+        scanner.setDeduplicate(deduplicate)
+        Project project = scanner.scan()
+        processor.process(project)
+        return project
+    }
+
+    private void write(String fileName, String source) {
+        new File(sourceDir, fileName).text = source.stripIndent().trim()
+    }
+
+    private static Map<String, Map<String, String>> metricsOf(Project project) {
+        project.getPackages().collectMany { it.getTypes() }.collectEntries { Type type ->
+            [(type.getParentPackage().name + "." + type.name): type.getMetrics().collectEntries { [(it.name): it.formattedValue] }]
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package org.jasome.input
+
+import com.github.javaparser.ast.CompilationUnit
+import com.google.common.collect.ImmutableSetMultimap
+import com.google.common.collect.SetMultimap
+import org.jasome.metrics.Calculator
+import org.jasome.metrics.Metric
+import org.jasome.metrics.calculators.ClassInheritanceCalculator
+import org.jasome.metrics.calculators.CyclomaticComplexityCalculator
+import org.jasome.metrics.calculators.LinkCalculator
+import org.jasome.metrics.calculators.NumberOfClassesCalculator
+import org.jasome.metrics.calculators.RobertMartinCouplingCalculator
+import org.jasome.metrics.calculators.TotalLinesOfCodeCalculator
+import org.jasome.metrics.calculators.WeightedMethodsCalculator
+import spock.lang.Specification
+
+import java.lang.ref.WeakReference
+
+import static org.jasome.util.TestUtil.projectFromSnippet
+
+class ProcessorSpec extends Specification {
+
+    File srcPath = new File(new File(".").getCanonicalPath(), "src/test/resources/org/jasome")
+
+    def "calculates the same metrics when sources are released afterwards"() {
+        given:
+        Project kept = new FileScanner(srcPath).scan()
+        Project released = new FileScanner(srcPath).scan()
+
+        Processor releasingProcessor = processor()
+        releasingProcessor.setReleaseSources(true)
+
+        when:
+        processor().process(kept)
+        releasingProcessor.process(released)
+
+        then:
+        describe(released) == describe(kept)
+    }
+
+    def "keeps only names, attributes and metrics once sources are released"() {
+        given:
+        Project project = new FileScanner(srcPath).scan()
+        Type type = project.getPackages().collectMany { it.getTypes() }.find { !it.getMethods().isEmpty() }
+        Method method = type.getMethods().first()
+
+        Processor processor = processor()
+        processor.setReleaseSources(true)
+
+        when:
+        processor.process(project)
+
+        then:
+        type.getAttributes().containsKey("lineStart")
+        method.getAttributes().containsKey("lineEnd")
+        !type.getMetrics().isEmpty()
+        project.getSymbolSolver() == null
+
+        when:
+        type.getSource()
+
+        then:
+        thrown(IllegalStateException)
+
+        when:
+        method.getSource()
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    def "lets released sources be garbage collected"() {
+        given:
+        Project project = new FileScanner(srcPath).scan()
+        WeakReference<CompilationUnit> compilationUnit = new WeakReference<>(project.getPackages().first().getTypes().first().getSource().findCompilationUnit().get())
+
+        Processor processor = processor()
+        processor.setReleaseSources(true)
+
+        when:
+        processor.process(project)
+        for (int i = 0; i < 10 && compilationUnit.get() != null; i++) {
+            System.gc()
+            Thread.sleep(50)
+        }
+
+        then:
+        compilationUnit.get() == null
+    }
+
+    def "runs calculators after the calculators whose metrics they consume"() {
+        given:
+        Project project = projectFromSnippet('''
+            package org.example;
+            class A {
+                public void a() { }
+                public void b() { }
+            }
+            class B { }
+        ''')
+
+        Processor processor = new Processor()
+        processor.registerProjectCalculator(new Declared<Project>(["Packages"], [(Package.class): "Types"], { Project p -> p.getPackages().sum { it.getMetric("Types").get().value.longValue() } }))
+        processor.registerPackageCalculator(new Declared<Package>(["Types"], [(Type.class): "Total"], { Package p -> p.getTypes().sum { it.getMetric("Total").get().value.longValue() } }))
+        processor.registerTypeCalculator(new Declared<Type>(["Total"], [(Method.class): "One", (Type.class): "Slow"], { Type t -> t.getMethods().sum(0) { it.getMetric("One").get().value.longValue() } + t.getMetric("Slow").get().value.longValue() }))
+        processor.registerTypeCalculator(new Declared<Type>(["Slow"], [:], { Type t -> Thread.sleep(100); 10 }))
+        processor.registerMethodCalculator(new Declared<Method>(["One"], [:], { Method m -> 1 }))
+
+        when:
+        processor.process(project)
+
+        then:
+        project.getMetric("Packages").get().value.longValue() == 22
+        project.locateType("A").getMetric("Total").get().value.longValue() == 12
+        project.locateType("B").getMetric("Total").get().value.longValue() == 10
+    }
+
+    def "keeps the metric of the last registered calculator when two produce it"() {
+        given:
+        Project project = projectFromSnippet('''
+            package org.example;
+            class A { }
+        ''')
+
+        Processor processor = new Processor()
+        processor.registerTypeCalculator(new Declared<Type>(["Count"], [:], { Type t -> Thread.sleep(100); 1 }))
+        processor.registerTypeCalculator(new Declared<Type>(["Count"], [:], { Type t -> 2 }))
+        processor.registerTypeCalculator(new Declared<Type>(["Doubled"], [(Type.class): "Count"], { Type t -> t.getMetric("Count").get().value.longValue() * 2 }))
+
+        when:
+        processor.process(project)
+
+        then:
+        project.locateType("A").getMetric("Count").get().value.longValue() == 2
+        project.locateType("A").getMetric("Doubled").get().value.longValue() == 4
+    }
+
+    def "refuses calculators whose metrics can't all be calculated first"() {
+        given:
+        Processor processor = new Processor()
+        calculators.each { level, calculator -> processor."register${level}Calculator"(calculator) }
+
+        when:
+        processor.checkDependencies()
+
+        then:
+        IllegalStateException e = thrown()
+        e.message.contains(message)
+
+        where:
+        calculators                                                                            | message
+        [Type: new WeightedMethodsCalculator()]                                                | "consumes VG of Method, but no registered calculator produces it"
+        [Type: new Declared<Type>(["A"], [(Type.class): "B"], { 0 }),
+         Package: new Declared<Package>(["B"], [:], { 0 })]                                    | "consumes B of Type, but no registered calculator produces it"
+        [Method: new Declared<Method>(["A"], [(Type.class): "B"], { 0 }),
+         Type: new Declared<Type>(["B"], [:], { 0 })]                                          | "consumes B of Type, which is only calculated after every Method"
+    }
+
+    def "refuses calculators that consume each other's metrics"() {
+        given:
+        Processor processor = new Processor()
+        processor.registerTypeCalculator(new Declared<Type>(["A"], [(Type.class): "B"], { 0 }))
+        processor.registerTypeCalculator(new Declared<Type>(["B"], [(Type.class): "A"], { 0 }))
+        processor.registerTypeCalculator(new Declared<Type>(["C"], [:], { 0 }))
+
+        when:
+        processor.process(projectFromSnippet("package org.example; class A { }"))
+
+        then:
+        IllegalStateException e = thrown()
+        e.message.startsWith("Calculators consume each other's metrics")
+    }
+
+    def "calculates the same metrics on one thread as on many"() {
+        given:
+        Project singleThreaded = new FileScanner(srcPath).scan()
+        Project multiThreaded = new FileScanner(srcPath).scan()
+
+        Processor singleThreadedProcessor = processor()
+        singleThreadedProcessor.setThreads(1)
+        Processor multiThreadedProcessor = processor()
+        multiThreadedProcessor.setThreads(8)
+
+        when:
+        singleThreadedProcessor.process(singleThreaded)
+        multiThreadedProcessor.process(multiThreaded)
+
+        then:
+        describe(singleThreaded) == describe(multiThreaded)
+    }
+
+    def "runs every calculator on the calling thread, in the same order, with one thread"() {
+        given:
+        Project project = projectFromSnippet('''
+            package org.example;
+            class B {
+                public void b() { }
+                public void a() { }
+            }
+            class A { }
+        ''')
+
+        List<String> calculated = []
+        Set<Thread> threads = [] as Set
+        Processor processor = new Processor()
+        processor.registerMethodCalculator(new Declared<Method>(["M"], [:], { Method m -> calculated << m.getName(); threads << Thread.currentThread(); 0 }))
+        processor.registerTypeCalculator(new Declared<Type>(["T"], [:], { Type t -> calculated << t.getName(); threads << Thread.currentThread(); 0 }))
+        processor.registerPackageCalculator(new Declared<Package>(["P"], [:], { Package p -> calculated << p.getName(); threads << Thread.currentThread(); 0 }))
+        processor.setThreads(1)
+
+        when:
+        processor.process(project)
+
+        then:
+        calculated == ["A", "public void a()", "public void b()", "B", "org.example"]
+        threads == [Thread.currentThread()] as Set
+    }
+
+    def "stops calculating when a calculator fails"() {
+        given:
+        Processor processor = new Processor()
+        processor.registerTypeCalculator(new Declared<Type>(["Broken"], [:], { Type t -> throw new IllegalArgumentException("Can't calculate " + t.getName()) }))
+        processor.setThreads(threads)
+
+        when:
+        processor.process(new FileScanner(srcPath).scan())
+
+        then:
+        IllegalArgumentException e = thrown()
+        e.message.startsWith("Can't calculate")
+
+        where:
+        threads << [1, 4]
+    }
+
+    //A calculator that declares what it produces and consumes, and returns one number for every metric it produces
+    private static class Declared<T extends Code> implements Calculator<T> {
+        private final Set<String> produced
+        private final SetMultimap<Class<? extends Code>, String> consumed
+        private final Closure<Long> calculation
+
+        Declared(List<String> produced, Map<Class<? extends Code>, String> consumed, Closure<Long> calculation) {
+            this.produced = produced as Set
+            this.consumed = ImmutableSetMultimap.copyOf(consumed.entrySet())
+            this.calculation = calculation
+        }
+
+        @Override
+        Set<Metric> calculate(T code) {
+            long value = calculation(code)
+            return produced.collect { Metric.of(it, it, value) } as Set
+        }
+
+        @Override
+        Set<String> getProducedMetrics() {
+            return produced
+        }
+
+        @Override
+        SetMultimap<Class<? extends Code>, String> getConsumedMetrics() {
+            return consumed
+        }
+    }
+
+    private static Processor processor() {
+        Processor processor = new Processor()
+        processor.registerMethodCalculator(new CyclomaticComplexityCalculator())
+        processor.registerTypeCalculator(new WeightedMethodsCalculator())
+        processor.registerTypeCalculator(new LinkCalculator())
+        processor.registerTypeCalculator(new ClassInheritanceCalculator())
+        processor.registerPackageCalculator(new NumberOfClassesCalculator())
+        processor.registerPackageCalculator(new RobertMartinCouplingCalculator())
+        processor.registerMethodCalculator(new TotalLinesOfCodeCalculator.MethodCalculator())
+        processor.registerTypeCalculator(new TotalLinesOfCodeCalculator.TypeCalculator())
+        processor.registerPackageCalculator(new TotalLinesOfCodeCalculator.PackageCalculator())
+        processor.registerProjectCalculator(new TotalLinesOfCodeCalculator.ProjectCalculator())
+        return processor
+    }
+
+    private static List<String> describe(Project project) {
+        [project.getMetrics().collect { it.name + "=" + it.value }.sort().toString()] + project.getPackages().collectMany { Package pkg ->
+            [pkg.name + " " + pkg.getMetrics().collect { it.name + "=" + it.value }.sort()] + pkg.getTypes().collectMany { Type type ->
+                [pkg.name + "." + type.name + " " + type.getAttributes() + type.getMetrics().collect { it.name + "=" + it.value }.sort()] + type.getMethods().collect { Method method ->
+                    pkg.name + "." + type.name + "#" + method.name + " " + method.getAttributes() + method.getMetrics().collect { it.name + "=" + it.value }.sort()
+                }
+            }
+        }.sort()
+    }
+}
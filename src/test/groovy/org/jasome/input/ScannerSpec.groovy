@@ -1,5 +1,19 @@
 package org.jasome.input
 
+import com.github.javaparser.JavaParser
+import com.github.javaparser.ParseResult
+import com.github.javaparser.ParseStart
+import com.github.javaparser.Providers
+import com.github.javaparser.ast.CompilationUnit
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade
+import com.google.common.collect.Sets
+import com.google.common.io.Files
+import org.jasome.metrics.calculators.ClassInheritanceCalculator
+import org.jasome.metrics.calculators.LinkCalculator
+import org.jasome.metrics.calculators.NumberOfClassesCalculator
+import org.jasome.metrics.calculators.RobertMartinCouplingCalculator
+import org.jasome.metrics.calculators.WeightedMethodsCalculator
+import org.jasome.metrics.calculators.CyclomaticComplexityCalculator
 import spock.lang.Specification
 
 import static org.jasome.util.TestUtil.projectFromResources
@@ -20,4 +34,360 @@ class ScannerSpec extends Specification {
         fineType != null
     }
 
+    def "keeps the types of files where only some statements can't be parsed"() {
+        given:
+        File srcPath = Files.createTempDir()
+        write(srcPath, "app/Partial.java", '''
+            package app;
+            public class Partial {
+                public void fine() { int x = 1; }
+                public void broken() { int y = ; fine(); }
+            }
+        ''')
+        write(srcPath, "app/Garbage.java", "package app; purblac clss Garbage {")
+        write(srcPath, "app/Clean.java", "package app; public class Clean { }")
+
+        when:
+        Project project = new FileScanner(srcPath).scan()
+        Package app = project.lookupPackageByName("app").get()
+        Type partial = app.lookupTypeByName("Partial").get()
+
+        then:
+        app.getTypes()*.name.toSet() == ["Partial", "Clean"] as Set
+        partial.getMethods()*.name.toSet() == ["public void fine()", "public void broken()"] as Set
+        partial.getAttributes().get("parseProblems") == "1"
+        !app.lookupTypeByName("Clean").get().getAttributes().containsKey("parseProblems")
+        project.getAttributes().get("parsedFiles") == "2"
+        project.getAttributes().get("unparseableFiles") == "1"
+        Integer.parseInt(project.getAttributes().get("parseProblems")) >= 2
+        project.getAttributes().containsKey("parseTime")
+    }
+
+    def "parses each source file exactly once"() {
+        given:
+        File srcPath = new File(new File(".").getCanonicalPath(), "src/test/resources/org/jasome/resolver")
+        List<CompilationUnit> parsedSources = Collections.synchronizedList([])
+
+        FileScanner scanner = new FileScanner(srcPath) {
+            @Override
+            protected ParseResult<CompilationUnit> parse(Reader sourceCode) {
+                ParseResult<CompilationUnit> result = super.parse(sourceCode)
+                parsedSources.add(result.getResult().get())
+                return result
+            }
+        }
+
+        when:
+        Project project = scanner.scan()
+
+        then:
+        parsedSources.size() == 2
+        parsedSources.collect { it.getType(0).nameAsString }.toSet() == ["A", "Test"] as Set
+        project.getPackages().collectMany { it.getTypes() }.collect { it.name }.toSet() == ["A", "Test"] as Set
+    }
+
+    def "builds the same project no matter how many threads parse it"() {
+        given:
+        File srcPath = new File(new File(".").getCanonicalPath(), "src/test/resources/org/jasome")
+
+        when:
+        FileScanner singleThreaded = new FileScanner(srcPath)
+        singleThreaded.setParseThreads(1)
+        Project singleThreadedProject = singleThreaded.scan()
+
+        FileScanner multiThreaded = new FileScanner(srcPath)
+        multiThreaded.setParseThreads(8)
+        Project multiThreadedProject = multiThreaded.scan()
+
+        then:
+        describe(singleThreadedProject) == describe(multiThreadedProject)
+        describe(singleThreadedProject).size() > 0
+    }
+
+    def "parses identical copies of a source file once and lists the others as aliases"() {
+        given:
+        File srcPath = Files.createTempDir()
+        String shaded = '''
+            package shaded.lib;
+            public class Helper {
+                public int help(int x) { if (x > 0) { return x; } return 0; }
+            }
+        '''
+        write(srcPath, "module-c/shaded/lib/Helper.java", shaded)
+        write(srcPath, "module-a/shaded/lib/Helper.java", shaded)
+        write(srcPath, "module-b/shaded/lib/Helper.java", shaded)
+        write(srcPath, "module-a/app/Odd.java", "package app; public class Odd { }")
+        write(srcPath, "module-b/app/Eve.java", "package app; public class Eve { }")
+
+        List<CompilationUnit> parsedSources = Collections.synchronizedList([])
+        FileScanner scanner = new FileScanner(srcPath) {
+            @Override
+            protected ParseResult<CompilationUnit> parse(Reader sourceCode) {
+                ParseResult<CompilationUnit> result = super.parse(sourceCode)
+                parsedSources.add(result.getResult().get())
+                return result
+            }
+        }
+        scanner.setDeduplicate(true)
+
+        when:
+        Project project = scanner.scan()
+        processor().process(project)
+
+        Project fullProject = new FileScanner(srcPath).scan()
+        processor().process(fullProject)
+
+        Type helper = project.lookupPackageByName("shaded.lib").get().lookupTypeByName("Helper").get()
+
+        then:
+        parsedSources.size() == 3
+        helper.getAttributes().get("sourceFile") == "./module-a/shaded/lib/Helper.java"
+        helper.getAttributes().get("aliases") == "./module-b/shaded/lib/Helper.java,./module-c/shaded/lib/Helper.java"
+        !project.lookupPackageByName("app").get().lookupTypeByName("Odd").get().getAttributes().containsKey("aliases")
+        project.getAttributes().get("duplicateFiles") == "2"
+        describeMetrics(project) == describeMetrics(fullProject)
+    }
+
+    def "follows symlinked source directories without looping forever"() {
+        given:
+        File srcPath = Files.createTempDir()
+        File sharedPath = Files.createTempDir()
+        write(srcPath, "app/Client.java", "package app; public class Client { }")
+        write(sharedPath, "lib/Library.java", "package lib; public class Library { }")
+        java.nio.file.Files.createSymbolicLink(new File(srcPath, "lib").toPath(), new File(sharedPath, "lib").toPath())
+        java.nio.file.Files.createSymbolicLink(new File(srcPath, "app/loop").toPath(), srcPath.toPath())
+
+        when:
+        Project project = new FileScanner(srcPath).scan()
+
+        then:
+        project.getPackages().collectMany { it.getTypes() }.collect { it.getSourceFile().get() }.sort() == ["./app/Client.java", "./lib/Library.java"]
+    }
+
+    def "scans only the listed files, relative to the scan directory"() {
+        given:
+        File srcPath = Files.createTempDir()
+        write(srcPath, "lib/Library.java", "package lib; public class Library { }")
+        write(srcPath, "lib/Unlisted.java", "package lib; public class Unlisted { }")
+        write(srcPath, "app/Client.java", "package app; public class Client { }")
+        write(srcPath, "app/ClientTest.java", "package app; public class ClientTest { }")
+
+        FileScanner scanner = new FileScanner(srcPath)
+        scanner.setSourceFiles([new File("lib/Library.java"), new File(srcPath, "app/../app/Client.java"), new File("app/ClientTest.java")])
+        scanner.setPatterns(new SourcePatterns([], SourcePatterns.TESTS))
+
+        when:
+        Project project = scanner.scan()
+
+        then:
+        project.getPackages().collectMany { it.getTypes() }.collect { it.getSourceFile().get() }.sort() == ["./app/Client.java", "./lib/Library.java"]
+    }
+
+    def "updates a scanned project to match a fresh scan of the changed sources"() {
+        given:
+        File srcPath = Files.createTempDir()
+        write(srcPath, "lib/Library.java", '''
+            package lib;
+            public class Library {
+                public int answer(int x) { if (x > 0) { return 42; } return 0; }
+            }
+        ''')
+        write(srcPath, "lib/Special.java", '''
+            package lib;
+            public class Special extends Library {
+                public int other() { return 1; }
+            }
+        ''')
+        write(srcPath, "app/Client.java", '''
+            package app;
+            import lib.Library;
+            public class Client {
+                public int run() { return new Library().answer(1); }
+            }
+        ''')
+        write(srcPath, "app/Unrelated.java", '''
+            package app;
+            public class Unrelated {
+                public void nothing() { }
+            }
+        ''')
+
+        FileScanner scanner = new FileScanner(srcPath)
+        Project project = scanner.scan()
+        processor().process(project)
+
+        when:
+        write(srcPath, "lib/Library.java", '''
+            package lib;
+            public class Library extends Base {
+                public int answer(int x) { if (x > 0) { return 42; } else if (x < 0) { return -1; } return 0; }
+            }
+        ''')
+        write(srcPath, "lib/Base.java", '''
+            package lib;
+            public class Base {
+                public void base() { }
+            }
+        ''')
+        new File(srcPath, "app/Unrelated.java").delete()
+
+        Set<Type> affectedTypes = scanner.update(project,
+                [new File(srcPath, "lib/Library.java"), new File(srcPath, "lib/Base.java")] as Set,
+                [new File(srcPath, "app/Unrelated.java")] as Set)
+        processor().process(project, { affectedTypes.contains(it) }, { true })
+
+        Project freshProject = new FileScanner(srcPath).scan()
+        processor().process(freshProject)
+
+        then:
+        describeMetrics(project) == describeMetrics(freshProject)
+        affectedTypes*.name.toSet() == ["Library", "Base", "Special", "Client"] as Set
+    }
+
+    def "resolves code parsed with a project's configuration against that project only"() {
+        given:
+        File listProject = Files.createTempDir()
+        write(listProject, "app/Base.java", "package app; public class Base extends java.util.ArrayList<String> { }")
+        File threadProject = Files.createTempDir()
+        write(threadProject, "app/Base.java", "package app; public class Base extends java.lang.Thread { }")
+
+        when:
+        Project lists = new FileScanner(listProject).scan()
+        Project threads = new FileScanner(threadProject).scan()
+
+        then:
+        ancestorsOf("app.Base", lists).contains("java.util.ArrayList")
+        !ancestorsOf("app.Base", lists).contains("java.lang.Thread")
+        ancestorsOf("app.Base", threads).contains("java.lang.Thread")
+    }
+
+    def "releasing one project's sources leaves other projects resolvable"() {
+        given:
+        File listProject = Files.createTempDir()
+        write(listProject, "app/Base.java", "package app; public class Base extends java.util.ArrayList<String> { }")
+        File threadProject = Files.createTempDir()
+        write(threadProject, "app/Base.java", "package app; public class Base extends java.lang.Thread { }")
+        Project lists = new FileScanner(listProject).scan()
+        Project threads = new FileScanner(threadProject).scan()
+        ancestorsOf("app.Base", threads)
+
+        when:
+        lists.releaseSources()
+
+        then:
+        lists.getParserConfiguration() == null
+        ancestorsOf("app.Base", threads).contains("java.lang.Thread")
+    }
+
+    def "releasing one project's sources only drops the symbol solver's facades for that project"() {
+        given:
+        Map facades = JavaParserFacade.getDeclaredField("instances").with { accessible = true; get(null) as Map }
+        File srcPath = new File(new File(".").getCanonicalPath(), "src/test/resources/org/jasome/resolver")
+
+        Set before = Sets.newIdentityHashSet(); before.addAll(facades.keySet())
+        Project kept = new FileScanner(srcPath).scan()
+        processor().process(kept)
+        Set keptSolvers = Sets.newIdentityHashSet(); keptSolvers.addAll(facades.keySet()); keptSolvers.removeAll(before)
+
+        Project released = new FileScanner(srcPath).scan()
+        processor().process(released)
+        Set releasedSolvers = Sets.newIdentityHashSet(); releasedSolvers.addAll(facades.keySet()); releasedSolvers.removeAll(keptSolvers); releasedSolvers.removeAll(before)
+
+        when:
+        released.releaseSources()
+
+        then:
+        !keptSolvers.isEmpty()
+        !releasedSolvers.isEmpty()
+        keptSolvers.every { facades.containsKey(it) }
+        releasedSolvers.every { !facades.containsKey(it) }
+    }
+
+    def "analyzes separate projects at the same time"() {
+        given:
+        List<File> srcPaths = ["org/jasome", "org/jasome/resolver", "org/jasome/unparseable"].collect {
+            new File(new File(".").getCanonicalPath(), "src/test/resources/" + it)
+        }
+        List<List<String>> oneAtATime = srcPaths.collect { analyze(it) }
+
+        when:
+        def pool = java.util.concurrent.Executors.newFixedThreadPool(srcPaths.size())
+        List<List<String>> atTheSameTime = pool.invokeAll(srcPaths.collect { srcPath -> { -> analyze(srcPath) } as java.util.concurrent.Callable }).collect { it.get() }
+        pool.shutdown()
+
+        then:
+        atTheSameTime == oneAtATime
+    }
+
+    def "analyzes one project while another is in the middle of resolving a symbol"() {
+        given:
+        File srcPath = new File(new File(".").getCanonicalPath(), "src/test/resources/org/jasome/resolver")
+        List<String> expected = analyze(srcPath)
+
+        Project busy = new FileScanner(srcPath).scan()
+        def resolving = new java.util.concurrent.CountDownLatch(1)
+        def finish = new java.util.concurrent.CountDownLatch(1)
+        Thread.start { busy.getSymbolResolution().resolve { resolving.countDown(); finish.await() } }
+        resolving.await()
+
+        when:
+        def pool = java.util.concurrent.Executors.newSingleThreadExecutor()
+        List<String> result = pool.submit({ -> analyze(srcPath) } as java.util.concurrent.Callable).get(60, java.util.concurrent.TimeUnit.SECONDS)
+        pool.shutdown()
+
+        then:
+        result == expected
+
+        cleanup:
+        finish.countDown()
+    }
+
+    private static List<String> analyze(File srcPath) {
+        Project project = new FileScanner(srcPath).scan()
+        processor().process(project)
+        return describeMetrics(project)
+    }
+
+    private static Set<String> ancestorsOf(String typeName, Project project) {
+        CompilationUnit user = new JavaParser(project.getParserConfiguration()).parse(ParseStart.COMPILATION_UNIT, Providers.provider("class User extends " + typeName + " { }")).getResult().get()
+        return user.getType(0).asClassOrInterfaceDeclaration().getExtendedTypes(0).resolve().getAllAncestors().collect { it.getQualifiedName() }.toSet()
+    }
+
+    private static void write(File directory, String path, String contents) {
+        File file = new File(directory, path)
+        file.parentFile.mkdirs()
+        file.text = contents
+    }
+
+    private static Processor processor() {
+        Processor processor = new Processor()
+        processor.registerMethodCalculator(new CyclomaticComplexityCalculator())
+        processor.registerTypeCalculator(new WeightedMethodsCalculator())
+        processor.registerTypeCalculator(new LinkCalculator())
+        processor.registerTypeCalculator(new ClassInheritanceCalculator())
+        processor.registerPackageCalculator(new NumberOfClassesCalculator())
+        processor.registerPackageCalculator(new RobertMartinCouplingCalculator())
+        return processor
+    }
+
+    private static List<String> describeMetrics(Project project) {
+        project.getPackages().collectMany { Package pkg ->
+            [pkg.name + " " + pkg.getMetrics().collect { it.name + "=" + it.value }.sort()] + pkg.getTypes().collectMany { Type type ->
+                [pkg.name + "." + type.name + " " + type.getMetrics().collect { it.name + "=" + it.value }.sort()] + type.getMethods().collect { Method method ->
+                    pkg.name + "." + type.name + "#" + method.name + " " + method.getMetrics().collect { it.name + "=" + it.value }.sort()
+                }
+            }
+        }.sort()
+    }
+
+    private static List<String> describe(Project project) {
+        project.getPackages().collectMany { Package pkg ->
+            pkg.getTypes().collectMany { Type type ->
+                [pkg.name + "." + type.name + " " + type.getAttributes()] + type.getMethods().collect { Method method ->
+                    pkg.name + "." + type.name + "#" + method.name + " " + method.getAttributes()
+                }
+            }
+        }.sort()
+    }
+
 }
@@ -0,0 +1,237 @@
+package org.jasome.input
+
+import com.google.common.io.Files
+import org.jasome.metrics.calculators.ClassInheritanceCalculator
+import org.jasome.metrics.calculators.FanCalculator
+import org.jasome.metrics.calculators.LinkCalculator
+import org.jasome.metrics.calculators.MethodAndAttributeInheritanceCalculator
+import org.jasome.metrics.calculators.NumberOfClassesCalculator
+import org.jasome.metrics.calculators.RobertMartinCouplingCalculator
+import org.jasome.metrics.calculators.SpecializationIndexCalculator
+import org.jasome.metrics.calculators.TotalLinesOfCodeCalculator
+import spock.lang.Specification
+
+class ShardedProcessorSpec extends Specification {
+
+    File sourceDir
+    File spillDir
+
+    def setup() {
+        sourceDir = Files.createTempDir()
+        spillDir = Files.createTempDir()
+
+        write("org/example/shapes/Shape.java", '''
+        package org.example.shapes;
+
+        public interface Shape {
+            double area();
+
+            default String describe() {
+                return "area " + area();
+            }
+        }
+        ''')
+
+        write("org/example/shapes/Polygon.java", '''
+        package org.example.shapes;
+
+        public abstract class Polygon implements Shape {
+            protected int sides;
+            public String name;
+
+            public abstract double perimeter();
+
+            public int getSides() {
+                return sides;
+            }
+        }
+        ''')
+
+        write("org/example/geometry/Square.java", '''
+        package org.example.geometry;
+
+        import org.example.shapes.Polygon;
+
+        public class Square extends Polygon {
+            private double length;
+
+            public Square(double length) {
+                this.length = length;
+                this.sides = 4;
+            }
+
+            public double area() {
+                return length * length;
+            }
+
+            public double perimeter() {
+                return getSides() * length;
+            }
+        }
+        ''')
+
+        write("org/example/app/Drawing.java", '''
+        package org.example.app;
+
+        import java.util.ArrayList;
+        import java.util.List;
+
+        import org.example.geometry.Square;
+        import org.example.shapes.Shape;
+
+        public class Drawing {
+            private List<Shape> shapes = new ArrayList<>();
+
+            public void add(double length) {
+                shapes.add(new Square(length));
+            }
+
+            public String summary() {
+                StringBuilder result = new StringBuilder();
+                for (Shape shape : shapes) {
+                    result.append(shape.describe());
+                    result.append(shape.area());
+                }
+                return result.toString();
+            }
+        }
+        ''')
+    }
+
+    def "calculates the same metrics as processing the whole project at once"() {
+        given:
+        Project whole = new FileScanner(sourceDir).scan()
+        processor().process(whole)
+
+        FileScanner shardedScanner = new FileScanner(sourceDir)
+        shardedScanner.setShardedProcessor(new ShardedProcessor(processor(), shardSize, spillDir))
+
+        when:
+        Project sharded = shardedScanner.scan()
+
+        then:
+        describe(sharded) == describe(whole)
+        spillDir.listFiles().length == 0
+
+        where:
+        shardSize << [1, 2, 100]
+    }
+
+    def "merges the results of separate worker processes into the same project"() {
+        given:
+        Project whole = new FileScanner(sourceDir).scan()
+        processor().process(whole)
+
+        ShardedProcessor shardedProcessor = new ShardedProcessor(processor(), 1, spillDir)
+        shardedProcessor.setWorkers(workers, [
+                new File(new File(System.getProperty("java.home"), "bin"), "java").getPath(),
+                "-cp", System.getProperty("java.class.path"),
+                Worker.name,
+                sourceDir.getPath()
+        ])
+
+        FileScanner shardedScanner = new FileScanner(sourceDir)
+        shardedScanner.setShardedProcessor(shardedProcessor)
+
+        when:
+        Project sharded = shardedScanner.scan()
+
+        then:
+        describe(sharded) == describe(whole)
+        spillDir.listFiles().length == 0
+
+        where:
+        workers << [1, 3]
+    }
+
+    def "reports workers that fail"() {
+        given:
+        ShardedProcessor shardedProcessor = new ShardedProcessor(processor(), 1, spillDir)
+        shardedProcessor.setWorkers(2, [new File(new File(System.getProperty("java.home"), "bin"), "java").getPath(), "org.example.MissingWorker"])
+
+        FileScanner shardedScanner = new FileScanner(sourceDir)
+        shardedScanner.setShardedProcessor(shardedProcessor)
+
+        when:
+        shardedScanner.scan()
+
+        then:
+        IllegalStateException e = thrown()
+        e.message.startsWith("Shard worker 0 failed")
+        spillDir.listFiles().length == 0
+    }
+
+    def "waits for the other workers to stop before deleting their shards"() {
+        given:
+        //The first worker fails straight away, the second one still writes to the shard directory when it's told to stop
+        String worker = '''
+            case "$0" in *-0.task) exit 3;; esac
+            trap 'sleep 1; mkdir -p "${0%/*}"; touch "${0%/*}/stopped"; kill $!; exit 1' TERM
+            sleep 60 & wait
+        '''
+        ShardedProcessor shardedProcessor = new ShardedProcessor(processor(), 1, spillDir)
+        shardedProcessor.setWorkers(2, ["/bin/sh", "-c", worker])
+
+        FileScanner shardedScanner = new FileScanner(sourceDir)
+        shardedScanner.setShardedProcessor(shardedProcessor)
+
+        when:
+        shardedScanner.scan()
+
+        then:
+        IllegalStateException e = thrown()
+        e.message.startsWith("Shard worker 0 failed")
+
+        when:
+        Thread.sleep(2000)
+
+        then:
+        spillDir.listFiles().length == 0
+    }
+
+    def "rejects shards without any files"() {
+        when:
+        new ShardedProcessor(processor(), 0, spillDir)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    static class Worker {
+        static void main(String[] args) {
+            new ShardedProcessor(processor(), 1, new File(System.getProperty("java.io.tmpdir"))).work(new FileScanner(new File(args[0])), new File(args[1]))
+        }
+    }
+
+    private void write(String path, String source) {
+        File file = new File(sourceDir, path)
+        file.parentFile.mkdirs()
+        file.text = source.stripIndent()
+    }
+
+    private static Processor processor() {
+        Processor processor = new Processor()
+        processor.registerMethodCalculator(new FanCalculator())
+        processor.registerTypeCalculator(new LinkCalculator())
+        processor.registerTypeCalculator(new ClassInheritanceCalculator())
+        processor.registerTypeCalculator(new MethodAndAttributeInheritanceCalculator())
+        processor.registerTypeCalculator(new SpecializationIndexCalculator())
+        processor.registerPackageCalculator(new NumberOfClassesCalculator())
+        processor.registerPackageCalculator(new RobertMartinCouplingCalculator())
+        processor.registerMethodCalculator(new TotalLinesOfCodeCalculator.MethodCalculator())
+        processor.registerTypeCalculator(new TotalLinesOfCodeCalculator.TypeCalculator())
+        processor.registerPackageCalculator(new TotalLinesOfCodeCalculator.PackageCalculator())
+        processor.registerProjectCalculator(new TotalLinesOfCodeCalculator.ProjectCalculator())
+        return processor
+    }
+
+    private static List<String> describe(Project project) {
+        [project.getMetrics().collect { it.name + "=" + it.value }.sort().toString()] + project.getPackages().collectMany { Package pkg ->
+            [pkg.name + " " + pkg.getMetrics().collect { it.name + "=" + it.value }.sort()] + pkg.getTypes().collectMany { Type type ->
+                [pkg.name + "." + type.name + " " + type.getAttributes() + type.getMetrics().collect { it.name + "=" + it.value }.sort()] + type.getMethods().collect { Method method ->
+                    pkg.name + "." + type.name + "#" + method.name + " " + method.getAttributes() + method.getMetrics().collect { it.name + "=" + it.value }.sort()
+                }
+            }
+        }.sort()
+    }
+}
@@ -0,0 +1,126 @@
+package org.jasome.input
+
+import com.github.javaparser.JavaParser
+import com.github.javaparser.ast.CompilationUnit
+import com.github.javaparser.resolution.UnsolvedSymbolException
+import com.google.common.io.Files
+import spock.lang.Specification
+
+import java.nio.file.Path
+
+import static org.jasome.util.TestUtil.augmentProjectMetaclass
+
+class SourceLayoutSpec extends Specification {
+
+    File projectDir = Files.createTempDir()
+
+    def setup() {
+        augmentProjectMetaclass()
+
+        write("core/pom.xml", pom("core", []))
+        write("core/src/main/java/shared/Thing.java", "package shared; public class Thing { public void fromCore() {} }")
+        write("core/src/test/java/shared/ThingTest.java", "package shared; public class ThingTest { }")
+
+        write("unrelated/pom.xml", pom("unrelated", []))
+        write("unrelated/src/main/java/shared/Thing.java", "package shared; public class Thing { public void fromUnrelated() {} }")
+        write("unrelated/src/main/java/other/OnlyUnrelated.java", "package other; public class OnlyUnrelated { }")
+
+        write("service/build.gradle", "dependencies { compile project(':core') }")
+        write("service/src/main/java/service/Service.java", "package service; public class Service extends shared.Thing { }")
+
+        write("web/build.gradle", "dependencies { compile project(path: ':service') }")
+        write("web/src/main/java/web/Web.java", "package web; public class Web extends shared.Thing { }")
+
+        write("app/pom.xml", pom("app", ["core", "junit"]))
+        write("app/src/main/java/app/App.java", "package app; public class App extends shared.Thing { }")
+        write("app/src/main/java/app/Broken.java", "package app; public class Broken extends other.OnlyUnrelated { }")
+        write("app/src/main/java/app/FromTest.java", "package app; public class FromTest extends shared.ThingTest { }")
+    }
+
+    def "resolves types through the module's own dependencies"() {
+        when:
+        Project project = new FileScanner(projectDir).scan()
+
+        then:
+        declaredMethodsOfSuperclass(project.locateType("Service")) == ["fromCore"]
+        declaredMethodsOfSuperclass(project.locateType("Web")) == ["fromCore"]
+        declaredMethodsOfSuperclass(project.locateType("App")) == ["fromCore"]
+    }
+
+    def "does not resolve types from modules that are not dependencies"() {
+        when:
+        Project project = new FileScanner(projectDir).scan()
+        declaredMethodsOfSuperclass(project.locateType("Broken"))
+
+        then:
+        thrown(UnsolvedSymbolException)
+    }
+
+    def "does not resolve the tests of a dependency"() {
+        when:
+        Project project = new FileScanner(projectDir).scan()
+        declaredMethodsOfSuperclass(project.locateType("FromTest"))
+
+        then:
+        thrown(UnsolvedSymbolException)
+    }
+
+    def "finds source roots from the package a file declares"() {
+        given:
+        SourceLayout layout = new SourceLayout(projectDir.path, null)
+
+        expect:
+        layout.addCompilationUnit(JavaParser.parse("package app; class App {}"), "./app/src/main/java/app/App.java") == new File(projectDir, "app/src/main/java").toPath()
+        layout.addCompilationUnit(JavaParser.parse("package shared; class Thing {}"), "./core/src/main/java/shared/Thing.java") == new File(projectDir, "core/src/main/java").toPath()
+        layout.addCompilationUnit(JavaParser.parse("package shared; class Thing {}"), "./misplaced/Thing.java") == new File(projectDir, "misplaced").toPath()
+        layout.addCompilationUnit(JavaParser.parse("class Loose {}"), "./Loose.java") == projectDir.toPath()
+    }
+
+    def "resolves types from compilation units that are only in memory"() {
+        given:
+        SourceLayout layout = new SourceLayout(new File(projectDir, "sources.jar").path, null)
+        CompilationUnit outer = JavaParser.parse("package a; public class Outer { public static class Inner { public void fromInner() {} } }")
+        CompilationUnit user = JavaParser.parse("package b; class User extends a.Outer.Inner {}")
+
+        when:
+        Path outerRoot = layout.addCompilationUnit(outer, "./a/Outer.java")
+        Path userRoot = layout.addCompilationUnit(user, "./b/User.java")
+        layout.symbolSolverFor(outerRoot).inject(outer)
+        layout.symbolSolverFor(userRoot).inject(user)
+
+        then:
+        !userRoot.toFile().isDirectory()
+        user.getType(0).asClassOrInterfaceDeclaration().getExtendedTypes(0).resolve().getTypeDeclaration().getDeclaredMethods().collect { it.name } == ["fromInner"]
+    }
+
+    def "resolves sources outside of any module against every source root"() {
+        given:
+        write("scripts/shared/Script.java", "package shared; public class Script extends other.OnlyUnrelated { }")
+
+        when:
+        Project project = new FileScanner(projectDir).scan()
+
+        then:
+        project.locateType("Script").getSource().getExtendedTypes(0).resolve().getQualifiedName() == "other.OnlyUnrelated"
+    }
+
+    private static List<String> declaredMethodsOfSuperclass(Type type) {
+        type.getSource().getExtendedTypes(0).resolve().getTypeDeclaration().getDeclaredMethods().collect { it.name }
+    }
+
+    private void write(String path, String contents) {
+        File file = new File(projectDir, path)
+        file.parentFile.mkdirs()
+        file.text = contents
+    }
+
+    private static String pom(String artifactId, List<String> dependencies) {
+        """<project>
+             <parent><artifactId>parent</artifactId></parent>
+             <artifactId>${artifactId}</artifactId>
+             <dependencies>
+               ${dependencies.collect { "<dependency><artifactId>${it}</artifactId></dependency>" }.join("\n")}
+             </dependencies>
+           </project>"""
+    }
+}
@@ -0,0 +1,131 @@
+package org.jasome.input
+
+import com.google.common.io.Files
+import spock.lang.Specification
+
+import java.nio.file.Paths
+import java.util.stream.Stream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class SourcePatternsSpec extends Specification {
+
+    File sourceDir
+
+    def setup() {
+        sourceDir = Files.createTempDir()
+
+        write("src/main/java/org/widgets/Widget.java", "package org.widgets; public class Widget {}")
+        write("src/test/java/org/widgets/WidgetTest.java", "package org.widgets; public class WidgetTest {}")
+        write("src/main/java/org/widgets/WidgetSpec.java", "package org.widgets; public class WidgetSpec {}")
+        write("build/generated-sources/org/widgets/WidgetBuilder.java", "package org.widgets; public class WidgetBuilder {}")
+        write("examples/org/widgets/demo/Demo.java", "package org.widgets.demo; public class Demo {}")
+        write("node_modules/lib/Vendored.java", "package lib; public class Vendored {}")
+    }
+
+    def "globs without a slash match the names of files and directories anywhere"() {
+        given:
+        SourcePatterns patterns = new SourcePatterns([], ["build", "*Test.java"])
+
+        expect:
+        patterns.excludesDirectory(Paths.get("build"))
+        patterns.excludesDirectory(Paths.get("module/build"))
+        !patterns.excludesDirectory(Paths.get("builder"))
+        !patterns.includesFile(Paths.get("src/test/java/WidgetTest.java"))
+        patterns.includesFile(Paths.get("src/main/java/Widget.java"))
+        !patterns.accepts(Paths.get("module/build/Widget.java"))
+    }
+
+    def "globs with a slash and regular expressions match the whole relative path"() {
+        given:
+        SourcePatterns patterns = new SourcePatterns(["src/main/**"], ["regex:.*/internal(/.*)?"])
+
+        expect:
+        patterns.accepts(Paths.get("src/main/java/Widget.java"))
+        !patterns.accepts(Paths.get("src/test/java/Widget.java"))
+        !patterns.accepts(Paths.get("src/main/java/internal/Widget.java"))
+        patterns.accepts(Paths.get("src/main/java/internals/Widget.java"))
+    }
+
+    def "rejects patterns that can't be compiled"() {
+        when:
+        new SourcePatterns([], [pattern])
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        pattern << ["regex:(unclosed", "glob:{a,b"]
+    }
+
+    def "skips excluded directories while scanning"() {
+        given:
+        FileScanner scanner = new FileScanner(sourceDir)
+        scanner.setPatterns(new SourcePatterns([], ["build", "node_modules"] + SourcePatterns.TESTS))
+
+        when:
+        Stream<File> files = scanner.listSourceFiles()
+        List<String> scanned = files.iterator().collect { relative(it) }.sort()
+        files.close()
+
+        then:
+        scanned == ["src/main/java/org/widgets/Widget.java"]
+    }
+
+    def "only scans included files"() {
+        given:
+        FileScanner scanner = new FileScanner(sourceDir)
+        scanner.setPatterns(new SourcePatterns(["Widget*.java"], ["regex:src/test/.*"]))
+
+        when:
+        Project project = scanner.scan()
+
+        then:
+        project.getPackages()*.getTypes().flatten()*.name.sort() == ["Widget", "WidgetBuilder", "WidgetSpec"]
+    }
+
+    def "refuses a directory where every source file is excluded"() {
+        given:
+        FileScanner scanner = new FileScanner(sourceDir)
+        scanner.setPatterns(new SourcePatterns(["*.groovy"], []))
+
+        when:
+        scanner.scan()
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    def "applies the patterns to the entries of archives"() {
+        given:
+        File jar = new File(Files.createTempDir(), "widgets-sources.jar")
+        new ZipOutputStream(new FileOutputStream(jar)).withCloseable { zip ->
+            sourceDir.eachFileRecurse { File file ->
+                if (file.isFile()) {
+                    zip.putNextEntry(new ZipEntry(relative(file)))
+                    zip.write(file.bytes)
+                    zip.closeEntry()
+                }
+            }
+        }
+
+        ArchiveScanner scanner = new ArchiveScanner(jar)
+        scanner.setPatterns(new SourcePatterns([], ["build", "node_modules"] + SourcePatterns.TESTS))
+
+        when:
+        Project project = scanner.scan()
+
+        then:
+        project.getPackages()*.getTypes().flatten()*.name == ["Widget"]
+    }
+
+    private String relative(File file) {
+        sourceDir.toURI().relativize(file.toURI()).path
+    }
+
+    private void write(String path, String source) {
+        File file = new File(sourceDir, path)
+        file.parentFile.mkdirs()
+        file.text = source
+    }
+}
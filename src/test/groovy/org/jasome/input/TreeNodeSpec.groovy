@@ -1,5 +1,7 @@
 package org.jasome.input
 
+import com.github.javaparser.ast.body.ConstructorDeclaration
+import com.github.javaparser.ast.stmt.IfStmt
 import spock.lang.Specification
 
 import static org.jasome.util.TestUtil.projectFromSnippet
@@ -99,4 +101,101 @@ class TreeNodeSpec extends Specification {
         thing1 != null
         innerClass != null
     }
+
+    def "keeps line ranges, constructors and source files as typed attributes"() {
+
+        given:
+        def project = projectFromSnippet '''
+        package org.whatever.stuff;
+
+        class Thing1 {
+            public Thing1() {
+            }
+
+            public String toString() {
+                return "thing";
+            }
+        }
+        '''
+
+        when:
+        Type thing1 = project.getPackages()[0].getTypes()[0]
+        Method constructor = thing1.getMethods().find { it.getAttributes().get("constructor") == "true" }
+        Method toString = thing1.getMethods().find { it.getAttributes().get("constructor") == "false" }
+        toString.addAttribute("lineStart", "7")
+        toString.addAttribute("note", "kept")
+
+        then:
+        thing1.getLineStart() == 4
+        thing1.getLineEnd() == 11
+        thing1.getAttributes().get("lineStart") == "4"
+        constructor.getLineStart() == 5
+        constructor.getAttributes().keySet() as List == ["lineStart", "lineEnd", "constructor"]
+        toString.getLineStart() == 7
+        toString.getAttributes() == [lineStart: "7", lineEnd: "10", constructor: "false", note: "kept"]
+        !toString.getSourceFile().isPresent()
+    }
+
+    def "shows attributes through a live view instead of a copy"() {
+
+        given:
+        Type type = new Type("Thing")
+        type.addAttribute("note", "first")
+        Map<String, String> attributes = type.getAttributes()
+        Set<Map.Entry<String, String>> entries = attributes.entrySet()
+
+        when:
+        type.setLineRange(3, 8)
+        type.addAttribute("sourceFile", "./Thing.java")
+        type.addAttribute("other", "second")
+
+        then:
+        entries.size() == 5
+        entries.collect { it.key + "=" + it.value } == ["sourceFile=./Thing.java", "lineStart=3", "lineEnd=8", "note=first", "other=second"]
+        attributes == [sourceFile: "./Thing.java", lineStart: "3", lineEnd: "8", note: "first", other: "second"]
+
+        when:
+        entries.iterator().next().setValue("changed")
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    def "wraps constructors as they were parsed, named like methods returning their type"() {
+
+        given:
+        def project = projectFromSnippet '''
+        package org.whatever.stuff;
+
+        class Thing1 {
+            Thing1() {
+                this(0);
+            }
+
+            public Thing1(int size) {
+                if (size > 0) {
+                    grow(size);
+                }
+            }
+
+            void grow(int size) {
+            }
+
+            static class Part {
+                private Part(String name) {
+                }
+            }
+        }
+        '''
+
+        when:
+        Type thing1 = project.getPackages()[0].getTypes().find { it.name == "Thing1" }
+        Map<String, Method> methods = thing1.getMethods().collectEntries { [it.name, it] }
+
+        then:
+        methods.keySet() == ["Thing1 Thing1()", "public Thing1 Thing1(int size)", "void grow(int size)", "private Part Part(String name)"] as Set
+        methods["public Thing1 Thing1(int size)"].getSource() instanceof ConstructorDeclaration
+        methods["public Thing1 Thing1(int size)"].getSource().findCompilationUnit().isPresent()
+        thing1.getSource().findAll(IfStmt.class).size() == 1
+    }
 }
@@ -225,5 +225,18 @@ class NumericValueTest extends Specification {
         stats.getMin() == NumericValue.of(1.0)
     }
 
-
+    def "can round trip through its exact string form"() {
+        expect:
+        NumericValue.parseExact(value.toExactString()) == value
+        NumericValue.parseExact(value.toExactString()).toString() == value.toString()
+
+        where:
+        value << [
+                NumericValue.of(42),
+                NumericValue.of(-7),
+                NumericValue.ofRational(5, 3),
+                NumericValue.of(3.1415),
+                NumericValue.of(Rational.valueOf(-1, 4))
+        ]
+    }
 }
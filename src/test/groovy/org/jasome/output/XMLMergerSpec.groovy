@@ -0,0 +1,76 @@
+package org.jasome.output
+
+import org.w3c.dom.Document
+import spock.lang.Specification
+
+import javax.xml.parsers.DocumentBuilderFactory
+
+class XMLMergerSpec extends Specification {
+
+    def "replaces classes from changed files and keeps everything else"() {
+        given:
+        Document previous = parse("""
+            <Project name="p"><Metrics/><Packages>
+                <Package name="a"><Metrics/><Classes>
+                    <Class name="A" sourceFile="./a/A.java"><Metrics/><Methods/></Class>
+                    <Class name="C" sourceFile="./a/C.java"><Metrics/><Methods/></Class>
+                </Classes></Package>
+                <Package name="gone"><Metrics/><Classes>
+                    <Class name="Old" sourceFile="./gone/Old.java"><Metrics/><Methods/></Class>
+                </Classes></Package>
+            </Packages></Project>""")
+
+        Document partial = parse("""
+            <Project name="p"><Metrics/><Packages>
+                <Package name="a"><Metrics/><Classes>
+                    <Class name="A" sourceFile="./a/A.java" changed="true"><Metrics/><Methods/></Class>
+                    <Class name="B" sourceFile="./a/B.java"><Metrics/><Methods/></Class>
+                    <Class name="C" sourceFile="./a/C.java" changed="true"><Metrics/><Methods/></Class>
+                </Classes></Package>
+                <Package name="b"><Metrics/><Classes>
+                    <Class name="D" sourceFile="./b/D.java"><Metrics/><Methods/></Class>
+                </Classes></Package>
+            </Packages></Project>""")
+
+        when:
+        Document merged = new XMLMerger().merge(previous, partial, ["./a/A.java", "./a/B.java", "./b/D.java", "./gone/Old.java"] as Set,
+                { packageName, className -> className != "C" } as XMLMerger.ClassSelector)
+
+        then:
+        classesIn(merged) == ["a.A", "a.B", "a.C", "b.D"]
+        merged.getElementsByTagName("Class").item(0).getAttribute("changed") == "true"
+        merged.getElementsByTagName("Class").item(2).getAttribute("changed") == ""
+    }
+
+    def "merges into an empty copy when there is no earlier output"() {
+        given:
+        Document partial = parse("""
+            <Project name="p" sourceDir="src"><Metrics><Metric name="NOC" value="1"/></Metrics><Packages>
+                <Package name="a"><Metrics/><Classes>
+                    <Class name="A" sourceFile="./a/A.java"><Metrics/><Methods/></Class>
+                </Classes></Package>
+            </Packages></Project>""")
+        XMLMerger merger = new XMLMerger()
+
+        when:
+        Document merged = merger.merge(merger.emptyCopyOf(partial), partial, [] as Set, { packageName, className -> true } as XMLMerger.ClassSelector)
+
+        then:
+        merged.documentElement.getAttribute("sourceDir") == "src"
+        merged.getElementsByTagName("Metric").length == 0
+        classesIn(merged) == ["a.A"]
+    }
+
+    private static Document parse(String xml) {
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(xml.trim().getBytes("UTF-8")))
+        return document
+    }
+
+    private static List<String> classesIn(Document document) {
+        def classes = document.getElementsByTagName("Class")
+        (0..<classes.length).collect {
+            def classElement = classes.item(it)
+            classElement.parentNode.parentNode.getAttribute("name") + "." + classElement.getAttribute("name")
+        }
+    }
+}